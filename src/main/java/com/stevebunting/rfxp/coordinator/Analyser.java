@@ -2,26 +2,80 @@ package com.stevebunting.rfxp.coordinator;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.IntStream;
 
 /**
  * The Analyser class stores lists of channels, intermods and conflicts
  * from a coordination and performs analysis on them.
  */
 final class Analyser {
-    final private List<Channel> channels = new ArrayList<>();
-    private IntermodStore intermodStore = new IntermodStore();
-    final private List<Conflict> conflicts = new ArrayList<>();
+    private List<Channel> channels = new ArrayList<>();
+    private IntermodStore intermodStore;
+    private List<Conflict> conflicts = new ArrayList<>();
+
+    // Snapshot publishing. Each write increases the version and publishes a
+    // snapshot of it when it ends. Lists referenced by the latest snapshot
+    // are copied before the next write touches them
+    private volatile AnalyserSnapshot snapshot;
+    private volatile long version = 0;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int writeDepth = 0;
+    private boolean listsPublished = false;
+
+    // Change notification, changes are only recorded while there are
+    // listeners or a journal. Events of every analyser are delivered on one
+    // shared daemon thread, so analysers that are dropped leave no thread
+    // behind
+    private static final ExecutorService NOTIFIER = Executors.newSingleThreadExecutor((Runnable runnable) -> {
+        final Thread thread = new Thread(runnable, "analyser-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+    final private List<AnalyserListener> listeners = new CopyOnWriteArrayList<>();
+    final private AnalyserChangeRecorder changeRecorder = new AnalyserChangeRecorder();
+    private ChangeJournal journal;
 
     final private AnalyserCalculations calculations = new AnalyserCalculations();
 
+    // ID to assign to the next new channel, kept above the ID of every
+    // channel ever added so IDs are not reused
+    private int idCounter = 0;
+
     private List<Integer> generatedFrequencies;
+    private BackjumpState backjumpState;
+    private int headroom = 0;
+
+    final private CoordinationStatistics statistics = new CoordinationStatistics();
 
-    private int numInvalidChannels = 0;
-    private int numChannelConflicts = 0;
-    final private Map<Intermod.Type, Integer> numIMConflicts = new HashMap<>();
+    // Headroom above which the optimiser stops, in thousandths of the
+    // required spacing
+    static final int MAX_HEADROOM = 3000;
 
     // Settings
-    final boolean randomSelection = true;
+    private ChannelGeneratorWrapper.Selection frequencySelection = ChannelGeneratorWrapper.Selection.RANDOM;
+    private FrequencySetCache frequencySetCache = null;
+
+    // Selection and random number generator of the current generation,
+    // seeded so that a generation can be repeated exactly
+    private final SplittableRandom seeds = new SplittableRandom();
+    private ChannelGeneratorWrapper.Selection generationSelection = ChannelGeneratorWrapper.Selection.RANDOM;
+    private SplittableRandom generationRandom = new SplittableRandom();
+    private final Map<Equipment, List<int[]>> frequencyTemplates = new HashMap<>();
+
+    /**
+     * Search used to generate frequencies. BACKTRACKING searches every
+     * combination until a clear set is found. LOCAL_SEARCH starts from a
+     * complete set and moves conflicting channels until it is clear, which
+     * scales to many more channels but may give up with conflicts left.
+     */
+    enum GenerationStrategy {
+        BACKTRACKING,
+        LOCAL_SEARCH
+    }
 
     // Metrics
     enum Metrics {
@@ -32,18 +86,24 @@ final class Analyser {
         CALCULATE_INTERMODS_TIME,
         MERGE_INTERMODS_TIME,
         RESTORE_ANALYSIS_TIME,
-        TOTAL_TIME
+        TOTAL_TIME,
+        SEED
     }
 
     final private Map<Metrics, Long> metrics = new HashMap<>();
 
     Analyser() {
-        numIMConflicts.put(Intermod.Type.IM_2T3O, 0);
-        numIMConflicts.put(Intermod.Type.IM_2T5O, 0);
-        numIMConflicts.put(Intermod.Type.IM_2T7O, 0);
-        numIMConflicts.put(Intermod.Type.IM_2T9O, 0);
-        numIMConflicts.put(Intermod.Type.IM_3T3O, 0);
+        this(IntermodStore.Storage.HEAP);
+    }
 
+    /**
+     * Constructor for an analyser that keeps its intermods in the given
+     * storage.
+     *
+     * @param storage intermod storage
+     */
+    Analyser(@NotNull final IntermodStore.Storage storage) {
+        intermodStore = IntermodStore.create(storage);
         metrics.put(Metrics.ITERATION_COUNT, 0L);
         metrics.put(Metrics.INITIALISATION, 0L);
         metrics.put(Metrics.GET_POSSIBLE_FREQUENCIES, 0L);
@@ -52,6 +112,142 @@ final class Analyser {
         metrics.put(Metrics.MERGE_INTERMODS_TIME, 0L);
         metrics.put(Metrics.RESTORE_ANALYSIS_TIME, 0L);
         metrics.put(Metrics.TOTAL_TIME, 0L);
+        metrics.put(Metrics.SEED, 0L);
+
+        buildSnapshot();
+    }
+
+    /**
+     * Method to create an independent copy of the analysis for evaluating
+     * changes. The copy is made in a single pass over the existing state,
+     * intermods and conflicts are re-pointed at copied channels rather than
+     * being recalculated. The generation settings are carried over, and the
+     * fork shares the frequency set cache.
+     *
+     * @param channelCopies map to fill with each original channel and its copy
+     * @return forked analyser
+     */
+    final Analyser fork(@NotNull final Map<Channel, Channel> channelCopies) {
+        final Analyser fork = new Analyser(getIntermodStorage());
+        fork.version = version;
+        fork.startWrite();
+        fork.calculations.setIM2t3o(calculations.getIM2t3o());
+        fork.calculations.setIM2t5o(calculations.getIM2t5o());
+        fork.calculations.setIM2t7o(calculations.getIM2t7o());
+        fork.calculations.setIM2t9o(calculations.getIM2t9o());
+        fork.calculations.setIM3t3o(calculations.getIM3t3o());
+        fork.idCounter = idCounter;
+        fork.frequencySelection = frequencySelection;
+        fork.frequencySetCache = frequencySetCache;
+        for (Map.Entry<Equipment, List<int[]>> entry : frequencyTemplates.entrySet()) {
+            fork.frequencyTemplates.put(entry.getKey(), new ArrayList<>(entry.getValue()));
+        }
+
+        for (Channel channel : channels) {
+            final Channel channelCopy = channel.copySettings();
+            channelCopies.put(channel, channelCopy);
+            fork.channels.add(channelCopy);
+            fork.statistics.channelAdded(channelCopy);
+        }
+
+        // Only intermods referenced by conflicts need to be looked up later,
+        // stores that do not keep intermod objects are copied separately
+        final Map<Intermod, Intermod> intermodCopies = new IdentityHashMap<>();
+        for (Conflict conflict : conflicts) {
+            if (conflict.getConflictIntermod() != null) {
+                intermodCopies.put(conflict.getConflictIntermod(), null);
+            }
+        }
+        final IntermodStore intermodStoreCopy = fork.intermodStore.newStore();
+        for (Intermod intermod : intermodStore) {
+            final Intermod intermodCopy = new Intermod(
+                    intermod.getType(),
+                    channelCopies.get(intermod.getF1()),
+                    channelCopies.get(intermod.getF2()),
+                    channelCopies.get(intermod.getF3()),
+                    intermod.getFreq());
+            intermodStoreCopy.add(intermodCopy);
+            if (intermodCopies.containsKey(intermod)) {
+                intermodCopies.put(intermod, intermodCopy);
+            }
+        }
+
+        final Map<Conflict, Conflict> conflictCopies = new IdentityHashMap<>();
+        for (Conflict conflict : conflicts) {
+            final Channel channelCopy = channelCopies.get(conflict.getChannel());
+            final Conflict conflictCopy;
+            switch (conflict.getType()) {
+                case CHANNEL_SPACING:
+                    conflictCopy = new Conflict(channelCopy, channelCopies.get(conflict.getConflictChannel()));
+                    break;
+
+                case INTERMOD_SPACING:
+                    final Intermod intermod = conflict.getConflictIntermod();
+                    Intermod intermodCopy = intermodCopies.get(intermod);
+                    if (intermodCopy == null) {
+                        intermodCopy = new Intermod(
+                                intermod.getType(),
+                                channelCopies.get(intermod.getF1()),
+                                channelCopies.get(intermod.getF2()),
+                                channelCopies.get(intermod.getF3()),
+                                intermod.getFreq());
+                    }
+                    conflictCopy = new Conflict(channelCopy, intermodCopy);
+                    break;
+
+                default:
+                    conflictCopy = new Conflict(channelCopy);
+                    break;
+            }
+            conflictCopies.put(conflict, conflictCopy);
+            fork.conflicts.add(conflictCopy);
+        }
+        for (Channel channel : channels) {
+            final Channel channelCopy = channelCopies.get(channel);
+            for (Conflict conflict : channel.getConflicts()) {
+                fork.addConflict(channelCopy, conflictCopies.get(conflict));
+            }
+        }
+
+        fork.intermodStore = intermodStoreCopy;
+        fork.endWrite();
+        return fork;
+    }
+
+    /**
+     * Method to load saved analysis state into an empty analyser without
+     * recalculating it. The intermods must already be sorted and each
+     * conflict is added to its channel in list order.
+     *
+     * @param savedChannels channels of the saved analysis
+     * @param savedIntermods sorted intermods between the channels
+     * @param savedConflicts conflicts between the channels and intermods
+     * @throws IllegalStateException if the analyser already has channels
+     */
+    final void restore(
+            @NotNull final List<Channel> savedChannels,
+            @NotNull final IntermodStore savedIntermods,
+            @NotNull final List<Conflict> savedConflicts
+    ) {
+        if (!channels.isEmpty()) {
+            throw new IllegalStateException("Analysis can only be restored into an empty analyser");
+        }
+        startWrite();
+        try {
+            for (Channel channel : savedChannels) {
+                channels.add(channel);
+                statistics.channelAdded(channel);
+                changeRecorder.channelAdded(channel);
+                idCounter = Math.max(idCounter, channel.getId() + 1);
+            }
+            intermodStore = savedIntermods;
+            for (Conflict conflict : savedConflicts) {
+                conflicts.add(conflict);
+                addConflict(conflict.getChannel(), conflict);
+            }
+        } finally {
+            endWrite();
+        }
     }
 
     /**
@@ -64,18 +260,76 @@ final class Analyser {
         if (channel == null) {
             throw new IllegalArgumentException();
         }
-        channels.add(channel);
+        startWrite();
+        try {
+            channels.add(channel);
+            statistics.channelAdded(channel);
+            changeRecorder.channelAdded(channel);
+            idCounter = Math.max(idCounter, channel.getId() + 1);
+
+            // Calculate new intermods
+            IntermodStore newIntermods = calculateIntermods(channel);
+
+            // Generate intermod conflicts and merge intermods into list
+            getIMConflicts(channel, intermodStore, conflicts, true);
+            getIMConflicts(channels, newIntermods, conflicts, true);
+            intermodStore.mergeIn(newIntermods);
+
+            // Generate channel conflicts
+            getChannelConflicts(channel, channels.size(), conflicts, true, true);
+        } finally {
+            endWrite();
+        }
+    }
 
-        // Calculate new intermods
-        IntermodStore newIntermods = calculateIntermods(channel);
+    /**
+     * Method to add several channels to the analysis at once. Produces the
+     * same intermods and conflicts as adding the channels one at a time, but
+     * the new intermods are sorted and merged into the store only once.
+     *
+     * @param newChannels channels to add
+     * @throws IllegalArgumentException on null list or channel passed
+     */
+    final void addChannels(@NotNull final List<Channel> newChannels) throws IllegalArgumentException {
+        if (newChannels == null || newChannels.contains(null)) {
+            throw new IllegalArgumentException();
+        }
+        startWrite();
+        try {
+            final int firstNewChannel = channels.size();
+            for (Channel channel : newChannels) {
+                channels.add(channel);
+                statistics.channelAdded(channel);
+                changeRecorder.channelAdded(channel);
+                idCounter = Math.max(idCounter, channel.getId() + 1);
+            }
+
+            // Each channel forms intermods with the channels added before it.
+            // The intermods of different channels are independent, so a
+            // store that accepts concurrent adds is filled in parallel
+            final IntermodStore newIntermods = intermodStore.newStore();
+            if (newIntermods.isConcurrent()) {
+                IntStream.range(firstNewChannel, channels.size()).parallel().forEach((final int i) ->
+                        calculateIntermods(channels.get(i), i + 1, newIntermods));
+            } else {
+                for (int i = firstNewChannel; i < channels.size(); i++) {
+                    calculateIntermods(channels.get(i), i + 1, newIntermods);
+                }
+            }
+            newIntermods.sort();
 
-        // Generate intermod conflicts and merge intermods into list
-        getIMConflicts(channel, intermodStore, conflicts, true);
-        getIMConflicts(channels, newIntermods, conflicts, true);
-        intermodStore.mergeIn(newIntermods);
+            // Generate intermod conflicts and merge intermods into list
+            getIMConflicts(newChannels, intermodStore, conflicts, true);
+            getIMConflicts(channels, newIntermods, conflicts, true);
+            intermodStore.mergeIn(newIntermods);
 
-        // Generate channel conflicts
-        getChannelConflicts(channel, conflicts, true, true);
+            // Generate channel conflicts
+            for (int i = firstNewChannel; i < channels.size(); i++) {
+                getChannelConflicts(channels.get(i), i + 1, conflicts, true, true);
+            }
+        } finally {
+            endWrite();
+        }
     }
 
     /**
@@ -90,12 +344,20 @@ final class Analyser {
             throw new IllegalArgumentException();
         }
 
-        final boolean channelRemoved = channels.remove(channel);
-        if (channelRemoved) {
-            removeConflicts(channel);
-            intermodStore.remove(channel);
+        startWrite();
+        try {
+            final boolean channelRemoved = channels.remove(channel);
+            if (channelRemoved) {
+                changeRecorder.channelChanging(channel);
+                removeConflicts(channel);
+                intermodStore.remove(channel);
+                statistics.channelRemoved(channel);
+                changeRecorder.channelRemoved(channel);
+            }
+            return channelRemoved;
+        } finally {
+            endWrite();
         }
-        return channelRemoved;
     }
 
     /**
@@ -110,10 +372,187 @@ final class Analyser {
             throw new IllegalArgumentException();
         }
 
-        final boolean channelRemoved = removeChannel(channel);
-        if (channelRemoved) {
-            addChannel(channel);
+        startWrite();
+        try {
+            final boolean channelRemoved = removeChannel(channel);
+            if (channelRemoved) {
+                addChannel(channel);
+            }
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Method to start a batch of edits. Snapshots are not published until
+     * the batch is ended, so readers see the result of the whole batch at
+     * once. Every call must be paired with a call to endBatch.
+     */
+    final void startBatch() {
+        startWrite();
+    }
+
+    /**
+     * Method to end a batch of edits, publishing a snapshot of the result.
+     */
+    final void endBatch() {
+        endWrite();
+    }
+
+    /**
+     * Method to mark the start of a write to the analysis state. Lists that
+     * are referenced by the latest snapshot are copied before the first
+     * change so that readers of the snapshot never see a partial update.
+     * Writes may be nested, the version increases when the outermost write
+     * ends, and snapshots are not built while a write is in progress.
+     */
+    private void startWrite() {
+        if (writeDepth > 0) {
+            writeDepth++;
+            return;
+        }
+        writeLock.lock();
+        writeDepth = 1;
+        if (listsPublished) {
+            channels = new ArrayList<>(channels);
+            conflicts = new ArrayList<>(conflicts);
+            listsPublished = false;
+        }
+        if (!listeners.isEmpty() || journal != null) {
+            changeRecorder.start(intermodStore.size());
+        }
+    }
+
+    /**
+     * Method to mark the end of a write to the analysis state, increasing the
+     * version and publishing a snapshot of it if this is the outermost write.
+     */
+    private void endWrite() {
+        if (writeDepth > 1) {
+            writeDepth--;
+            return;
+        }
+        try {
+            final long newVersion = version + 1;
+            AnalyserChangeEvent event = null;
+            if (changeRecorder.isRecording()) {
+                event = changeRecorder.finish(newVersion, intermodStore.size());
+                if (event.isEmpty()) {
+                    event = null;
+                }
+            }
+
+            // Journal before the new version is visible so a reader of the
+            // snapshot always finds the changes that led to it
+            if (event != null && journal != null) {
+                journal.append(event);
+            }
+            version = newVersion;
+            buildSnapshot();
+            if (event != null) {
+                notifyListeners(event);
+            }
+        } finally {
+            writeDepth = 0;
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Method to build an immutable snapshot of the current version. The
+     * channel and conflict lists are shared with the snapshot until the next
+     * write, and the intermod list is shared for as long as it is current as
+     * the IntermodStore never changes a list in place. Must be called by the
+     * thread holding the write lock once the changes of a write are complete.
+     */
+    private void buildSnapshot() {
+        listsPublished = true;
+        snapshot = new AnalyserSnapshot(
+                version,
+                channels,
+                intermodStore.getIntermodList(),
+                conflicts,
+                statistics.copy(),
+                idCounter,
+                calculations.copy());
+    }
+
+    /**
+     * Method to set the journal that each change is appended to, or null to
+     * stop journalling.
+     *
+     * @param journal change journal
+     */
+    final void setJournal(final ChangeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Method to register a listener for changes to the analysis.
+     *
+     * @param listener listener to add
+     */
+    final void addListener(@NotNull final AnalyserListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException();
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Method to remove a registered listener.
+     *
+     * @param listener listener to remove
+     * @return true if the listener was registered
+     */
+    final boolean removeListener(@NotNull final AnalyserListener listener) {
+        return listeners.remove(listener);
+    }
+
+    final List<AnalyserListener> getListeners() {
+        return Collections.unmodifiableList(listeners);
+    }
+
+    /**
+     * Method to notify listeners that this analysis has replaced another one,
+     * reporting every previous channel and conflict as removed and every
+     * current channel and conflict as added.
+     *
+     * @param previous latest snapshot of the replaced analysis
+     */
+    final void notifyReplaced(@NotNull final AnalyserSnapshot previous) {
+        final AnalyserSnapshot snapshot = getSnapshot();
+        notifyListeners(new AnalyserChangeEvent(
+                snapshot.getVersion(),
+                new ArrayList<>(snapshot.getChannelList()),
+                new ArrayList<>(previous.getChannelList()),
+                AnalyserChangeEvent.newChannelSet(),
+                new ArrayList<>(),
+                new ArrayList<>(snapshot.getConflictList()),
+                new ArrayList<>(previous.getConflictList()),
+                snapshot.getNumIntermods() - previous.getNumIntermods()));
+    }
+
+    /**
+     * Method to deliver an event to the listeners on the shared notification
+     * thread so the writing thread does not wait for them. Events are
+     * delivered in the order they were published.
+     *
+     * @param event event to deliver
+     */
+    final void notifyListeners(@NotNull final AnalyserChangeEvent event) {
+        if (listeners.isEmpty()) {
+            return;
         }
+        NOTIFIER.execute(() -> {
+            for (AnalyserListener listener : listeners) {
+                try {
+                    listener.analysisChanged(event);
+                } catch (RuntimeException e) {
+                    // A failing listener must not stop delivery to others
+                }
+            }
+        });
     }
 
     /**
@@ -129,21 +568,55 @@ final class Analyser {
             throw new IllegalArgumentException();
         }
 
+        List<Conflict> newConflicts = getArtifactConflicts(channel);
+
+        // Only the channel being checked takes references to its conflicts
+        for (Conflict conflict : newConflicts) {
+            if (conflict.getChannel() == channel) {
+                channel.addConflict(conflict);
+            }
+        }
+
+        return newConflicts.size();
+    }
+
+    /**
+     * Method to count the conflicts a channel that is not in the analysis
+     * would generate, without changing the channel or the analysis. The
+     * conflicts with the channels and intermods already in the analysis are
+     * counted first, and if they reach the limit the intermods of the
+     * channel itself are not calculated.
+     *
+     * @param channel channel to test
+     * @param limit count at which to stop
+     * @return number of conflicts generated, or a number of at least the
+     * limit if the count was stopped
+     * @throws IllegalArgumentException on null channel
+     */
+    final int countConflicts(@NotNull final Channel channel, final int limit) throws IllegalArgumentException {
+        if (channel == null) {
+            throw new IllegalArgumentException();
+        }
+
+        List<Conflict> newConflicts = new ArrayList<>();
+        getIMConflicts(channel, intermodStore, newConflicts, false);
+        getChannelConflicts(channel, channels.size(), newConflicts, false, false);
+        if (newConflicts.size() < limit) {
+            getIMConflicts(channels, calculateIntermods(channel), newConflicts, false);
+        }
+        return newConflicts.size();
+    }
+
+    private List<Conflict> getArtifactConflicts(@NotNull final Channel channel) {
         // Calculate new intermods
         IntermodStore newIntermods = calculateIntermods(channel);
 
         // Generate conflicts and add to a local list
         List<Conflict> newConflicts = new ArrayList<>();
-        getIMConflicts(channel, intermodStore, newConflicts, true);
+        getIMConflicts(channel, intermodStore, newConflicts, false);
         getIMConflicts(channels, newIntermods, newConflicts, false);
-        getChannelConflicts(channel, newConflicts, true, false);
-
-        // Remove channel conflicts from counters
-        for (Conflict conflict : channel.getConflicts()) {
-            incrementConflictCounter(conflict, -1);
-        }
-
-        return newConflicts.size();
+        getChannelConflicts(channel, channels.size(), newConflicts, false, false);
+        return newConflicts;
     }
 
     /**
@@ -157,9 +630,26 @@ final class Analyser {
      * all other channels in channels list
      */
     private IntermodStore calculateIntermods(@NotNull final Channel newChannel) {
-        final IntermodStore newIntermods = new IntermodStore();
-        final int numChannels = channels.size();
+        final IntermodStore newIntermods = intermodStore.newStore();
+        calculateIntermods(newChannel, channels.size(), newIntermods);
+        newIntermods.sort();
+        return newIntermods;
+    }
 
+    /**
+     * Method to calculate the intermodulations between a single channel and
+     * the first channels of the channel list, adding them unsorted to a
+     * store.
+     *
+     * @param newChannel channel to generate intermods against
+     * @param numChannels number of channels from the start of the list to use
+     * @param newIntermods store to add intermods to
+     */
+    private void calculateIntermods(
+            @NotNull final Channel newChannel,
+            final int numChannels,
+            @NotNull final IntermodStore newIntermods
+    ) {
         for (int i = 0; i < numChannels; i++) {
             Channel channel2 = channels.get(i);
 
@@ -193,8 +683,6 @@ final class Analyser {
                 }
             }
         }
-        newIntermods.sort();
-        return newIntermods;
     }
 
     /**
@@ -237,9 +725,16 @@ final class Analyser {
         if (channels.size() == 0 || intermodStore.isEmpty()) {
             return;
         }
-        for (Channel channel : channels) {
-            getIMConflicts(channel, intermodStore, conflicts, addConflictToChannel);
+        final int[] rangeLos = new int[channels.size()];
+        final int[] rangeHis = new int[channels.size()];
+        for (int i = 0; i < rangeLos.length; i++) {
+            final Channel channel = channels.get(i);
+            rangeLos[i] = channel.getFreq() - channel.getEquipment().getMaxImSpacing();
+            rangeHis[i] = channel.getFreq() + channel.getEquipment().getMaxImSpacing();
         }
+        intermodStore.forRanges(rangeLos, rangeHis, (@NotNull final Intermod im, final int i) -> {
+            getChannelIMConflicts(channels.get(i), im, conflicts, addConflictToChannel);
+        });
     }
 
     private void getIMConflicts(
@@ -305,6 +800,7 @@ final class Analyser {
      * relevant channel if flag is set.
      *
      * @param newChannel channel to compare
+     * @param numChannels number of channels from the start of the list to compare against
      * @param conflicts list to add generated conflicts to
      * @param addConflictToNewChannel add conflict reference to channel if true
      * @param addConflictToListChannel add conflict reference to channel in
@@ -312,11 +808,13 @@ final class Analyser {
      */
     private void getChannelConflicts(
             @NotNull final Channel newChannel,
+            final int numChannels,
             @NotNull final List<Conflict> conflicts,
             final boolean addConflictToNewChannel,
             final boolean addConflictToListChannel
     ) {
-        for (Channel channel : channels) {
+        for (int i = 0; i < numChannels; i++) {
+            final Channel channel = channels.get(i);
             final int difference = Math.abs(channel.getFreq() - newChannel.getFreq());
             if (channel != newChannel) {
                 if (difference < channel.getEquipment().getChannelSpacing()) {
@@ -374,55 +872,60 @@ final class Analyser {
 
     /**
      * Method to add a single conflict reference to a channel and update
-     * invalid channels and conflicts counters.
+     * the statistics.
      *
      * @param channel channel to add conflict to
      * @param conflict conflict to add
      */
     private void addConflict(@NotNull final Channel channel, @NotNull final Conflict conflict) {
-        incrementConflictCounter(conflict, 1);
-        if (channel.getValidity() == Channel.Validity.VALID) {
-            numInvalidChannels++;
-        }
+        changeRecorder.channelChanging(channel);
         channel.addConflict(conflict);
+        statistics.conflictAdded(channel, conflict);
+        changeRecorder.conflictAdded(conflict);
     }
 
     /**
      * Method to remove a single conflict reference from a channel and update
-     * invalid channels counter.
+     * the statistics.
      *
      * @param channel channel to remove conflict from
      * @param conflict conflict to remove
      */
     private void removeConflict(@NotNull final Channel channel, @NotNull final Conflict conflict) {
-        incrementConflictCounter(conflict, -1);
-        final boolean invalidBefore = channel.getValidity() != Channel.Validity.VALID;
-
+        changeRecorder.channelChanging(channel);
         channel.removeConflict(conflict);
+        statistics.conflictRemoved(channel, conflict);
+        changeRecorder.conflictRemoved(conflict);
+    }
 
-        if (invalidBefore && channel.getValidity() == Channel.Validity.VALID) {
-            numInvalidChannels--;
-        }
+    final List<Channel> getChannelList() {
+        return channels;
     }
 
     /**
-     * Method to increment or decrement conflict counters depending on conflict
-     * type.
+     * Method to get a snapshot of the latest version of the analysis. May be
+     * called from any thread and never locks, while a write is in progress
+     * the snapshot of the previous version is returned.
      *
-     * @param conflict conflict to check
-     * @param incrementor integer to increment counter by (typically 1 or -1)
+     * @return latest snapshot
      */
-    private void incrementConflictCounter(@NotNull final Conflict conflict, final int incrementor) {
-        if (conflict.getType() == Conflict.Type.CHANNEL_SPACING) {
-            numChannelConflicts += incrementor;
-        } else if (conflict.getType() == Conflict.Type.INTERMOD_SPACING) {
-            Intermod.Type imType = conflict.getConflictIntermod().getType();
-            numIMConflicts.put(imType, numIMConflicts.get(imType) + incrementor);
-        }
+    @NotNull
+    final AnalyserSnapshot getSnapshot() {
+        return snapshot;
     }
 
-    final List<Channel> getChannelList() {
-        return channels;
+    /**
+     * Method to get the version of the analysis, which increases with every
+     * write.
+     *
+     * @return latest version
+     */
+    final long getVersion() {
+        return version;
+    }
+
+    final IntermodStore.Storage getIntermodStorage() {
+        return intermodStore.getStorage();
     }
 
     final IntermodStore getIntermodStore() {
@@ -437,77 +940,258 @@ final class Analyser {
         return calculations;
     }
 
-    final int getValidChannels() {
-        return channels.size() - numInvalidChannels;
+    /**
+     * Method to increase the version after the calculation settings have been
+     * changed through getCalculations, so later snapshots hold the new
+     * settings. The intermods and conflicts are not recalculated.
+     */
+    final void calculationsChanged() {
+        publishSettings();
     }
 
-    final int getNumChannelConflicts() {
-        return numChannelConflicts;
+    final int getIdCounter() {
+        return idCounter;
     }
 
-    final int getNumIMConflicts() {
-        return numIMConflicts.get(Intermod.Type.IM_2T3O)
-                + numIMConflicts.get(Intermod.Type.IM_2T5O)
-                + numIMConflicts.get(Intermod.Type.IM_2T7O)
-                + numIMConflicts.get(Intermod.Type.IM_2T9O)
-                + numIMConflicts.get(Intermod.Type.IM_3T3O);
+    /**
+     * Method to take the ID for a new channel. The new counter is included in
+     * snapshots from the next write.
+     *
+     * @return ID for the new channel
+     */
+    final int nextChannelId() {
+        return idCounter++;
     }
 
-    final int getNumIMConflicts(@NotNull final Intermod.Type type) {
-        if (type == null) {
-            return 0;
+    /**
+     * Method to set the ID to assign to the next new channel.
+     *
+     * @param idCounter next channel ID
+     */
+    final void setIdCounter(final int idCounter) {
+        this.idCounter = idCounter;
+        publishSettings();
+    }
+
+    /**
+     * Method to publish a new version for a change that does not touch the
+     * channel and conflict lists, so they stay shared with the previous
+     * snapshot. Inside a write the version increases when it ends.
+     */
+    private void publishSettings() {
+        writeLock.lock();
+        try {
+            if (writeDepth == 0) {
+                version++;
+                buildSnapshot();
+            }
+        } finally {
+            writeLock.unlock();
         }
-        return numIMConflicts.get(type);
     }
 
-    private long nsToMs(@NotNull final Metrics metric) {
-        if (metric == null) {
-            return 0;
+    final ChannelGeneratorWrapper.Selection getFrequencySelection() {
+        return frequencySelection;
+    }
+
+    /**
+     * Method to set the order in which the generator tries the possible
+     * frequencies of each channel.
+     *
+     * @param frequencySelection order to try frequencies in
+     * @throws IllegalArgumentException on null selection
+     */
+    final void setFrequencySelection(@NotNull final ChannelGeneratorWrapper.Selection frequencySelection) {
+        if (frequencySelection == null) {
+            throw new IllegalArgumentException();
         }
-        return metrics.get(metric) / 1000000;
+        this.frequencySelection = frequencySelection;
     }
 
-    private double percentage(@NotNull final Metrics metric, @NotNull final Metrics total) {
-        return 100 * metrics.get(metric) / (double) metrics.get(total);
+    final FrequencySetCache getFrequencySetCache() {
+        return frequencySetCache;
     }
 
-    private void printMetrics() {
-        String format = "│ \u001B[31m%24s\u001B[0m │ %5dms │ %6.1f%% │%n";
-        System.out.println("┌──────────────────────────┬───────────────────┐");
-        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17d │%n",
-                "ITERATION COUNT",
-                metrics.get(Metrics.ITERATION_COUNT));
-        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17s │%n",
-                "TIME PER ITERATION",
-                String.format("%dµs", metrics.get(Metrics.TOTAL_TIME) / metrics.get(Metrics.ITERATION_COUNT) / 1000));
-        System.out.println("├──────────────────────────┼─────────┬─────────┤");
-        System.out.printf(
-                "│ \u001B[31m%24s\u001B[0m │ \u001B[31m%7s\u001B[0m │ \u001B[31m%7s\u001B[0m │%n",
-                "STAGE", "TIME", "PERCENT");
-        System.out.println("├──────────────────────────┼─────────┼─────────┤");
-        System.out.printf(format,
-                "INITIALISATION",
-                nsToMs(Metrics.INITIALISATION),
-                percentage(Metrics.INITIALISATION, Metrics.TOTAL_TIME));
-        System.out.printf(format,
-                "GET POSSIBLE FREQUENCIES",
-                nsToMs(Metrics.GET_POSSIBLE_FREQUENCIES),
-                percentage(Metrics.GET_POSSIBLE_FREQUENCIES, Metrics.TOTAL_TIME));
-        System.out.printf(format,
-                "FINDING RANDOM NUMBERS",
-                nsToMs(Metrics.FIND_RANDOM_NUMBER_TIME),
-                percentage(Metrics.FIND_RANDOM_NUMBER_TIME, Metrics.TOTAL_TIME));
-        System.out.printf(format,
-                "CALCULATING INTERMODS",
-                nsToMs(Metrics.CALCULATE_INTERMODS_TIME),
-                percentage(Metrics.CALCULATE_INTERMODS_TIME, Metrics.TOTAL_TIME));
-        System.out.printf(format,
-                "MERGING INTERMODS",
-                nsToMs(Metrics.MERGE_INTERMODS_TIME),
-                percentage(Metrics.MERGE_INTERMODS_TIME, Metrics.TOTAL_TIME));
-        System.out.printf(format,
-                "RESTORING ANALYSIS",
-                nsToMs(Metrics.RESTORE_ANALYSIS_TIME),
+    /**
+     * Method to set the cache of frequency sets consulted before each
+     * generation, or null to always search.
+     *
+     * @param frequencySetCache cache of frequency sets
+     */
+    final void setFrequencySetCache(final FrequencySetCache frequencySetCache) {
+        this.frequencySetCache = frequencySetCache;
+    }
+
+    /**
+     * Method to add a frequency template for an equipment, offsets from the
+     * lowest frequency that are known to be clear of each other. Templates
+     * are tried in the order they were added before any search.
+     *
+     * @param equipment equipment the template is for
+     * @param offsets offsets in kHz, starting at 0 and ascending
+     * @throws IllegalArgumentException if the offsets do not start at 0, are
+     * not ascending or do not suit the tuning accuracy of the equipment
+     */
+    final void addFrequencyTemplate(
+            @NotNull final Equipment equipment,
+            @NotNull final int[] offsets
+    ) throws IllegalArgumentException {
+        if (equipment == null || offsets == null || offsets.length == 0 || offsets[0] != 0) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] <= offsets[i - 1] || !equipment.isFrequencyValid(offsets[i])) {
+                throw new IllegalArgumentException();
+            }
+        }
+        frequencyTemplates.computeIfAbsent(equipment, (final Equipment key) -> new ArrayList<>()).add(offsets.clone());
+    }
+
+    final List<int[]> getFrequencyTemplates(@NotNull final Equipment equipment) {
+        return Collections.unmodifiableList(frequencyTemplates.getOrDefault(equipment, Collections.emptyList()));
+    }
+
+    final void clearFrequencyTemplates() {
+        frequencyTemplates.clear();
+    }
+
+    final CoordinationStatistics getStatistics() {
+        return statistics;
+    }
+
+    final int getValidChannels() {
+        return statistics.getNumChannels(Channel.Validity.VALID);
+    }
+
+    final int getNumChannelConflicts() {
+        return statistics.getNumConflicts(Conflict.Type.CHANNEL_SPACING);
+    }
+
+    final int getNumIMConflicts() {
+        return statistics.getNumIMConflicts();
+    }
+
+    final int getNumIMConflicts(@NotNull final Intermod.Type type) {
+        return statistics.getNumIMConflicts(type);
+    }
+
+    /**
+     * Method to choose channels to move so that every conflict has at least
+     * one of its channels moved. Channels without a range cannot be moved
+     * and are never chosen. The fewest channels are chosen by taking the
+     * channel involved in the most remaining conflicts each time, with ties
+     * going to the channel added last. With partners included, every
+     * movable channel involved in a conflict is chosen instead.
+     *
+     * @param includePartners true to choose every channel involved in a
+     *                        conflict
+     * @return channels to move, in the order of the channel list
+     */
+    final List<Channel> getChannelsToRepair(final boolean includePartners) {
+        final Map<Channel, List<Conflict>> channelConflicts = new IdentityHashMap<>();
+        for (Conflict conflict : conflicts) {
+            for (Channel channel : conflict.getInvolvedChannels()) {
+                if (channel.hasRange()) {
+                    channelConflicts.computeIfAbsent(channel, (final Channel key) -> new ArrayList<>()).add(conflict);
+                }
+            }
+        }
+
+        final Set<Channel> chosen = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (includePartners) {
+            chosen.addAll(channelConflicts.keySet());
+        } else {
+            final Set<Conflict> uncovered = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (List<Conflict> list : channelConflicts.values()) {
+                uncovered.addAll(list);
+            }
+            while (!uncovered.isEmpty()) {
+                Channel best = null;
+                int bestCovered = 0;
+                for (int i = channels.size() - 1; i >= 0; i--) {
+                    final Channel channel = channels.get(i);
+                    int covered = 0;
+                    for (Conflict conflict : channelConflicts.getOrDefault(channel, Collections.emptyList())) {
+                        if (uncovered.contains(conflict)) {
+                            covered++;
+                        }
+                    }
+                    if (covered > bestCovered) {
+                        best = channel;
+                        bestCovered = covered;
+                    }
+                }
+                if (best == null) {
+                    break;
+                }
+                chosen.add(best);
+                uncovered.removeAll(channelConflicts.get(best));
+            }
+        }
+
+        final List<Channel> channelsToRepair = new ArrayList<>(chosen.size());
+        for (Channel channel : channels) {
+            if (chosen.contains(channel)) {
+                channelsToRepair.add(channel);
+            }
+        }
+        return channelsToRepair;
+    }
+
+    private long nsToMs(@NotNull final Metrics metric) {
+        if (metric == null) {
+            return 0;
+        }
+        return metrics.get(metric) / 1000000;
+    }
+
+    private double percentage(@NotNull final Metrics metric, @NotNull final Metrics total) {
+        return 100 * metrics.get(metric) / (double) metrics.get(total);
+    }
+
+    private void printMetrics() {
+        String format = "│ \u001B[31m%24s\u001B[0m │ %5dms │ %6.1f%% │%n";
+        System.out.println("┌──────────────────────────┬───────────────────┐");
+        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17d │%n",
+                "ITERATION COUNT",
+                metrics.get(Metrics.ITERATION_COUNT));
+        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17d │%n",
+                "SEED",
+                metrics.get(Metrics.SEED));
+        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17s │%n",
+                "SELECTION",
+                generationSelection);
+        System.out.printf("│ \u001B[31m%24s\u001B[0m │ %-17s │%n",
+                "TIME PER ITERATION",
+                String.format("%dµs", metrics.get(Metrics.TOTAL_TIME) / Math.max(1, metrics.get(Metrics.ITERATION_COUNT)) / 1000));
+        System.out.println("├──────────────────────────┼─────────┬─────────┤");
+        System.out.printf(
+                "│ \u001B[31m%24s\u001B[0m │ \u001B[31m%7s\u001B[0m │ \u001B[31m%7s\u001B[0m │%n",
+                "STAGE", "TIME", "PERCENT");
+        System.out.println("├──────────────────────────┼─────────┼─────────┤");
+        System.out.printf(format,
+                "INITIALISATION",
+                nsToMs(Metrics.INITIALISATION),
+                percentage(Metrics.INITIALISATION, Metrics.TOTAL_TIME));
+        System.out.printf(format,
+                "GET POSSIBLE FREQUENCIES",
+                nsToMs(Metrics.GET_POSSIBLE_FREQUENCIES),
+                percentage(Metrics.GET_POSSIBLE_FREQUENCIES, Metrics.TOTAL_TIME));
+        System.out.printf(format,
+                "FINDING RANDOM NUMBERS",
+                nsToMs(Metrics.FIND_RANDOM_NUMBER_TIME),
+                percentage(Metrics.FIND_RANDOM_NUMBER_TIME, Metrics.TOTAL_TIME));
+        System.out.printf(format,
+                "CALCULATING INTERMODS",
+                nsToMs(Metrics.CALCULATE_INTERMODS_TIME),
+                percentage(Metrics.CALCULATE_INTERMODS_TIME, Metrics.TOTAL_TIME));
+        System.out.printf(format,
+                "MERGING INTERMODS",
+                nsToMs(Metrics.MERGE_INTERMODS_TIME),
+                percentage(Metrics.MERGE_INTERMODS_TIME, Metrics.TOTAL_TIME));
+        System.out.printf(format,
+                "RESTORING ANALYSIS",
+                nsToMs(Metrics.RESTORE_ANALYSIS_TIME),
                 percentage(Metrics.RESTORE_ANALYSIS_TIME, Metrics.TOTAL_TIME));
         System.out.println("├──────────────────────────┼─────────┼─────────┤");
         System.out.printf(format,
@@ -532,13 +1216,411 @@ final class Analyser {
         metrics.put(Metrics.MERGE_INTERMODS_TIME, 0L);
         metrics.put(Metrics.RESTORE_ANALYSIS_TIME, 0L);
         metrics.put(Metrics.TOTAL_TIME, 0L);
+        metrics.put(Metrics.SEED, 0L);
+    }
+
+    /**
+     * Method to start a generation, resetting the metrics and seeding the
+     * random number generator used by the search. The seed is recorded in
+     * the metrics so the generation can be repeated.
+     *
+     * @param selection order to try frequencies in
+     * @param seed seed of the random number generator
+     */
+    private void startGeneration(@NotNull final ChannelGeneratorWrapper.Selection selection, final long seed) {
+        resetMetrics();
+        metrics.put(Metrics.SEED, seed);
+        generationSelection = selection;
+        generationRandom = new SplittableRandom(seed);
+    }
+
+    /**
+     * Method to draw a new seed for a generation that is not given one.
+     *
+     * @return seed
+     */
+    final long nextSeed() {
+        return seeds.nextLong();
+    }
+
+    /**
+     * Method to get the seed of the last generation, which repeats that
+     * generation exactly if it is passed to updateFrequencies with the same
+     * channels, analysis and selection.
+     *
+     * @return seed of the last generation
+     */
+    final long getLastSeed() {
+        return metrics.get(Metrics.SEED);
     }
 
     final List<Integer> updateFrequencies(
             @NotNull final List<Channel> channelsToUpdate
     ) throws ChannelMissingRangeException, InvalidFrequencyException {
-        resetMetrics();
+        return updateFrequencies(channelsToUpdate, GenerationStrategy.BACKTRACKING);
+    }
+
+    /**
+     * Method to generate frequencies for channels that are not in the
+     * analysis, using the given search.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use
+     * @return frequencies in the order of the channels, null for a channel
+     * not placed
+     * @throws ChannelMissingRangeException if a channel has no range
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> updateFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final GenerationStrategy strategy
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        return updateFrequencies(channelsToUpdate, strategy, frequencySelection, nextSeed());
+    }
+
+    /**
+     * Method to generate frequencies for channels that are not in the
+     * analysis, using the given search, selection and seed. The same seed,
+     * selection, channels and analysis always give the same search, so
+     * its iteration count and timings can be compared between runs.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use
+     * @param selection order to try frequencies in
+     * @param seed seed of the random number generator used by the search
+     * @return frequencies in the order of the channels, null for a channel
+     * not placed
+     * @throws ChannelMissingRangeException if a channel has no range
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> updateFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final GenerationStrategy strategy,
+            @NotNull final ChannelGeneratorWrapper.Selection selection,
+            final long seed
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        if (channelsToUpdate == null || strategy == null || selection == null) {
+            throw new IllegalArgumentException();
+        }
+        startGeneration(selection, seed);
+
+        startWrite();
+        try {
+            if (frequencySetCache != null) {
+                return generateCachedFrequencies(channelsToUpdate, strategy);
+            }
+            return findFrequencies(channelsToUpdate, strategy);
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Method to find frequencies from the frequency templates, or with the
+     * given search if no template fits.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use if no template fits
+     * @return frequencies in the order of the channels, null for a channel
+     * not placed
+     * @throws ChannelMissingRangeException if a channel has no range
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private List<Integer> findFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final GenerationStrategy strategy
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        if (!frequencyTemplates.isEmpty()) {
+            for (Channel channel : channelsToUpdate) {
+                if (!channel.hasRange()) {
+                    throw new ChannelMissingRangeException();
+                }
+            }
+            final List<Integer> frequencies = fitTemplates(channelsToUpdate);
+            if (frequencies != null) {
+                return frequencies;
+            }
+        }
+        return strategy == GenerationStrategy.LOCAL_SEARCH
+                ? searchFrequencies(channelsToUpdate)
+                : generateFrequencies(channelsToUpdate);
+    }
+
+    /**
+     * Method to generate frequencies using the frequency set cache. The sets
+     * stored for the same generation are tried first, and the first that is
+     * still clear of the analysis is used without a search. Otherwise the
+     * templates and search are run and a clear result is stored for next
+     * time.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use if no stored set is clear
+     * @return frequencies in the order of the channels, null for a channel
+     * not placed
+     * @throws ChannelMissingRangeException if a channel has no range
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private List<Integer> generateCachedFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final GenerationStrategy strategy
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        for (Channel channel : channelsToUpdate) {
+            if (!channel.hasRange()) {
+                throw new ChannelMissingRangeException();
+            }
+        }
+
+        final String key = FrequencySetCache.getKey(channelsToUpdate, channels, calculations);
+        final int[] order = FrequencySetCache.getOrder(channelsToUpdate);
+        for (int[] set : frequencySetCache.get(key)) {
+            if (isClearSet(channelsToUpdate, order, set)) {
+                final Integer[] frequencies = new Integer[channelsToUpdate.size()];
+                for (int i = 0; i < order.length; i++) {
+                    frequencies[order[i]] = set[i];
+                }
+                return Arrays.asList(frequencies);
+            }
+        }
+
+        final List<Integer> frequencies = findFrequencies(channelsToUpdate, strategy);
+        final int[] set = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            final Integer frequency = frequencies.get(order[i]);
+            if (frequency == null) {
+                return frequencies;
+            }
+            set[i] = frequency;
+        }
+        if (isClearSet(channelsToUpdate, order, set)) {
+            frequencySetCache.put(key, set);
+        }
+        return frequencies;
+    }
+
+    /**
+     * Method to check in a single pass whether a set of frequencies for
+     * channels that are not in the analysis adds no conflicts. Each channel
+     * is checked against the channels and intermods in the analysis and
+     * those placed before it, then placed. The analysis and the frequencies
+     * of the channels are restored afterwards.
+     *
+     * @param channelsToUpdate channels the set is for
+     * @param order canonical order of the channels
+     * @param set frequencies in canonical order
+     * @return true if the set is clear
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private boolean isClearSet(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final int[] order,
+            @NotNull final int[] set
+    ) throws InvalidFrequencyException {
+        if (set.length != order.length) {
+            return false;
+        }
+        final int[] previousFrequencies = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            final Channel channel = channelsToUpdate.get(order[i]);
+            previousFrequencies[i] = channel.getFreq();
+            if (!channel.getRange().isValidFrequency(set[i])
+                    || !channel.getEquipment().isFrequencyValid(set[i])) {
+                return false;
+            }
+        }
+
+        final int numFixedChannels = channels.size();
+        intermodStore.pushToBackupStack();
+        try {
+            for (int i = 0; i < order.length; i++) {
+                final Channel channel = channelsToUpdate.get(order[i]);
+                channel.setFreq(set[i]);
+                if (!placeIfClear(channel)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            while (channels.size() > numFixedChannels) {
+                channels.remove(channels.size() - 1);
+            }
+            intermodStore.popFromBackupStack();
+            for (int i = 0; i < order.length; i++) {
+                final Channel channel = channelsToUpdate.get(order[i]);
+                channel.setFreqAndEquipment(previousFrequencies[i], channel.getEquipment(), channel.getRange());
+            }
+        }
+    }
+
+    /**
+     * Method to place a channel that is not in the analysis if it adds no
+     * conflicts. The channel is checked against the channels and intermods
+     * in the analysis before its own intermods are calculated. The caller is
+     * responsible for taking the channel out again.
+     *
+     * @param channel channel to place
+     * @return true if the channel was clear and has been placed
+     */
+    private boolean placeIfClear(@NotNull final Channel channel) {
+        final List<Conflict> newConflicts = new ArrayList<>();
+        getIMConflicts(channel, intermodStore, newConflicts, false);
+        getChannelConflicts(channel, channels.size(), newConflicts, false, false);
+        if (!newConflicts.isEmpty()) {
+            return false;
+        }
+        final IntermodStore newIntermodStore = calculateIntermods(channel);
+        getIMConflicts(channels, newIntermodStore, newConflicts, false);
+        if (!newConflicts.isEmpty()) {
+            return false;
+        }
+        channels.add(channel);
+        intermodStore.mergeIn(newIntermodStore);
+        return true;
+    }
+
+    /**
+     * Method to find frequencies for channels from the frequency templates.
+     * Channels are grouped by equipment and range, and each group is given
+     * the first offsets of a template for its equipment, slid up its range
+     * until every channel is clear of the analysis and of the groups already
+     * placed. Each position is first checked against the channels and
+     * intermods in the analysis alone, and the intermods of the group are
+     * only calculated at positions that pass.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @return frequencies in the order of the channels, or null if a group
+     * has no template that fits
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private List<Integer> fitTemplates(
+            @NotNull final List<Channel> channelsToUpdate
+    ) throws InvalidFrequencyException {
+        final List<List<Channel>> groups = new ArrayList<>();
+        for (Channel channel : channelsToUpdate) {
+            List<Channel> channelGroup = null;
+            for (List<Channel> group : groups) {
+                if (group.get(0).getEquipment().equals(channel.getEquipment())
+                        && group.get(0).getRange().equals(channel.getRange())) {
+                    channelGroup = group;
+                    break;
+                }
+            }
+            if (channelGroup == null) {
+                channelGroup = new ArrayList<>();
+                groups.add(channelGroup);
+            }
+            channelGroup.add(channel);
+        }
+
+        final int[] previousFrequencies = new int[channelsToUpdate.size()];
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            previousFrequencies[i] = channelsToUpdate.get(i).getFreq();
+        }
+        final int numFixedChannels = channels.size();
+        intermodStore.pushToBackupStack();
+        int numGroupsPlaced = 0;
+        boolean fitted = false;
+        try {
+            for (List<Channel> group : groups) {
+                if (!fitTemplate(group)) {
+                    return null;
+                }
+                numGroupsPlaced++;
+            }
+            fitted = true;
+            final List<Integer> frequencies = new ArrayList<>(channelsToUpdate.size());
+            for (Channel channel : channelsToUpdate) {
+                frequencies.add(channel.getFreq());
+            }
+            return frequencies;
+        } finally {
+            while (channels.size() > numFixedChannels) {
+                channels.remove(channels.size() - 1);
+            }
+            for (int i = 0; i <= numGroupsPlaced; i++) {
+                intermodStore.popFromBackupStack();
+            }
+            if (!fitted) {
+                for (int i = 0; i < previousFrequencies.length; i++) {
+                    final Channel channel = channelsToUpdate.get(i);
+                    channel.setFreqAndEquipment(previousFrequencies[i], channel.getEquipment(), channel.getRange());
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to place a group of channels with the same equipment and range
+     * at the lowest position of any template that fits. A placed group leaves
+     * a backup of the intermod store on the stack for the caller to pop.
+     *
+     * @param group channels with the same equipment and range
+     * @return true if the group was placed
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private boolean fitTemplate(@NotNull final List<Channel> group) throws InvalidFrequencyException {
+        final Equipment equipment = group.get(0).getEquipment();
+        final Range range = group.get(0).getRange();
+        final int tuningAccuracy = equipment.getTuningAccuracy();
+        final int firstPosition = (range.getLo() + tuningAccuracy - 1) / tuningAccuracy * tuningAccuracy;
+        final List<Conflict> newConflicts = new ArrayList<>();
+
+        for (int[] offsets : frequencyTemplates.getOrDefault(equipment, Collections.emptyList())) {
+            if (offsets.length < group.size()) {
+                continue;
+            }
+            final int lastPosition = range.getHi() - offsets[group.size() - 1];
+            for (int position = firstPosition; position <= lastPosition; position += tuningAccuracy) {
+                boolean clear = true;
+                for (int i = 0; i < group.size() && clear; i++) {
+                    final Channel channel = group.get(i);
+                    channel.setFreq(position + offsets[i]);
+                    getIMConflicts(channel, intermodStore, newConflicts, false);
+                    getChannelConflicts(channel, channels.size(), newConflicts, false, false);
+                    clear = newConflicts.isEmpty();
+                    newConflicts.clear();
+                }
+                if (!clear) {
+                    continue;
+                }
+
+                final int numPlacedChannels = channels.size();
+                intermodStore.pushToBackupStack();
+                for (int i = 0; i < group.size() && clear; i++) {
+                    clear = placeIfClear(group.get(i));
+                }
+                if (clear) {
+                    return true;
+                }
+                while (channels.size() > numPlacedChannels) {
+                    channels.remove(channels.size() - 1);
+                }
+                intermodStore.popFromBackupStack();
+            }
+        }
+        return false;
+    }
 
+    private List<Integer> searchFrequencies(
+            @NotNull final List<Channel> channelsToUpdate
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        for (Channel channel : channelsToUpdate) {
+            if (!channel.hasRange()) {
+                throw new ChannelMissingRangeException();
+            }
+        }
+
+        final long startTime = System.nanoTime();
+        final LocalSearchGenerator generator = new LocalSearchGenerator(
+                this, channelsToUpdate, generationSelection, generationRandom.split());
+        final List<Integer> frequencies = generator.generate();
+        metrics.put(Metrics.ITERATION_COUNT, (long) generator.getNumSteps());
+        metrics.put(Metrics.TOTAL_TIME, System.nanoTime() - startTime);
+        return frequencies;
+    }
+
+    private List<Integer> generateFrequencies(
+            @NotNull final List<Channel> channelsToUpdate
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
         generatedFrequencies = new ArrayList<>();
 
         final long startTime = System.nanoTime();
@@ -547,19 +1629,31 @@ final class Analyser {
             if (!channel.hasRange()) {
                 throw new ChannelMissingRangeException();
             }
-            ChannelGeneratorWrapper channelGeneratorWrapper = new ChannelGeneratorWrapper(channel);
-            channelGeneratorWrapper.getPossibleFrequencies(channels, intermodStore);
-            channelGeneratorWrappers.add(channelGeneratorWrapper);
+            channelGeneratorWrappers.add(new ChannelGeneratorWrapper(channel, generationRandom.split()));
         }
+        ChannelGeneratorWrapper.getPossibleFrequencies(channelGeneratorWrappers, channels, intermodStore);
         Collections.sort(channelGeneratorWrappers);
+        ChannelGeneratorWrapper.breakSymmetry(channelGeneratorWrappers);
         metrics.put(Analyser.Metrics.INITIALISATION, metrics.get(Analyser.Metrics.INITIALISATION) + System.nanoTime() - startTime);
 
+        backjumpState = new BackjumpState(channelGeneratorWrappers);
         calculateNewChannelFrequency(0, channelGeneratorWrappers);
+        backjumpState = null;
         metrics.put(Metrics.TOTAL_TIME, System.nanoTime() - startTime);
 
         printMetrics();
 
-        return generatedFrequencies;
+        // Frequencies are found in search order, return them in the order of
+        // the channels passed, with null for any channel not placed
+        final Map<Channel, Integer> placedFrequencies = new IdentityHashMap<>();
+        for (int i = 0; i < generatedFrequencies.size(); i++) {
+            placedFrequencies.put(channelGeneratorWrappers.get(i).getChannel(), generatedFrequencies.get(i));
+        }
+        final List<Integer> frequencies = new ArrayList<>(channelsToUpdate.size());
+        for (Channel channel : channelsToUpdate) {
+            frequencies.add(placedFrequencies.get(channel));
+        }
+        return frequencies;
     }
 
     final boolean calculateNewChannelFrequency(
@@ -575,16 +1669,22 @@ final class Analyser {
         Channel testChannel = channelToUpdate.getChannel();
 
         startTime = System.nanoTime();
-        channelToUpdate.getPossibleFrequencies(channels, intermodStore);
+        backjumpState.startLevel(index);
+        channelToUpdate.getPossibleFrequencies(channels, intermodStore, backjumpState, index);
         metrics.put(Analyser.Metrics.GET_POSSIBLE_FREQUENCIES, metrics.get(Analyser.Metrics.GET_POSSIBLE_FREQUENCIES) + System.nanoTime() - startTime);
 
         while (channelToUpdate.hasPossibleFrequencies()) {
             metrics.put(Metrics.ITERATION_COUNT, metrics.get(Metrics.ITERATION_COUNT) + 1);
 
             startTime = System.nanoTime();
-            channelToUpdate.setTestFrequency(randomSelection);
+            channelToUpdate.setTestFrequency(generationSelection);
             metrics.put(Metrics.FIND_RANDOM_NUMBER_TIME, metrics.get(Metrics.FIND_RANDOM_NUMBER_TIME) + System.nanoTime() - startTime);
 
+            if (backjumpState.isNogood(index)) {
+                channelToUpdate.excludeProposedFrequency();
+                continue;
+            }
+
             startTime = System.nanoTime();
             IntermodStore newIntermodStore = calculateIntermods(testChannel);
             newConflicts.clear();
@@ -610,6 +1710,439 @@ final class Analyser {
                 if (valid) {
                     return true;
                 }
+
+                // Keep jumping back if the failure was not caused by this
+                // channel's frequency
+                if (backjumpState.getBackjumpLevel() < index) {
+                    channelToUpdate.restoreExcludedFrequencies();
+                    return false;
+                }
+            } else {
+                for (Conflict conflict : newConflicts) {
+                    backjumpState.addCulprit(index, conflict);
+                }
+            }
+
+            // Interchangeable channels chosen later need not try a frequency
+            // that has failed here
+            channelToUpdate.excludeProposedFrequency();
+        }
+        channelToUpdate.restoreExcludedFrequencies();
+        backjumpState.fail(index);
+        return false;
+    }
+
+    /**
+     * Method to find frequencies for channels that are not in the analysis
+     * with as much headroom as possible. The headroom of a channel is its
+     * distance from the nearest channel or intermod as a share of the
+     * spacing required from it, and the headroom of a plot is the smallest
+     * headroom of any channel it places or affects.
+     *
+     * A clear plot is found by local search first. The optimiser then takes
+     * each channel whose headroom limits the plot and searches its range
+     * for a frequency with more headroom. The best plot so far bounds the
+     * search: the possible frequencies of the channel are found with the
+     * spacing widened to that headroom, so frequencies that cannot improve
+     * on it are never tried, and a frequency is dropped as soon as its
+     * headroom from the channels and intermods already placed falls short
+     * of the best frequency found for the channel. When no limiting channel
+     * can be moved to more headroom the search starts again from a new clear
+     * plot, and the best plot found is returned at the time limit.
+     *
+     * @param channelsToUpdate channels to find frequencies for
+     * @param timeLimit time limit in milliseconds
+     * @return frequencies in the order of the channels, all null if no
+     * clear plot was found
+     * @throws ChannelMissingRangeException if a channel has no range
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> optimiseHeadroom(
+            @NotNull final List<Channel> channelsToUpdate,
+            final long timeLimit
+    ) throws ChannelMissingRangeException, InvalidFrequencyException {
+        if (channelsToUpdate == null) {
+            throw new IllegalArgumentException();
+        }
+        for (Channel channel : channelsToUpdate) {
+            if (!channel.hasRange()) {
+                throw new ChannelMissingRangeException();
+            }
+        }
+        startGeneration(frequencySelection, nextSeed());
+
+        startWrite();
+        try {
+            final long startTime = System.nanoTime();
+            final long deadline = startTime + timeLimit * 1000000;
+            List<Integer> bestFrequencies = new ArrayList<>(Collections.nCopies(channelsToUpdate.size(), (Integer) null));
+            headroom = 0;
+            do {
+                final int margin = findHeadroomPlot(channelsToUpdate, deadline);
+                if (margin > headroom) {
+                    headroom = margin;
+                    bestFrequencies = new ArrayList<>(channelsToUpdate.size());
+                    for (Channel channel : channelsToUpdate) {
+                        bestFrequencies.add(channel.getFreq());
+                    }
+                }
+            } while (headroom < MAX_HEADROOM && System.nanoTime() < deadline);
+            metrics.put(Metrics.TOTAL_TIME, System.nanoTime() - startTime);
+            return bestFrequencies;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Method to find one clear plot by local search and raise its headroom
+     * until no limiting channel can be moved to more headroom. The channels
+     * are left at the frequencies of the plot, but not in the analysis.
+     *
+     * @param channelsToUpdate channels to find frequencies for
+     * @param deadline time in nanoseconds to give up at
+     * @return headroom of the plot in thousandths, 0 if no clear plot was
+     * found
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private int findHeadroomPlot(
+            @NotNull final List<Channel> channelsToUpdate,
+            final long deadline
+    ) throws InvalidFrequencyException {
+        final long startTime = System.nanoTime();
+        final LocalSearchGenerator generator = new LocalSearchGenerator(
+                this, channelsToUpdate, generationSelection, generationRandom.split());
+        final List<Integer> startFrequencies = generator.generate();
+        metrics.put(Metrics.INITIALISATION, metrics.get(Metrics.INITIALISATION) + System.nanoTime() - startTime);
+        if (!generator.isClear()) {
+            return 0;
+        }
+
+        // The plot stays clear throughout, so channels are placed without
+        // recording conflicts
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            final Channel channel = channelsToUpdate.get(i);
+            channel.setFreq(startFrequencies.get(i));
+            placeChannel(channel);
+        }
+
+        final int[] margins = new int[channelsToUpdate.size()];
+        int margin;
+        while (true) {
+            margin = MAX_HEADROOM;
+            for (int i = 0; i < margins.length; i++) {
+                margins[i] = getHeadroom(channelsToUpdate.get(i), -1);
+                margin = Math.min(margin, margins[i]);
+            }
+            if (margin >= MAX_HEADROOM || System.nanoTime() >= deadline) {
+                break;
+            }
+
+            boolean improved = false;
+            for (int i = 0; i < margins.length && !improved; i++) {
+                if (margins[i] == margin) {
+                    improved = improveHeadroom(channelsToUpdate.get(i), margin, deadline);
+                }
+            }
+            if (!improved) {
+                break;
+            }
+        }
+
+        for (Channel channel : channelsToUpdate) {
+            unplaceChannel(channel);
+        }
+        return margin;
+    }
+
+    /**
+     * Method to get the headroom of the plot found by the last call to
+     * optimiseHeadroom.
+     *
+     * @return headroom in thousandths of the required spacing, 0 if no
+     * clear plot was found
+     */
+    final int getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Method to move a channel to the frequency in its range with the most
+     * headroom, if that is more than its current headroom.
+     *
+     * @param channel placed channel to move
+     * @param margin current headroom of the channel, in thousandths
+     * @param deadline time in nanoseconds to give up at
+     * @return true if the channel was moved
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private boolean improveHeadroom(
+            @NotNull final Channel channel,
+            final int margin,
+            final long deadline
+    ) throws InvalidFrequencyException {
+        final int startFrequency = channel.getFreq();
+        unplaceChannel(channel);
+
+        long startTime = System.nanoTime();
+        final ChannelGeneratorWrapper wrapper = new ChannelGeneratorWrapper(channel);
+        wrapper.setSpacingScale(margin + 1);
+        wrapper.getPossibleFrequencies(channels, intermodStore);
+        metrics.put(Metrics.GET_POSSIBLE_FREQUENCIES, metrics.get(Metrics.GET_POSSIBLE_FREQUENCIES) + System.nanoTime() - startTime);
+
+        startTime = System.nanoTime();
+        int bestFrequency = startFrequency;
+        int bestMargin = margin;
+        for (int frequency : wrapper.getSortedPossibleFrequencies()) {
+            if (bestMargin >= MAX_HEADROOM || System.nanoTime() >= deadline) {
+                break;
+            }
+            metrics.put(Metrics.ITERATION_COUNT, metrics.get(Metrics.ITERATION_COUNT) + 1);
+            channel.setFreq(frequency);
+            final int frequencyMargin = getHeadroom(channel, bestMargin);
+            if (frequencyMargin > bestMargin) {
+                bestFrequency = frequency;
+                bestMargin = frequencyMargin;
+            }
+        }
+        metrics.put(Metrics.CALCULATE_INTERMODS_TIME, metrics.get(Metrics.CALCULATE_INTERMODS_TIME) + System.nanoTime() - startTime);
+
+        channel.setFreq(bestFrequency);
+        placeChannel(channel);
+        return bestFrequency != startFrequency;
+    }
+
+    private void placeChannel(@NotNull final Channel channel) {
+        final long startTime = System.nanoTime();
+        channels.add(channel);
+        intermodStore.mergeIn(calculateIntermods(channel));
+        metrics.put(Metrics.MERGE_INTERMODS_TIME, metrics.get(Metrics.MERGE_INTERMODS_TIME) + System.nanoTime() - startTime);
+    }
+
+    private void unplaceChannel(@NotNull final Channel channel) {
+        final long startTime = System.nanoTime();
+        for (int i = channels.size() - 1; i >= 0; i--) {
+            if (channels.get(i) == channel) {
+                channels.remove(i);
+                break;
+            }
+        }
+        intermodStore.remove(channel);
+        metrics.put(Metrics.RESTORE_ANALYSIS_TIME, metrics.get(Metrics.RESTORE_ANALYSIS_TIME) + System.nanoTime() - startTime);
+    }
+
+    /**
+     * Method to find the headroom of a channel, the smallest share of the
+     * required spacing between it and any other channel or intermod, or
+     * between any of its intermods and another channel. The channel may be
+     * in the analysis. The headroom from the channels and intermods already
+     * in the analysis is found first, and if it is no more than the floor
+     * the intermods of the channel itself are not calculated.
+     *
+     * @param channel channel to test
+     * @param floor headroom at or below which to stop, in thousandths
+     * @return headroom in thousandths of the required spacing, at most
+     * MAX_HEADROOM, or a headroom no more than the floor if stopped early
+     */
+    private int getHeadroom(@NotNull final Channel channel, final int floor) {
+        int margin = MAX_HEADROOM;
+        for (Channel other : channels) {
+            if (other != channel) {
+                final int spacing = Math.max(channel.getEquipment().getChannelSpacing(), other.getEquipment().getChannelSpacing());
+                margin = Math.min(margin, getHeadroom(Math.abs(channel.getFreq() - other.getFreq()), spacing));
+            }
+        }
+
+        final int[] minMargin = new int[]{ margin };
+        final int window = channel.getEquipment().getMaxImSpacing() * MAX_HEADROOM / 1000;
+        intermodStore.forRange(channel.getFreq() - window, channel.getFreq() + window, (@NotNull final Intermod im) ->
+                minMargin[0] = Math.min(minMargin[0], getIMHeadroom(channel, im)));
+        if (minMargin[0] <= floor) {
+            return minMargin[0];
+        }
+
+        final IntermodStore newIntermods = calculateIntermods(channel);
+        if (channels.size() > 0 && !newIntermods.isEmpty()) {
+            final int[] rangeLos = new int[channels.size()];
+            final int[] rangeHis = new int[channels.size()];
+            for (int i = 0; i < rangeLos.length; i++) {
+                final Channel other = channels.get(i);
+                final int otherWindow = other.getEquipment().getMaxImSpacing() * MAX_HEADROOM / 1000;
+                rangeLos[i] = other.getFreq() - otherWindow;
+                rangeHis[i] = other.getFreq() + otherWindow;
+            }
+            newIntermods.forRanges(rangeLos, rangeHis, (@NotNull final Intermod im, final int i) ->
+                    minMargin[0] = Math.min(minMargin[0], getIMHeadroom(channels.get(i), im)));
+        }
+        return minMargin[0];
+    }
+
+    /**
+     * Method to find the headroom between a channel and an intermod, using
+     * the same rules as getChannelIMConflicts.
+     *
+     * @param channel channel
+     * @param intermod intermod
+     * @return headroom in thousandths of the required spacing, at most
+     * MAX_HEADROOM
+     */
+    private static int getIMHeadroom(@NotNull final Channel channel, @NotNull final Intermod intermod) {
+        if (intermod.getF1() == channel || intermod.getF2() == channel || intermod.getF3() == channel) {
+            return MAX_HEADROOM;
+        }
+        final int frontEndFilter = channel.getEquipment().getFrontEndFilter();
+        if (Math.abs(channel.getFreq() - intermod.getF1().getFreq()) >= frontEndFilter
+                || Math.abs(channel.getFreq() - intermod.getF2().getFreq()) >= frontEndFilter
+                || (intermod.getF3() != null && Math.abs(channel.getFreq() - intermod.getF3().getFreq()) >= frontEndFilter)) {
+            return MAX_HEADROOM;
+        }
+        return getHeadroom(Math.abs(channel.getFreq() - intermod.getFreq()), channel.getEquipment().getSpacing(intermod.getType()));
+    }
+
+    private static int getHeadroom(final int distance, final int spacing) {
+        return spacing <= 0 ? MAX_HEADROOM : (int) Math.min(MAX_HEADROOM, (long) distance * 1000 / spacing);
+    }
+
+    /**
+     * The CapacitySearch class holds the state of a search for the largest
+     * number of channels that fit in a range.
+     */
+    private static final class CapacitySearch {
+        private final Equipment equipment;
+        private final Range range;
+        private final long deadline;
+        private final List<Integer> frequencies = new ArrayList<>();
+        private List<Integer> bestFrequencies = Collections.emptyList();
+
+        private CapacitySearch(@NotNull final Equipment equipment, @NotNull final Range range, final long deadline) {
+            this.equipment = equipment;
+            this.range = range;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * Method to find the largest number of channels of one equipment type
+     * that fit in a range alongside the channels already in the analysis.
+     * Channels are added one at a time on top of those already placed, so
+     * each count carries on from the search state that found the last one.
+     * When a channel cannot be added the search backtracks to try other
+     * frequencies for the channels before it. The channels are
+     * interchangeable, so their frequencies are only tried in ascending
+     * order, and a branch is cut when even the channel spacing alone would
+     * not leave room for more channels than the best set found.
+     *
+     * @param equipment equipment of the channels
+     * @param range range to fit the channels in
+     * @param timeLimit time limit in milliseconds
+     * @return frequencies of the largest set found, in ascending order
+     * @throws IllegalArgumentException if the range is not valid for the
+     * equipment
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> findCapacity(
+            @NotNull final Equipment equipment,
+            @NotNull final Range range,
+            final long timeLimit
+    ) throws InvalidFrequencyException {
+        if (equipment == null || range == null || !equipment.isValidRange(range)) {
+            throw new IllegalArgumentException();
+        }
+        resetMetrics();
+
+        startWrite();
+        try {
+            final long startTime = System.nanoTime();
+            final CapacitySearch search = new CapacitySearch(equipment, range, startTime + timeLimit * 1000000);
+            findCapacity(search, range.getLo() - 1);
+            metrics.put(Metrics.TOTAL_TIME, System.nanoTime() - startTime);
+            return search.bestFrequencies;
+        } finally {
+            endWrite();
+        }
+    }
+
+    /**
+     * Method to add one more channel to a capacity search, above the
+     * frequency of the last channel added.
+     *
+     * @param search search state
+     * @param lastFrequency frequency of the last channel added
+     * @return true if the search ran out of time
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private boolean findCapacity(
+            @NotNull final CapacitySearch search,
+            final int lastFrequency
+    ) throws InvalidFrequencyException {
+        final Channel channel = new Channel(null, Channel.khzToMhz(search.range.getLo()), search.equipment);
+        channel.setRange(search.range);
+
+        long startTime = System.nanoTime();
+        final ChannelGeneratorWrapper wrapper = new ChannelGeneratorWrapper(channel);
+        wrapper.getPossibleFrequencies(channels, intermodStore);
+        final int[] allFrequencies = wrapper.getSortedPossibleFrequencies();
+        int first = 0;
+        while (first < allFrequencies.length && allFrequencies[first] <= lastFrequency) {
+            first++;
+        }
+        final int[] frequencies = Arrays.copyOfRange(allFrequencies, first, allFrequencies.length);
+
+        // The most channels that fit at channel spacing in the frequencies
+        // from each index up, an upper bound on the channels still to add
+        final int spacing = search.equipment.getChannelSpacing();
+        final int[] bounds = new int[frequencies.length + 1];
+        int next = frequencies.length;
+        for (int i = frequencies.length - 1; i >= 0; i--) {
+            while (next > i + 1 && frequencies[next - 1] >= frequencies[i] + spacing) {
+                next--;
+            }
+            while (next < frequencies.length && frequencies[next] < frequencies[i] + spacing) {
+                next++;
+            }
+            bounds[i] = 1 + bounds[next];
+        }
+        metrics.put(Metrics.GET_POSSIBLE_FREQUENCIES, metrics.get(Metrics.GET_POSSIBLE_FREQUENCIES) + System.nanoTime() - startTime);
+
+        final List<Conflict> newConflicts = new ArrayList<>();
+        for (int i = 0; i < frequencies.length; i++) {
+            if (search.frequencies.size() + bounds[i] <= search.bestFrequencies.size()) {
+                return false;
+            }
+            if (System.nanoTime() > search.deadline) {
+                return true;
+            }
+            metrics.put(Metrics.ITERATION_COUNT, metrics.get(Metrics.ITERATION_COUNT) + 1);
+
+            startTime = System.nanoTime();
+            channel.setFreq(frequencies[i]);
+            final IntermodStore newIntermodStore = calculateIntermods(channel);
+            newConflicts.clear();
+            getIMConflicts(channels, newIntermodStore, newConflicts, false);
+            metrics.put(Metrics.CALCULATE_INTERMODS_TIME, metrics.get(Metrics.CALCULATE_INTERMODS_TIME) + System.nanoTime() - startTime);
+            if (!newConflicts.isEmpty()) {
+                continue;
+            }
+
+            startTime = System.nanoTime();
+            channels.add(channel);
+            intermodStore.pushToBackupStack();
+            intermodStore.mergeIn(newIntermodStore);
+            search.frequencies.add(frequencies[i]);
+            if (search.frequencies.size() > search.bestFrequencies.size()) {
+                search.bestFrequencies = new ArrayList<>(search.frequencies);
+            }
+            metrics.put(Metrics.MERGE_INTERMODS_TIME, metrics.get(Metrics.MERGE_INTERMODS_TIME) + System.nanoTime() - startTime);
+
+            final boolean outOfTime = findCapacity(search, frequencies[i]);
+
+            startTime = System.nanoTime();
+            search.frequencies.remove(search.frequencies.size() - 1);
+            channels.remove(channels.size() - 1);
+            intermodStore.popFromBackupStack();
+            metrics.put(Metrics.RESTORE_ANALYSIS_TIME, metrics.get(Metrics.RESTORE_ANALYSIS_TIME) + System.nanoTime() - startTime);
+            if (outOfTime) {
+                return true;
             }
         }
         return false;
@@ -51,4 +51,14 @@ final class AnalyserCalculations {
     final void setIM3t3o(final boolean im3t3o) {
         this.im3t3o = im3t3o;
     }
+
+    final AnalyserCalculations copy() {
+        final AnalyserCalculations copy = new AnalyserCalculations();
+        copy.im2t3o = im2t3o;
+        copy.im2t5o = im2t5o;
+        copy.im2t7o = im2t7o;
+        copy.im2t9o = im2t9o;
+        copy.im3t3o = im3t3o;
+        return copy;
+    }
 }
@@ -0,0 +1,150 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The AnalyserChangeEvent class describes everything that changed in the
+ * analysis as the result of a single committed write. A channel that was
+ * removed and added again by the same write, such as a frequency update,
+ * is reported as changed rather than removed and added.
+ */
+final class AnalyserChangeEvent {
+
+    /**
+     * A change of a channel's validity.
+     */
+    static final class ValidityChange {
+        private final Channel channel;
+        private final Channel.Validity before;
+        private final Channel.Validity after;
+
+        ValidityChange(
+                @NotNull final Channel channel,
+                @NotNull final Channel.Validity before,
+                @NotNull final Channel.Validity after
+        ) {
+            this.channel = channel;
+            this.before = before;
+            this.after = after;
+        }
+
+        final Channel getChannel() {
+            return channel;
+        }
+
+        final Channel.Validity getBefore() {
+            return before;
+        }
+
+        final Channel.Validity getAfter() {
+            return after;
+        }
+    }
+
+    private final long version;
+    private final List<Channel> channelsAdded;
+    private final List<Channel> channelsRemoved;
+    private final Set<Channel> channelsChanged;
+    private final List<ValidityChange> validityChanges;
+    private final List<Conflict> conflictsAdded;
+    private final List<Conflict> conflictsRemoved;
+    private final int intermodDelta;
+
+    AnalyserChangeEvent(
+            final long version,
+            @NotNull final List<Channel> channelsAdded,
+            @NotNull final List<Channel> channelsRemoved,
+            @NotNull final Set<Channel> channelsChanged,
+            @NotNull final List<ValidityChange> validityChanges,
+            @NotNull final List<Conflict> conflictsAdded,
+            @NotNull final List<Conflict> conflictsRemoved,
+            final int intermodDelta
+    ) {
+        this.version = version;
+        this.channelsAdded = Collections.unmodifiableList(channelsAdded);
+        this.channelsRemoved = Collections.unmodifiableList(channelsRemoved);
+        this.channelsChanged = Collections.unmodifiableSet(channelsChanged);
+        this.validityChanges = Collections.unmodifiableList(validityChanges);
+        this.conflictsAdded = Collections.unmodifiableList(conflictsAdded);
+        this.conflictsRemoved = Collections.unmodifiableList(conflictsRemoved);
+        this.intermodDelta = intermodDelta;
+    }
+
+    /**
+     * Method to get the snapshot version the event leads to.
+     *
+     * @return snapshot version
+     */
+    final long getVersion() {
+        return version;
+    }
+
+    final List<Channel> getChannelsAdded() {
+        return channelsAdded;
+    }
+
+    final List<Channel> getChannelsRemoved() {
+        return channelsRemoved;
+    }
+
+    /**
+     * Method to get the channels that remain in the analysis but were
+     * updated or had conflicts added or removed.
+     *
+     * @return set of changed channels
+     */
+    final Set<Channel> getChannelsChanged() {
+        return channelsChanged;
+    }
+
+    final List<ValidityChange> getValidityChanges() {
+        return validityChanges;
+    }
+
+    final List<Conflict> getConflictsAdded() {
+        return conflictsAdded;
+    }
+
+    final List<Conflict> getConflictsRemoved() {
+        return conflictsRemoved;
+    }
+
+    /**
+     * Method to get the change in the number of intermods.
+     *
+     * @return number of intermods after the write less the number before
+     */
+    final int getIntermodDelta() {
+        return intermodDelta;
+    }
+
+    /**
+     * Method to check whether the event contains any change.
+     *
+     * @return true if nothing changed
+     */
+    final boolean isEmpty() {
+        return channelsAdded.isEmpty()
+                && channelsRemoved.isEmpty()
+                && channelsChanged.isEmpty()
+                && conflictsAdded.isEmpty()
+                && conflictsRemoved.isEmpty()
+                && intermodDelta == 0;
+    }
+
+    /**
+     * Method to create a set of channels compared by identity, as Channel
+     * equality compares settings.
+     *
+     * @return empty identity set
+     */
+    static Set<Channel> newChannelSet() {
+        final Map<Channel, Boolean> map = new IdentityHashMap<>();
+        return Collections.newSetFromMap(map);
+    }
+}
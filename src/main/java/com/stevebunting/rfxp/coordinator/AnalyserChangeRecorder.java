@@ -0,0 +1,131 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The AnalyserChangeRecorder class accumulates the changes made by a write
+ * to the analysis so they can be reported as a single AnalyserChangeEvent
+ * when the write is committed.
+ */
+final class AnalyserChangeRecorder {
+    private final Map<Channel, Channel.Validity> validitiesBefore = new IdentityHashMap<>();
+    private final Set<Channel> channelsAdded = AnalyserChangeEvent.newChannelSet();
+    private final Set<Channel> channelsRemoved = AnalyserChangeEvent.newChannelSet();
+    private final Set<Channel> channelsTouched = AnalyserChangeEvent.newChannelSet();
+
+    // Conflicts do not override equals so these compare by identity
+    private final Set<Conflict> conflictsAdded = new LinkedHashSet<>();
+    private final Set<Conflict> conflictsRemoved = new LinkedHashSet<>();
+
+    private int numIntermodsBefore = 0;
+    private boolean recording = false;
+
+    /**
+     * Method to start recording a write.
+     *
+     * @param numIntermods number of intermods before the write
+     */
+    final void start(final int numIntermods) {
+        recording = true;
+        numIntermodsBefore = numIntermods;
+    }
+
+    final boolean isRecording() {
+        return recording;
+    }
+
+    /**
+     * Method to record the validity of a channel before it is first changed.
+     *
+     * @param channel channel about to change
+     */
+    final void channelChanging(@NotNull final Channel channel) {
+        if (recording && !validitiesBefore.containsKey(channel)) {
+            validitiesBefore.put(channel, channel.getValidity());
+        }
+    }
+
+    final void channelAdded(@NotNull final Channel channel) {
+        if (recording && !channelsRemoved.remove(channel)) {
+            channelsAdded.add(channel);
+        } else if (recording) {
+            channelsTouched.add(channel);
+        }
+    }
+
+    final void channelRemoved(@NotNull final Channel channel) {
+        if (!recording) {
+            return;
+        }
+        if (channelsAdded.remove(channel)) {
+            channelsTouched.remove(channel);
+            validitiesBefore.remove(channel);
+        } else {
+            channelsRemoved.add(channel);
+        }
+    }
+
+    final void conflictAdded(@NotNull final Conflict conflict) {
+        if (recording) {
+            channelsTouched.add(conflict.getChannel());
+            conflictsAdded.add(conflict);
+        }
+    }
+
+    final void conflictRemoved(@NotNull final Conflict conflict) {
+        if (recording) {
+            channelsTouched.add(conflict.getChannel());
+            if (!conflictsAdded.remove(conflict)) {
+                conflictsRemoved.add(conflict);
+            }
+        }
+    }
+
+    /**
+     * Method to build the event for the recorded write and reset the
+     * recorder.
+     *
+     * @param version snapshot version the write leads to
+     * @param numIntermods number of intermods after the write
+     * @return change event
+     */
+    final AnalyserChangeEvent finish(final long version, final int numIntermods) {
+        final Set<Channel> channelsChanged = AnalyserChangeEvent.newChannelSet();
+        final List<AnalyserChangeEvent.ValidityChange> validityChanges = new ArrayList<>();
+        for (Channel channel : channelsTouched) {
+            if (channelsAdded.contains(channel) || channelsRemoved.contains(channel)) {
+                continue;
+            }
+            channelsChanged.add(channel);
+            final Channel.Validity before = validitiesBefore.get(channel);
+            if (before != null && before != channel.getValidity()) {
+                validityChanges.add(new AnalyserChangeEvent.ValidityChange(channel, before, channel.getValidity()));
+            }
+        }
+
+        final AnalyserChangeEvent event = new AnalyserChangeEvent(
+                version,
+                new ArrayList<>(channelsAdded),
+                new ArrayList<>(channelsRemoved),
+                channelsChanged,
+                validityChanges,
+                new ArrayList<>(conflictsAdded),
+                new ArrayList<>(conflictsRemoved),
+                numIntermods - numIntermodsBefore);
+
+        validitiesBefore.clear();
+        channelsAdded.clear();
+        channelsRemoved.clear();
+        channelsTouched.clear();
+        conflictsAdded.clear();
+        conflictsRemoved.clear();
+        recording = false;
+        return event;
+    }
+}
@@ -0,0 +1,11 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Listener for changes to an analysis. Events are delivered in version
+ * order on a notification thread, never on the thread making the edit.
+ */
+interface AnalyserListener {
+    void analysisChanged(@NotNull AnalyserChangeEvent event);
+}
@@ -0,0 +1,196 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The AnalyserSnapshot class is an immutable, versioned view of the analysis
+ * state published by the Analyser after each write. Readers obtain the latest
+ * snapshot without locking and may hold on to it while further edits are
+ * made.
+ */
+final class AnalyserSnapshot {
+    private final long version;
+    private final List<Channel> channels;
+    private final int[] frequencies;
+    private final Channel.Validity[] validities;
+    private final String[] names;
+    private final Equipment[] equipment;
+    private final Range[] ranges;
+    private final List<Intermod> intermods;
+    private final List<Conflict> conflicts;
+
+    private final CoordinationStatistics statistics;
+    private final int idCounter;
+    private final AnalyserCalculations calculations;
+
+    AnalyserSnapshot(
+            final long version,
+            @NotNull final List<Channel> channels,
+            @NotNull final List<Intermod> intermods,
+            @NotNull final List<Conflict> conflicts,
+            @NotNull final CoordinationStatistics statistics,
+            final int idCounter,
+            @NotNull final AnalyserCalculations calculations
+    ) {
+        this.version = version;
+        this.channels = Collections.unmodifiableList(channels);
+        this.intermods = intermods;
+        this.conflicts = Collections.unmodifiableList(conflicts);
+        this.statistics = statistics;
+        this.idCounter = idCounter;
+        this.calculations = calculations;
+
+        // Channels are mutable so capture the values at publication
+        final int numChannels = channels.size();
+        frequencies = new int[numChannels];
+        validities = new Channel.Validity[numChannels];
+        names = new String[numChannels];
+        equipment = new Equipment[numChannels];
+        ranges = new Range[numChannels];
+        for (int i = 0; i < numChannels; i++) {
+            final Channel channel = channels.get(i);
+            frequencies[i] = channel.getFreq();
+            validities[i] = channel.getValidity();
+            names[i] = channel.getName();
+            equipment[i] = channel.getEquipment();
+            ranges[i] = channel.getRange();
+        }
+    }
+
+    final long getVersion() {
+        return version;
+    }
+
+    final List<Channel> getChannelList() {
+        return channels;
+    }
+
+    final int getNumChannels() {
+        return channels.size();
+    }
+
+    /**
+     * Method to get the frequency of a channel at the time the snapshot was
+     * published.
+     *
+     * @param index index of channel in channel list
+     * @return frequency in kHz
+     */
+    final int getChannelFrequency(final int index) {
+        return frequencies[index];
+    }
+
+    /**
+     * Method to get the validity of a channel at the time the snapshot was
+     * published.
+     *
+     * @param index index of channel in channel list
+     * @return channel validity
+     */
+    @NotNull
+    final Channel.Validity getChannelValidity(final int index) {
+        return validities[index];
+    }
+
+    /**
+     * Method to get the name of a channel at the time the snapshot was
+     * published.
+     *
+     * @param index index of channel in channel list
+     * @return channel name
+     */
+    final String getChannelName(final int index) {
+        return names[index];
+    }
+
+    /**
+     * Method to get the equipment of a channel at the time the snapshot was
+     * published.
+     *
+     * @param index index of channel in channel list
+     * @return channel equipment
+     */
+    @NotNull
+    final Equipment getChannelEquipment(final int index) {
+        return equipment[index];
+    }
+
+    /**
+     * Method to get the range of a channel at the time the snapshot was
+     * published.
+     *
+     * @param index index of channel in channel list
+     * @return channel range, or null if the channel has none
+     */
+    final Range getChannelRange(final int index) {
+        return ranges[index];
+    }
+
+    final List<Intermod> getIntermodList() {
+        return intermods;
+    }
+
+    final int getNumIntermods() {
+        return intermods.size();
+    }
+
+    final List<Conflict> getConflictList() {
+        return conflicts;
+    }
+
+    final int getNumConflicts() {
+        return conflicts.size();
+    }
+
+    final int getNumConflictsOfType(@NotNull final Conflict.Type type) {
+        return statistics.getNumConflicts(type);
+    }
+
+    /**
+     * Method to get the statistics as they were when the snapshot was
+     * published. The returned statistics must not be modified.
+     *
+     * @return coordination statistics
+     */
+    final CoordinationStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Method to get the ID that was to be assigned to the next new channel
+     * when the snapshot was published.
+     *
+     * @return next channel ID
+     */
+    final int getIdCounter() {
+        return idCounter;
+    }
+
+    /**
+     * Method to get the calculation settings as they were when the snapshot
+     * was published. The returned settings must not be modified.
+     *
+     * @return calculation settings
+     */
+    final AnalyserCalculations getCalculations() {
+        return calculations;
+    }
+
+    final int getValidChannels() {
+        return statistics.getNumChannels(Channel.Validity.VALID);
+    }
+
+    final int getNumChannelConflicts() {
+        return statistics.getNumConflicts(Conflict.Type.CHANNEL_SPACING);
+    }
+
+    final int getNumIMConflicts() {
+        return statistics.getNumIMConflicts();
+    }
+
+    final int getNumIMConflicts(@NotNull final Intermod.Type type) {
+        return statistics.getNumIMConflicts(type);
+    }
+}
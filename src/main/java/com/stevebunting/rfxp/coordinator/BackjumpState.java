@@ -0,0 +1,241 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BackjumpState class holds the bookkeeping for conflict-directed
+ * backjumping in the frequency generator. Each level of the search is the
+ * index of a channel in the order frequencies are chosen. For every level it
+ * keeps the earlier levels whose frequencies removed options from it, so
+ * that when a level runs out of frequencies the search can return straight
+ * to the most recent of those levels rather than to the previous one.
+ *
+ * The levels blamed for each failure, with their frequencies at the time,
+ * are also kept as nogoods so that the same combination is rejected at once
+ * if the search comes back to it.
+ */
+final class BackjumpState {
+    static final int MAX_NOGOODS = 10000;
+
+    /**
+     * The Nogood class holds a combination of frequencies for some levels
+     * that is known to leave a later level with no frequency.
+     */
+    private static final class Nogood {
+        private final int[] levels;
+        private final int[] frequencies;
+
+        private Nogood(@NotNull final int[] levels, @NotNull final int[] frequencies) {
+            this.levels = levels;
+            this.frequencies = frequencies;
+        }
+    }
+
+    private final List<ChannelGeneratorWrapper> wrappers;
+    private final Map<Channel, Integer> levels = new IdentityHashMap<>();
+    private final BitSet[] conflictSets;
+
+    // Levels whose failure depends on exclusions that are not recorded in
+    // their conflict set, these fall back to chronological backtracking
+    private final BitSet chronological = new BitSet();
+
+    // Nogoods by the last level they include, then by that level's frequency
+    private final List<Map<Integer, List<Nogood>>> nogoods = new ArrayList<>();
+    private int numNogoods = 0;
+    private int backjumpLevel = -1;
+
+    /**
+     * Constructor for the state of a search over a list of wrappers.
+     *
+     * @param wrappers wrappers in the order their frequencies are chosen
+     */
+    BackjumpState(@NotNull final List<ChannelGeneratorWrapper> wrappers) {
+        this.wrappers = wrappers;
+        this.conflictSets = new BitSet[wrappers.size()];
+        for (int level = 0; level < wrappers.size(); level++) {
+            levels.put(wrappers.get(level).getChannel(), level);
+            conflictSets[level] = new BitSet();
+            nogoods.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Method to clear the conflict set of a level as the search enters it.
+     *
+     * @param level level entered
+     */
+    final void startLevel(final int level) {
+        conflictSets[level].clear();
+        chronological.clear(level);
+    }
+
+    /**
+     * Method to blame the placed channels of a frequency component for
+     * removing options from a level.
+     *
+     * @param level level that lost options
+     * @param component channel or intermod responsible
+     */
+    final void addCulprit(final int level, @NotNull final FrequencyComponent component) {
+        if (component instanceof Channel) {
+            addCulprit(level, (Channel) component);
+        } else {
+            final Intermod intermod = (Intermod) component;
+            addCulprit(level, intermod.getF1());
+            addCulprit(level, intermod.getF2());
+            if (intermod.getF3() != null) {
+                addCulprit(level, intermod.getF3());
+            }
+        }
+    }
+
+    /**
+     * Method to blame the placed channels of a conflict for rejecting a
+     * frequency at a level.
+     *
+     * @param level level whose frequency was rejected
+     * @param conflict conflict found
+     */
+    final void addCulprit(final int level, @NotNull final Conflict conflict) {
+        addCulprit(level, conflict.getChannel());
+        if (conflict.getConflictChannel() != null) {
+            addCulprit(level, conflict.getConflictChannel());
+        }
+        if (conflict.getConflictIntermod() != null) {
+            addCulprit(level, (FrequencyComponent) conflict.getConflictIntermod());
+        }
+    }
+
+    /**
+     * Method to blame an interchangeable channel for removing a frequency
+     * from a level after the frequency failed for it. That failure depends on
+     * the frequencies of every level up to the channel's own, so all of them
+     * are blamed.
+     *
+     * @param level level that lost options
+     * @param channel interchangeable channel the frequency failed for
+     */
+    final void addSymmetryCulprit(final int level, @NotNull final Channel channel) {
+        final Integer culprit = levels.get(channel);
+        if (culprit != null && culprit < level) {
+            conflictSets[level].set(0, culprit + 1);
+        } else {
+            setChronological(level);
+        }
+    }
+
+    private void addCulprit(final int level, @NotNull final Channel channel) {
+        final Integer culprit = levels.get(channel);
+        if (culprit == null || culprit == level) {
+            return;
+        }
+        if (culprit < level) {
+            conflictSets[level].set(culprit);
+        } else {
+            // A channel still to be placed should not affect this level,
+            // make no assumptions about it
+            setChronological(level);
+        }
+    }
+
+    /**
+     * Method to mark a level as having lost options for a reason that is not
+     * in its conflict set, so it only backtracks to the previous level.
+     *
+     * @param level level that lost options
+     */
+    final void setChronological(final int level) {
+        chronological.set(level);
+        if (level > 0) {
+            conflictSets[level].set(level - 1);
+        }
+    }
+
+    /**
+     * Method to check whether the proposed frequency of a level, with the
+     * frequencies of the levels before it, matches a recorded nogood. If it
+     * does the levels of the nogood are blamed for the rejection.
+     *
+     * @param level level whose proposed frequency is checked
+     * @return true if the proposed frequency cannot lead to a solution
+     */
+    final boolean isNogood(final int level) {
+        final Integer frequency = wrappers.get(level).getProposedFrequency();
+        for (Nogood nogood : nogoods.get(level).getOrDefault(frequency, Collections.emptyList())) {
+            if (matches(nogood)) {
+                for (int culprit : nogood.levels) {
+                    if (culprit != level) {
+                        conflictSets[level].set(culprit);
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(@NotNull final Nogood nogood) {
+        for (int i = 0; i < nogood.levels.length; i++) {
+            final Integer frequency = wrappers.get(nogood.levels[i]).getProposedFrequency();
+            if (frequency == null || frequency != nogood.frequencies[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Method to record that a level has no frequency left. Finds the level to
+     * jump back to, passes the rest of the conflict set on to it and records
+     * the conflict set as a nogood.
+     *
+     * @param level level that failed
+     * @return level to jump back to, or -1 if there is no solution
+     */
+    final int fail(final int level) {
+        final BitSet conflictSet = conflictSets[level];
+        backjumpLevel = conflictSet.length() - 1;
+        if (backjumpLevel < 0) {
+            return backjumpLevel;
+        }
+
+        if (chronological.get(level)) {
+            setChronological(backjumpLevel);
+        } else if (numNogoods < MAX_NOGOODS) {
+            final int[] nogoodLevels = conflictSet.stream().toArray();
+            final int[] nogoodFrequencies = new int[nogoodLevels.length];
+            for (int i = 0; i < nogoodLevels.length; i++) {
+                nogoodFrequencies[i] = wrappers.get(nogoodLevels[i]).getProposedFrequency();
+            }
+            nogoods.get(backjumpLevel)
+                    .computeIfAbsent(nogoodFrequencies[nogoodFrequencies.length - 1], (final Integer key) -> new ArrayList<>())
+                    .add(new Nogood(nogoodLevels, nogoodFrequencies));
+            numNogoods++;
+        }
+
+        final BitSet target = conflictSets[backjumpLevel];
+        target.or(conflictSet);
+        target.clear(backjumpLevel);
+        return backjumpLevel;
+    }
+
+    /**
+     * Method to get the level the last failure jumped back to.
+     *
+     * @return level jumped back to, or -1 if there is no solution
+     */
+    final int getBackjumpLevel() {
+        return backjumpLevel;
+    }
+
+    final int getNumNogoods() {
+        return numNogoods;
+    }
+}
@@ -0,0 +1,463 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * The BucketedIntermodStore class keeps intermods in fixed width frequency
+ * buckets, each holding a small sorted array. Adding or removing an intermod
+ * only changes its own bucket, so the cost of an edit depends on the number
+ * of intermods the edit creates or removes rather than on the size of the
+ * coordination. The store also keeps a list of the intermods each channel
+ * contributes to so a channel can be removed without scanning every bucket.
+ * Removing a channel leaves its intermods in the lists of the other channels
+ * of each intermod, and the lists are compacted once these stale entries
+ * outnumber the intermods in the store.
+ *
+ * Buckets are copied on write. Once a list has been handed out by
+ * getIntermodList, or saved on the backup stack, the bucket table and any
+ * bucket it refers to are copied before they are next changed, so the list
+ * stays valid for readers on other threads.
+ */
+final class BucketedIntermodStore extends IntermodStore {
+    /**
+     * Width of each bucket in kHz. This is wider than the intermod spacing of
+     * any equipment profile so a range search reads at most two buckets.
+     */
+    static final int BUCKET_WIDTH = 1000;
+    private static final int INITIAL_BUCKETS = 16;
+    private static final int INITIAL_BUCKET_CAPACITY = 4;
+    private static final Intermod[] EMPTY_BUCKET = new Intermod[0];
+
+    /**
+     * The State class holds the parts of the store saved on the backup stack.
+     */
+    private static final class State {
+        private final Intermod[][] buckets;
+        private final int[] counts;
+        private final int firstKey;
+        private final int size;
+        private final int undoMark;
+
+        private State(
+                @NotNull final Intermod[][] buckets,
+                @NotNull final int[] counts,
+                final int firstKey,
+                final int size,
+                final int undoMark
+        ) {
+            this.buckets = buckets;
+            this.counts = counts;
+            this.firstKey = firstKey;
+            this.size = size;
+            this.undoMark = undoMark;
+        }
+    }
+
+    private Intermod[][] buckets = new Intermod[0][];
+    private int[] counts = new int[0];
+    private int[] owners = new int[0];
+    private int firstKey = 0;
+    private int size = 0;
+
+    // A bucket may be written in place only if its owner is the current
+    // generation, which changes each time the table is shared
+    private int generation = 1;
+    private boolean tableShared = false;
+
+    private final Map<Channel, List<Intermod>> channelIntermods = new IdentityHashMap<>();
+    private int staleEntries = 0;
+    private final List<Channel> undoLog = new ArrayList<>();
+    private final List<State> backups = new ArrayList<>();
+
+    @Override
+    final Storage getStorage() {
+        return Storage.BUCKETED;
+    }
+
+    @Override
+    final IntermodStore newStore() {
+        return new BucketedIntermodStore();
+    }
+
+    /**
+     * Method to add an intermod to its bucket. Buckets are kept sorted, so
+     * the store does not need sorting afterwards.
+     *
+     * @param intermod intermod to add
+     */
+    @Override
+    final void add(@NotNull final Intermod intermod) {
+        final int index = getBucketIndexForWrite(getKey(intermod.getFreq()));
+        final Intermod[] bucket = getWritableBucket(index, counts[index] + 1);
+        final int count = counts[index];
+
+        int position = count;
+        int lo = 0;
+        while (lo < position) {
+            final int mid = (lo + position) >>> 1;
+            if (bucket[mid].compareTo(intermod) < 0) {
+                lo = mid + 1;
+            } else {
+                position = mid;
+            }
+        }
+        System.arraycopy(bucket, position, bucket, position + 1, count - position);
+        bucket[position] = intermod;
+        counts[index] = count + 1;
+        size++;
+
+        addToChannel(intermod.getF1(), intermod);
+        addToChannel(intermod.getF2(), intermod);
+        if (intermod.getF3() != null) {
+            addToChannel(intermod.getF3(), intermod);
+        }
+    }
+
+    private void addToChannel(@NotNull final Channel channel, @NotNull final Intermod intermod) {
+        channelIntermods.computeIfAbsent(channel, (final Channel key) -> new ArrayList<>()).add(intermod);
+        if (!backups.isEmpty()) {
+            undoLog.add(channel);
+        }
+    }
+
+    @Override
+    final void remove(@NotNull final Channel channel) {
+        final List<Intermod> intermods = channelIntermods.remove(channel);
+        if (intermods == null) {
+            return;
+        }
+
+        // The lists of the other channels of each intermod are left as they
+        // are, an intermod that is no longer in its bucket is skipped when
+        // those channels are removed
+        for (Intermod intermod : intermods) {
+            final int index = findInBucket(intermod);
+            if (index < 0) {
+                // A stale entry of this channel's list, now dropped with it
+                staleEntries = Math.max(0, staleEntries - 1);
+                continue;
+            }
+            final int count = counts[index];
+            int position = 0;
+            while (buckets[index][position] != intermod) {
+                position++;
+            }
+            prepareTableForWrite();
+            final Intermod[] bucket = getWritableBucket(index, count);
+            System.arraycopy(bucket, position + 1, bucket, position, count - position - 1);
+            bucket[count - 1] = null;
+            counts[index] = count - 1;
+            size--;
+            staleEntries += intermod.getF3() != null ? 2 : 1;
+        }
+
+        compactChannelListsIfStale();
+    }
+
+    /**
+     * Method to find the bucket holding an intermod.
+     *
+     * @param intermod intermod to find
+     * @return index of the bucket in the table, or -1 if the intermod is not
+     * in the store
+     */
+    private int findInBucket(@NotNull final Intermod intermod) {
+        final int index = getKey(intermod.getFreq()) - firstKey;
+        if (index < 0 || index >= buckets.length) {
+            return -1;
+        }
+        final Intermod[] bucket = buckets[index];
+        for (int position = 0; position < counts[index]; position++) {
+            if (bucket[position] == intermod) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Method to drop the entries of intermods that are no longer in the store
+     * from the channel lists, once they outnumber the intermods in the store.
+     * Lists are not compacted while there are backups, as restoring a backup
+     * relies on the order of the entries added since.
+     */
+    private void compactChannelListsIfStale() {
+        if (staleEntries <= size || !backups.isEmpty()) {
+            return;
+        }
+        final Iterator<List<Intermod>> lists = channelIntermods.values().iterator();
+        while (lists.hasNext()) {
+            final List<Intermod> intermods = lists.next();
+            intermods.removeIf((final Intermod intermod) -> findInBucket(intermod) < 0);
+            if (intermods.isEmpty()) {
+                lists.remove();
+            }
+        }
+        staleEntries = 0;
+    }
+
+    /**
+     * Method to get the number of entries in the channel lists, including
+     * stale entries not yet compacted.
+     *
+     * @return number of entries
+     */
+    final int getNumChannelEntries() {
+        int numEntries = 0;
+        for (List<Intermod> intermods : channelIntermods.values()) {
+            numEntries += intermods.size();
+        }
+        return numEntries;
+    }
+
+    @Override
+    final void pushToBackupStack() {
+        backups.add(new State(buckets, counts, firstKey, size, undoLog.size()));
+        shareTable();
+    }
+
+    @Override
+    final void popFromBackupStack() {
+        final State state = backups.remove(backups.size() - 1);
+        for (int i = undoLog.size() - 1; i >= state.undoMark; i--) {
+            final Channel channel = undoLog.remove(i);
+            final List<Intermod> intermods = channelIntermods.get(channel);
+            if (intermods != null) {
+                intermods.remove(intermods.size() - 1);
+                if (intermods.isEmpty()) {
+                    channelIntermods.remove(channel);
+                }
+            }
+        }
+        buckets = state.buckets;
+        counts = state.counts;
+        firstKey = state.firstKey;
+        size = state.size;
+        owners = new int[buckets.length];
+        shareTable();
+        compactChannelListsIfStale();
+    }
+
+    @Override
+    final void mergeIn(@NotNull final IntermodStore intermodStore) {
+        final BucketedIntermodStore other = (BucketedIntermodStore) intermodStore;
+        for (int index = 0; index < other.buckets.length; index++) {
+            final Intermod[] bucket = other.buckets[index];
+            for (int i = 0; i < other.counts[index]; i++) {
+                add(bucket[i]);
+            }
+        }
+    }
+
+    @Override
+    final void sort() {
+        // Buckets are kept sorted as intermods are added
+    }
+
+    @Override
+    final int size() {
+        return size;
+    }
+
+    @Override
+    final List<Intermod> getIntermodList() {
+        shareTable();
+        final Intermod[][] listBuckets = buckets;
+        final int[] listCounts = counts;
+        final int listSize = size;
+        return new AbstractList<Intermod>() {
+            private int[] starts;
+
+            @Override
+            public Intermod get(final int index) {
+                if (index < 0 || index >= listSize) {
+                    throw new IndexOutOfBoundsException();
+                }
+                if (starts == null) {
+                    final int[] bucketStarts = new int[listCounts.length + 1];
+                    for (int i = 0; i < listCounts.length; i++) {
+                        bucketStarts[i + 1] = bucketStarts[i] + listCounts[i];
+                    }
+                    starts = bucketStarts;
+                }
+                int bucket = Arrays.binarySearch(starts, index);
+                if (bucket < 0) {
+                    bucket = -bucket - 2;
+                } else {
+                    while (listCounts[bucket] == 0) {
+                        bucket++;
+                    }
+                }
+                return listBuckets[bucket][index - starts[bucket]];
+            }
+
+            @Override
+            public int size() {
+                return listSize;
+            }
+
+            @NotNull
+            @Override
+            public Iterator<Intermod> iterator() {
+                return new BucketIterator(listBuckets, listCounts);
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Intermod> iterator() {
+        shareTable();
+        return new BucketIterator(buckets, counts);
+    }
+
+    @Override
+    final void forRange(final int rangeLo, final int rangeHi, @NotNull final Consumer<Intermod> consumer) {
+        final int from = Math.max(0, getKey(rangeLo) - firstKey);
+        final int to = Math.min(buckets.length - 1, getKey(rangeHi) - firstKey);
+        for (int index = from; index <= to; index++) {
+            final Intermod[] bucket = buckets[index];
+            final int count = counts[index];
+            int position = 0;
+            int end = count;
+            while (position < end) {
+                final int mid = (position + end) >>> 1;
+                if (bucket[mid].getFreq() <= rangeLo) {
+                    position = mid + 1;
+                } else {
+                    end = mid;
+                }
+            }
+            for (; position < count; position++) {
+                if (bucket[position].getFreq() >= rangeHi) {
+                    return;
+                }
+                consumer.accept(bucket[position]);
+            }
+        }
+    }
+
+    private static int getKey(final int frequency) {
+        return Math.floorDiv(frequency, BUCKET_WIDTH);
+    }
+
+    private void shareTable() {
+        tableShared = true;
+        generation++;
+    }
+
+    private void prepareTableForWrite() {
+        if (tableShared) {
+            buckets = buckets.clone();
+            counts = counts.clone();
+            tableShared = false;
+        }
+    }
+
+    /**
+     * Method to get the index of a bucket in a table that may be written,
+     * growing the table if the bucket is outside it.
+     *
+     * @param key bucket key
+     * @return index of the bucket in the table
+     */
+    private int getBucketIndexForWrite(final int key) {
+        prepareTableForWrite();
+        if (buckets.length == 0) {
+            firstKey = key - INITIAL_BUCKETS / 2;
+            resizeTable(firstKey, INITIAL_BUCKETS);
+        } else if (key < firstKey || key >= firstKey + buckets.length) {
+            final int lastKey = firstKey + buckets.length - 1;
+            final int newFirstKey = key < firstKey ? Math.min(key, firstKey - buckets.length) : firstKey;
+            final int newLastKey = key > lastKey ? Math.max(key, lastKey + buckets.length) : lastKey;
+            resizeTable(newFirstKey, newLastKey - newFirstKey + 1);
+        }
+        return key - firstKey;
+    }
+
+    private void resizeTable(final int newFirstKey, final int length) {
+        final Intermod[][] newBuckets = new Intermod[length][];
+        final int[] newCounts = new int[length];
+        final int[] newOwners = new int[length];
+        Arrays.fill(newBuckets, EMPTY_BUCKET);
+        final int offset = firstKey - newFirstKey;
+        System.arraycopy(buckets, 0, newBuckets, offset, buckets.length);
+        System.arraycopy(counts, 0, newCounts, offset, counts.length);
+        System.arraycopy(owners, 0, newOwners, offset, owners.length);
+        buckets = newBuckets;
+        counts = newCounts;
+        owners = newOwners;
+        firstKey = newFirstKey;
+    }
+
+    /**
+     * Method to get a bucket that may be written in place and can hold at
+     * least the given number of intermods, copying it if it is shared or
+     * too small.
+     *
+     * @param index index of the bucket in the table
+     * @param capacity number of intermods the bucket must be able to hold
+     * @return writable bucket
+     */
+    private Intermod[] getWritableBucket(final int index, final int capacity) {
+        final Intermod[] bucket = buckets[index];
+        if (owners[index] == generation && bucket.length >= capacity) {
+            return bucket;
+        }
+        final int newCapacity = bucket.length >= capacity
+                ? bucket.length
+                : Math.max(capacity, Math.max(INITIAL_BUCKET_CAPACITY, bucket.length * 2));
+        final Intermod[] copy = Arrays.copyOf(bucket, newCapacity);
+        buckets[index] = copy;
+        owners[index] = generation;
+        return copy;
+    }
+
+    /**
+     * The BucketIterator class iterates over the intermods of a bucket table
+     * in frequency order.
+     */
+    private static final class BucketIterator implements Iterator<Intermod> {
+        private final Intermod[][] buckets;
+        private final int[] counts;
+        private int bucket = 0;
+        private int position = 0;
+
+        private BucketIterator(@NotNull final Intermod[][] buckets, @NotNull final int[] counts) {
+            this.buckets = buckets;
+            this.counts = counts;
+            skipEmptyBuckets();
+        }
+
+        private void skipEmptyBuckets() {
+            while (bucket < counts.length && position >= counts[bucket]) {
+                bucket++;
+                position = 0;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return bucket < counts.length;
+        }
+
+        @Override
+        public Intermod next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Intermod intermod = buckets[bucket][position++];
+            skipEmptyBuckets();
+            return intermod;
+        }
+    }
+}
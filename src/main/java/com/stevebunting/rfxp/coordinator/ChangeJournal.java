@@ -0,0 +1,131 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The ChangeJournal class keeps the most recent change events of a
+ * coordination so clients can ask what changed since a version they have
+ * already seen. Only a bounded number of events are kept, a client that
+ * falls further behind is told to reload everything.
+ */
+final class ChangeJournal {
+    private final int capacity;
+    private final Deque<AnalyserChangeEvent> events;
+
+    // Every change after this version is held in the journal
+    private long startVersion;
+
+    ChangeJournal(final int capacity, final long startVersion) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Journal capacity must be at least 1");
+        }
+        this.capacity = capacity;
+        this.events = new ArrayDeque<>(capacity);
+        this.startVersion = startVersion;
+    }
+
+    /**
+     * Method to add an event, discarding the oldest event if the journal is
+     * full.
+     *
+     * @param event change event
+     */
+    final synchronized void append(@NotNull final AnalyserChangeEvent event) {
+        if (events.size() == capacity) {
+            startVersion = events.removeFirst().getVersion();
+        }
+        events.addLast(event);
+    }
+
+    /**
+     * Method to discard every event, used when the journal can no longer
+     * describe the changes, for example when the analysis is replaced.
+     *
+     * @param version version from which the journal is complete again
+     */
+    final synchronized void reset(final long version) {
+        events.clear();
+        startVersion = version;
+    }
+
+    /**
+     * Method to get a delta that tells the client to reload everything.
+     *
+     * @param fromVersion version the client already has
+     * @param snapshot snapshot to reload
+     * @return full refresh delta
+     */
+    static CoordinationDelta getFullRefresh(final long fromVersion, @NotNull final AnalyserSnapshot snapshot) {
+        return new CoordinationDelta(fromVersion, snapshot, true,
+                new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+
+    final synchronized long getStartVersion() {
+        return startVersion;
+    }
+
+    /**
+     * Method to combine the changes after a version up to and including the
+     * version of a snapshot.
+     *
+     * @param fromVersion version the client already has
+     * @param snapshot snapshot the delta leads to
+     * @return delta between the versions
+     */
+    final synchronized CoordinationDelta getChangesSince(
+            final long fromVersion,
+            @NotNull final AnalyserSnapshot snapshot
+    ) {
+        if (fromVersion < startVersion || fromVersion > snapshot.getVersion()) {
+            return getFullRefresh(fromVersion, snapshot);
+        }
+
+        final Set<Channel> channelsAdded = AnalyserChangeEvent.newChannelSet();
+        final Set<Channel> channelsChanged = AnalyserChangeEvent.newChannelSet();
+        final Set<Channel> channelsRemoved = AnalyserChangeEvent.newChannelSet();
+        final Set<Conflict> conflictsAdded = new LinkedHashSet<>();
+        final Set<Conflict> conflictsRemoved = new LinkedHashSet<>();
+
+        for (AnalyserChangeEvent event : events) {
+            if (event.getVersion() <= fromVersion || event.getVersion() > snapshot.getVersion()) {
+                continue;
+            }
+            for (Channel channel : event.getChannelsAdded()) {
+                if (!channelsRemoved.remove(channel)) {
+                    channelsAdded.add(channel);
+                }
+                channelsChanged.add(channel);
+            }
+            channelsChanged.addAll(event.getChannelsChanged());
+            for (Channel channel : event.getChannelsRemoved()) {
+                channelsChanged.remove(channel);
+                if (!channelsAdded.remove(channel)) {
+                    channelsRemoved.add(channel);
+                }
+            }
+            conflictsAdded.addAll(event.getConflictsAdded());
+            for (Conflict conflict : event.getConflictsRemoved()) {
+                if (!conflictsAdded.remove(conflict)) {
+                    conflictsRemoved.add(conflict);
+                }
+            }
+        }
+
+        // Report channels in the order of the snapshot
+        final List<Channel> changed = new ArrayList<>();
+        for (Channel channel : snapshot.getChannelList()) {
+            if (channelsChanged.contains(channel)) {
+                changed.add(channel);
+            }
+        }
+        return new CoordinationDelta(fromVersion, snapshot, false,
+                changed, new ArrayList<>(channelsRemoved),
+                new ArrayList<>(conflictsAdded), new ArrayList<>(conflictsRemoved));
+    }
+}
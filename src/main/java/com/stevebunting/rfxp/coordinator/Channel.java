@@ -71,6 +71,23 @@ class Channel implements Comparable<Channel>, FrequencyComponent {
         return channelCopy;
     }
 
+    /**
+     * Method to copy a channels settings, including its range, without
+     * copying its conflicts.
+     *
+     * @return copy of channel with no conflicts
+     */
+    final Channel copySettings() {
+        final Channel channelCopy;
+        try {
+            channelCopy = new Channel(id, khzToMhz(frequency), name, equipment);
+            channelCopy.setFreqAndEquipment(frequency, equipment, range);
+        } catch (InvalidFrequencyException e) {
+            return null;
+        }
+        return channelCopy;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (!(obj instanceof Channel)) {
@@ -2,17 +2,57 @@ package com.stevebunting.rfxp.coordinator;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
+import java.util.function.Consumer;
 
 class ChannelGeneratorWrapper implements Comparable<ChannelGeneratorWrapper> {
-    final SplittableRandom rand = new SplittableRandom();
+    /**
+     * Order in which possible frequencies are tried. RANDOM picks any of
+     * them, LOWEST the lowest and NEAREST the one closest to the frequency
+     * the channel was tuned to when the wrapper was made, so a plot that is
+     * nearly clear is regenerated with as little retuning as possible.
+     */
+    enum Selection {
+        RANDOM,
+        LOWEST,
+        NEAREST
+    }
+
+    private final SplittableRandom rand;
 
     private final Channel channel;
+    private final int startFrequency;
     private Integer proposedFrequency;
-    private final Map<Integer, Integer> possibleFrequencies;
+    private Map<Integer, Integer> possibleFrequencies;
+    private boolean possibleFrequenciesShared = false;
+    private SymmetryGroup symmetryGroup;
+    private int numSymmetricExclusions = 0;
+    private int spacingScale = 1000;
+
+    /**
+     * The SymmetryGroup class holds the frequencies excluded from a group of
+     * interchangeable channels, with the channel each frequency failed for.
+     */
+    private static final class SymmetryGroup {
+        private final List<Integer> frequencies = new ArrayList<>();
+        private final List<Channel> channels = new ArrayList<>();
+    }
     private final int maxPossibleFrequencies;
 
     ChannelGeneratorWrapper(@NotNull final Channel channel) {
+        this(channel, new SplittableRandom());
+    }
+
+    /**
+     * Constructor for a wrapper that picks RANDOM frequencies from the given
+     * generator, so a search with a seeded generator can be repeated.
+     *
+     * @param channel channel to find a frequency for
+     * @param rand generator for RANDOM selection
+     */
+    ChannelGeneratorWrapper(@NotNull final Channel channel, @NotNull final SplittableRandom rand) {
         this.channel = channel;
+        this.rand = rand;
+        this.startFrequency = channel.getFreq();
         possibleFrequencies = new HashMap<>();
         maxPossibleFrequencies = calculateMaxPossibleFrequencies();
     }
@@ -28,22 +68,179 @@ class ChannelGeneratorWrapper implements Comparable<ChannelGeneratorWrapper> {
         return 1 + ((range.getHi() - low) / tuningAccuracy);
     }
 
+    /**
+     * Method to find the possible frequencies of several wrappers. Wrappers
+     * whose channels have equal equipment and range have the same possible
+     * frequencies, so they are found once for each equipment and range, in
+     * parallel, and shared until a wrapper changes its own.
+     *
+     * @param wrappers wrappers to find possible frequencies for
+     * @param channels channels already in the analysis
+     * @param intermodStore intermods already in the analysis
+     */
+    static void getPossibleFrequencies(
+            @NotNull final List<ChannelGeneratorWrapper> wrappers,
+            @NotNull final List<Channel> channels,
+            @NotNull final IntermodStore intermodStore
+    ) {
+        final Map<Map.Entry<Equipment, Range>, ChannelGeneratorWrapper> domains = new LinkedHashMap<>();
+        for (ChannelGeneratorWrapper wrapper : wrappers) {
+            domains.putIfAbsent(wrapper.getDomain(), wrapper);
+        }
+
+        // Each wrapper only reads the channels and intermods, so the domains
+        // are found in parallel
+        domains.values().parallelStream().forEach((@NotNull final ChannelGeneratorWrapper wrapper) ->
+                wrapper.getPossibleFrequencies(channels, intermodStore));
+
+        for (ChannelGeneratorWrapper wrapper : wrappers) {
+            final ChannelGeneratorWrapper source = domains.get(wrapper.getDomain());
+            if (source != wrapper) {
+                wrapper.possibleFrequencies = source.possibleFrequencies;
+                wrapper.possibleFrequenciesShared = true;
+                source.possibleFrequenciesShared = true;
+            }
+        }
+    }
+
+    /**
+     * Method to group wrappers whose channels have equal equipment and range.
+     * Such channels are interchangeable: swapping their frequencies gives
+     * another solution. So once a frequency has failed for one channel of a
+     * group, no channel of the group chosen after it needs to try that
+     * frequency again until the search backtracks past the first channel.
+     *
+     * @param wrappers wrappers to group
+     */
+    static void breakSymmetry(@NotNull final List<ChannelGeneratorWrapper> wrappers) {
+        final Map<Map.Entry<Equipment, Range>, SymmetryGroup> groups = new HashMap<>();
+        for (ChannelGeneratorWrapper wrapper : wrappers) {
+            wrapper.symmetryGroup = groups.computeIfAbsent(wrapper.getDomain(),
+                    (final Map.Entry<Equipment, Range> key) -> new SymmetryGroup());
+            wrapper.numSymmetricExclusions = 0;
+        }
+    }
+
+    /**
+     * Method to record that the proposed frequency has failed, so that the
+     * interchangeable channels chosen after this one do not try it.
+     */
+    final void excludeProposedFrequency() {
+        if (symmetryGroup != null && proposedFrequency != null) {
+            symmetryGroup.frequencies.add(proposedFrequency);
+            symmetryGroup.channels.add(channel);
+            numSymmetricExclusions++;
+        }
+    }
+
+    /**
+     * Method to withdraw the frequencies excluded by this wrapper once the
+     * search backtracks past it.
+     */
+    final void restoreExcludedFrequencies() {
+        if (symmetryGroup != null) {
+            for (; numSymmetricExclusions > 0; numSymmetricExclusions--) {
+                symmetryGroup.frequencies.remove(symmetryGroup.frequencies.size() - 1);
+                symmetryGroup.channels.remove(symmetryGroup.channels.size() - 1);
+            }
+        }
+    }
+
+    private Map.Entry<Equipment, Range> getDomain() {
+        return new AbstractMap.SimpleImmutableEntry<>(channel.getEquipment(), channel.getRange());
+    }
+
+    /**
+     * Method to get the possible frequencies for changing, copying them first
+     * if they are shared with another wrapper.
+     *
+     * @return possible frequencies owned by this wrapper
+     */
+    private Map<Integer, Integer> getOwnPossibleFrequencies() {
+        if (possibleFrequenciesShared) {
+            possibleFrequencies = new HashMap<>(possibleFrequencies);
+            possibleFrequenciesShared = false;
+        }
+        return possibleFrequencies;
+    }
+
+    /**
+     * Method to find the frequencies in the channel's range that do not
+     * conflict with any channel or intermod, and that have not already
+     * failed for an interchangeable channel placed before it. Only
+     * intermods close enough to the range to conflict with it are read from
+     * the store, and the store and channel list are only read, so wrappers
+     * may be filled in parallel.
+     *
+     * @param channels channels already in the analysis
+     * @param intermodStore intermods already in the analysis
+     */
     final void getPossibleFrequencies(
             @NotNull final List<Channel> channels,
             @NotNull final IntermodStore intermodStore
+    ) {
+        getPossibleFrequencies(channels, intermodStore, null, 0);
+    }
+
+    /**
+     * Method to find the possible frequencies, reporting each channel or
+     * intermod that removed at least one of them, and each interchangeable
+     * channel whose failed frequency was excluded, to a backjump state.
+     *
+     * @param channels channels already in the analysis
+     * @param intermodStore intermods already in the analysis
+     * @param backjumpState state to report to, or null
+     * @param level level of this wrapper in the search
+     */
+    final void getPossibleFrequencies(
+            @NotNull final List<Channel> channels,
+            @NotNull final IntermodStore intermodStore,
+            final BackjumpState backjumpState,
+            final int level
+    ) {
+        getPossibleFrequencies(channels, intermodStore, backjumpState == null ? null
+                : (@NotNull final FrequencyComponent component) -> backjumpState.addCulprit(level, component));
+
+        if (symmetryGroup != null) {
+            for (int i = 0; i < symmetryGroup.frequencies.size(); i++) {
+                if (possibleFrequencies.remove(symmetryGroup.frequencies.get(i)) != null && backjumpState != null) {
+                    backjumpState.addSymmetryCulprit(level, symmetryGroup.channels.get(i));
+                }
+            }
+        }
+    }
+
+    private void getPossibleFrequencies(
+            @NotNull final List<Channel> channels,
+            @NotNull final IntermodStore intermodStore,
+            final Consumer<FrequencyComponent> culprits
     ) {
         getBaseFrequencies();
 
+        final Consumer<FrequencyComponent> removeConflictRange = culprits == null
+                ? this::removeConflictRange
+                : (@NotNull final FrequencyComponent component) -> {
+                    if (removeConflictRange(component)) {
+                        culprits.accept(component);
+                    }
+                };
         for (Channel ch : channels) {
-            removeConflictRange(ch);
-        }
-        for (Intermod im : intermodStore) {
-            removeConflictRange(im);
+            removeConflictRange.accept(ch);
         }
+
+        final Range range = channel.getRange();
+        final int maxImSpacing = scaleSpacing(channel.getEquipment().getMaxImSpacing());
+        intermodStore.forRange(range.getLo() - maxImSpacing, range.getHi() + maxImSpacing,
+                removeConflictRange::accept);
     }
 
     private void getBaseFrequencies() {
-        possibleFrequencies.clear();
+        if (possibleFrequenciesShared) {
+            possibleFrequencies = new HashMap<>();
+            possibleFrequenciesShared = false;
+        } else {
+            possibleFrequencies.clear();
+        }
 
         final Range range = channel.getRange();
         final Equipment equipment = channel.getEquipment();
@@ -60,7 +257,22 @@ class ChannelGeneratorWrapper implements Comparable<ChannelGeneratorWrapper> {
         return equipment.getTuningAccuracy() * (int) Math.ceil((low) / (double) equipment.getTuningAccuracy());
     }
 
-    private void removeConflictRange(
+    private int scaleSpacing(final int spacing) {
+        return (int) ((long) spacing * spacingScale / 1000);
+    }
+
+    /**
+     * Method to widen the spacing kept from every channel and intermod when
+     * finding possible frequencies, so that only frequencies with at least
+     * the given headroom remain.
+     *
+     * @param spacingScale spacing in thousandths of the required spacing
+     */
+    final void setSpacingScale(final int spacingScale) {
+        this.spacingScale = spacingScale;
+    }
+
+    private boolean removeConflictRange(
             @NotNull final FrequencyComponent component
     ) {
         final Equipment equipment = channel.getEquipment();
@@ -70,29 +282,63 @@ class ChannelGeneratorWrapper implements Comparable<ChannelGeneratorWrapper> {
                 ? Math.max(equipment.getChannelSpacing(), ((Channel) component).getEquipment().getChannelSpacing())
                 : equipment.getSpacing(((Intermod) component).getType());
 
-        final int rangeLo = component.getFreq() - spacing;
-        final int rangeHi = component.getFreq() + spacing;
+        final int rangeLo = component.getFreq() - scaleSpacing(spacing);
+        final int rangeHi = component.getFreq() + scaleSpacing(spacing);
         final int startFreq = getFirstValidFrequencyInRange(rangeLo + 1);
 
         // TODO: This can be refined, very rough
         if (rangeHi < range.getLo() || rangeLo > range.getHi()) {
-            return;
+            return false;
         }
 
+        boolean removed = false;
         for (int i = startFreq; i < rangeHi; i += equipment.getTuningAccuracy()) {
-            possibleFrequencies.remove(i);
+            removed |= possibleFrequencies.remove(i) != null;
         }
+        return removed;
     }
 
     final void setTestFrequency(final boolean randomSelection) throws InvalidFrequencyException {
+        setTestFrequency(randomSelection ? Selection.RANDOM : Selection.LOWEST);
+    }
+
+    final void setTestFrequency(@NotNull final Selection selection) throws InvalidFrequencyException {
         final Set<Integer> keySet = possibleFrequencies.keySet();
-        proposedFrequency = randomSelection
-                ? (int) keySet.toArray()[rand.nextInt(possibleFrequencies.size())]
-                : Collections.min(keySet);
+        switch (selection) {
+            case LOWEST:
+                proposedFrequency = Collections.min(keySet);
+                break;
+            case NEAREST:
+                proposedFrequency = getNearestFrequency(keySet);
+                break;
+            default:
+                proposedFrequency = (int) keySet.toArray()[rand.nextInt(possibleFrequencies.size())];
+        }
         channel.setFreq(proposedFrequency);
-        possibleFrequencies.remove(proposedFrequency);
+        getOwnPossibleFrequencies().remove(proposedFrequency);
     }
 
+    /**
+     * Method to find the possible frequency closest to the frequency the
+     * channel started at, taking the lower frequency if two are as close.
+     *
+     * @param frequencies possible frequencies
+     * @return nearest frequency
+     */
+    private int getNearestFrequency(@NotNull final Set<Integer> frequencies) {
+        int nearest = 0;
+        int nearestDistance = Integer.MAX_VALUE;
+        for (int frequency : frequencies) {
+            final int distance = Math.abs(frequency - startFrequency);
+            if (distance < nearestDistance || (distance == nearestDistance && frequency < nearest)) {
+                nearest = frequency;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+
     final boolean hasPossibleFrequencies() {
         return possibleFrequencies.size() > 0;
     }
@@ -111,6 +357,21 @@ class ChannelGeneratorWrapper implements Comparable<ChannelGeneratorWrapper> {
         return maxPossibleFrequencies;
     }
 
+    /**
+     * Method to get the possible frequencies in ascending order.
+     *
+     * @return sorted possible frequencies
+     */
+    final int[] getSortedPossibleFrequencies() {
+        final int[] frequencies = new int[possibleFrequencies.size()];
+        int i = 0;
+        for (int frequency : possibleFrequencies.keySet()) {
+            frequencies[i++] = frequency;
+        }
+        Arrays.sort(frequencies);
+        return frequencies;
+    }
+
     final int numPossibleFrequencies() {
         return possibleFrequencies.size();
     }
@@ -0,0 +1,114 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * The ChannelIndex class keeps a list of channels in comparator order as
+ * channels are added and removed, so ordered views and pages of channels can
+ * be read without sorting. A channel must be removed before any property the
+ * comparator depends on is changed, and added again afterwards.
+ */
+final class ChannelIndex {
+    private final Comparator<Channel> comparator;
+    private final List<Channel> channels = new ArrayList<>();
+
+    ChannelIndex(@NotNull final Comparator<Channel> comparator) {
+        if (comparator == null) {
+            throw new IllegalArgumentException();
+        }
+        this.comparator = comparator;
+    }
+
+    /**
+     * Method to add a channel in order. Channels that compare equal are kept
+     * in the order they were added.
+     *
+     * @param channel channel to add
+     */
+    final void add(@NotNull final Channel channel) {
+        final int index = firstIndexWhere((Channel other) -> comparator.compare(other, channel) > 0);
+        channels.add(index, channel);
+    }
+
+    /**
+     * Method to remove a channel.
+     *
+     * @param channel channel to remove
+     * @return true if the channel was found and removed
+     */
+    final boolean remove(@NotNull final Channel channel) {
+        int index = firstIndexWhere((Channel other) -> comparator.compare(other, channel) >= 0);
+        while (index < channels.size() && comparator.compare(channels.get(index), channel) == 0) {
+            if (channels.get(index) == channel) {
+                channels.remove(index);
+                return true;
+            }
+            index++;
+        }
+
+        // Fall back to a full search in case the channel was changed in place
+        for (index = 0; index < channels.size(); index++) {
+            if (channels.get(index) == channel) {
+                channels.remove(index);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    final void clear() {
+        channels.clear();
+    }
+
+    final int size() {
+        return channels.size();
+    }
+
+    final Channel get(final int index) {
+        return channels.get(index);
+    }
+
+    /**
+     * Method to find the first index at which a predicate holds. The
+     * predicate must be false for a leading run of the index and true for the
+     * rest, for example a lower bound on the sort key.
+     *
+     * @param predicate test that is monotonic over the index order
+     * @return first index at which predicate is true, or size if none
+     */
+    final int firstIndexWhere(@NotNull final Predicate<Channel> predicate) {
+        int lo = 0;
+        int hi = channels.size();
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (predicate.test(channels.get(mid))) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Method to get a page of channels in index order. The bounds are clamped
+     * to the size of the index.
+     *
+     * @param fromIndex first index, inclusive
+     * @param toIndex last index, exclusive
+     * @return array of channels
+     */
+    final Channel[] getPage(final int fromIndex, final int toIndex) {
+        final int from = Math.max(0, Math.min(fromIndex, channels.size()));
+        final int to = Math.max(from, Math.min(toIndex, channels.size()));
+        return channels.subList(from, to).toArray(new Channel[0]);
+    }
+
+    final List<Channel> getChannelList() {
+        return channels;
+    }
+}
@@ -0,0 +1,224 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * The ConcurrentIntermodStore class keeps intermods in a concurrent skip
+ * list. Any number of threads may add intermods and search ranges at the
+ * same time, so the intermods of a batch of new channels can be calculated
+ * in parallel straight into one store. The store is always sorted.
+ *
+ * The skip list changes in place, so getIntermodList returns a copy of the
+ * list, taken once and kept until the store next changes.
+ */
+final class ConcurrentIntermodStore extends IntermodStore {
+
+    /**
+     * The Entry class holds an intermod in the skip list along with the
+     * values it is sorted by, taken when it is added, so the order of the
+     * list cannot change when a channel is retuned. Intermods that compare as
+     * equal are kept apart by the order they were added, and entries without
+     * an intermod mark the ends of a frequency range.
+     */
+    private static final class Entry implements Comparable<Entry> {
+        private final Intermod intermod;
+        private final int frequency;
+        private final int type;
+        private final int f1;
+        private final int f2;
+        private final int f3;
+        private final long sequence;
+
+        private Entry(@NotNull final Intermod intermod, final long sequence) {
+            this.intermod = intermod;
+            this.frequency = intermod.getFreq();
+            this.type = intermod.getType().ordinal();
+            this.f1 = intermod.getF1().getFreq();
+            this.f2 = intermod.getF2().getFreq();
+            this.f3 = intermod.getF3() != null ? intermod.getF3().getFreq() : -1;
+            this.sequence = sequence;
+        }
+
+        private Entry(@NotNull final Entry entry, final long sequence) {
+            this.intermod = entry.intermod;
+            this.frequency = entry.frequency;
+            this.type = entry.type;
+            this.f1 = entry.f1;
+            this.f2 = entry.f2;
+            this.f3 = entry.f3;
+            this.sequence = sequence;
+        }
+
+        private Entry(final int frequency, final long sequence) {
+            this.intermod = null;
+            this.frequency = frequency;
+            this.type = -1;
+            this.f1 = -1;
+            this.f2 = -1;
+            this.f3 = -1;
+            this.sequence = sequence;
+        }
+
+        /**
+         * Method to compare entries in the same order as Intermod.compareTo,
+         * then by the order they were added.
+         */
+        @Override
+        public int compareTo(@NotNull final Entry that) {
+            if (this.frequency != that.frequency) {
+                return Integer.compare(this.frequency, that.frequency);
+            }
+            if (this.intermod != null && that.intermod != null) {
+                if (this.type != that.type) {
+                    return this.type - that.type;
+                } else if (this.f1 != that.f1) {
+                    return this.f1 - that.f1;
+                } else if (this.f2 != that.f2) {
+                    return this.f2 - that.f2;
+                } else if (this.f3 >= 0 && that.f3 >= 0 && this.f3 != that.f3) {
+                    return this.f3 - that.f3;
+                }
+            }
+            return Long.compare(this.sequence, that.sequence);
+        }
+    }
+
+    private final ConcurrentSkipListSet<Entry> entries = new ConcurrentSkipListSet<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile List<Intermod> intermodList = Collections.emptyList();
+
+    // Entries added or removed since each backup, undone when it is popped
+    private final List<Entry> undoAdded = new ArrayList<>();
+    private final List<Entry> undoRemoved = new ArrayList<>();
+    private final List<int[]> backupMarks = new ArrayList<>();
+
+    @Override
+    final Storage getStorage() {
+        return Storage.CONCURRENT;
+    }
+
+    @Override
+    final IntermodStore newStore() {
+        return new ConcurrentIntermodStore();
+    }
+
+    @Override
+    final boolean isConcurrent() {
+        return true;
+    }
+
+    /**
+     * Method to add an intermod to the store. May be called from several
+     * threads at once, but not while a backup is held.
+     *
+     * @param intermod intermod to add
+     */
+    @Override
+    final void add(@NotNull final Intermod intermod) {
+        addEntry(new Entry(intermod, sequence.getAndIncrement()));
+    }
+
+    private void addEntry(@NotNull final Entry entry) {
+        entries.add(entry);
+        size.incrementAndGet();
+        intermodList = null;
+        if (!backupMarks.isEmpty()) {
+            undoAdded.add(entry);
+        }
+    }
+
+    @Override
+    final void remove(@NotNull final Channel channel) {
+        final Iterator<Entry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            final Entry entry = iterator.next();
+            if (entry.intermod.getF1() == channel
+                    || entry.intermod.getF2() == channel
+                    || entry.intermod.getF3() == channel) {
+                iterator.remove();
+                size.decrementAndGet();
+                intermodList = null;
+                if (!backupMarks.isEmpty()) {
+                    undoRemoved.add(entry);
+                }
+            }
+        }
+    }
+
+    @Override
+    final void pushToBackupStack() {
+        backupMarks.add(new int[]{ undoAdded.size(), undoRemoved.size() });
+    }
+
+    @Override
+    final void popFromBackupStack() {
+        final int[] marks = backupMarks.remove(backupMarks.size() - 1);
+        for (int i = undoAdded.size() - 1; i >= marks[0]; i--) {
+            entries.remove(undoAdded.remove(i));
+            size.decrementAndGet();
+        }
+        for (int i = undoRemoved.size() - 1; i >= marks[1]; i--) {
+            entries.add(undoRemoved.remove(i));
+            size.incrementAndGet();
+        }
+        intermodList = null;
+    }
+
+    @Override
+    final void mergeIn(@NotNull final IntermodStore intermodStore) {
+        for (Entry entry : ((ConcurrentIntermodStore) intermodStore).entries) {
+            addEntry(new Entry(entry, sequence.getAndIncrement()));
+        }
+    }
+
+    @Override
+    final void sort() {
+        // The skip list is always sorted
+    }
+
+    @Override
+    final int size() {
+        return size.get();
+    }
+
+    @Override
+    final List<Intermod> getIntermodList() {
+        List<Intermod> list = intermodList;
+        if (list == null) {
+            final List<Intermod> copy = new ArrayList<>(size.get());
+            for (Entry entry : entries) {
+                copy.add(entry.intermod);
+            }
+            list = Collections.unmodifiableList(copy);
+            intermodList = list;
+        }
+        return list;
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Intermod> iterator() {
+        return getIntermodList().iterator();
+    }
+
+    @Override
+    final void forRange(final int rangeLo, final int rangeHi, @NotNull final Consumer<Intermod> consumer) {
+        if (rangeLo >= rangeHi) {
+            return;
+        }
+        final Entry from = new Entry(rangeLo, Long.MAX_VALUE);
+        final Entry to = new Entry(rangeHi, Long.MIN_VALUE);
+        for (Entry entry : entries.subSet(from, false, to, false)) {
+            consumer.accept(entry.intermod);
+        }
+    }
+}
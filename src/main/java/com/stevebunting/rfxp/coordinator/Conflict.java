@@ -1,5 +1,7 @@
 package com.stevebunting.rfxp.coordinator;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 
 class Conflict {
@@ -97,4 +99,32 @@ class Conflict {
     Type getType() {
         return type;
     }
+
+    // Get the affected channel and every channel contributing to the conflict
+    List<Channel> getInvolvedChannels() {
+        final List<Channel> involved = new ArrayList<>(4);
+        involved.add(channel);
+        if (conflictChannel != null) {
+            involved.add(conflictChannel);
+        }
+        if (conflictIntermod != null) {
+            addInvolvedChannel(involved, conflictIntermod.getF1());
+            addInvolvedChannel(involved, conflictIntermod.getF2());
+            addInvolvedChannel(involved, conflictIntermod.getF3());
+        }
+        return involved;
+    }
+
+    // Channels are compared by identity, equal settings do not make the same channel
+    private static void addInvolvedChannel(final List<Channel> involved, final Channel contributor) {
+        if (contributor == null) {
+            return;
+        }
+        for (Channel channel : involved) {
+            if (channel == contributor) {
+                return;
+            }
+        }
+        involved.add(contributor);
+    }
 }
@@ -2,8 +2,11 @@ package com.stevebunting.rfxp.coordinator;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Coordination is the main interaction point. It offers methods to add,
@@ -11,20 +14,71 @@ import java.util.List;
  */
 final class Coordination {
 
-    // Counter to assign id's to channels
-    private int idCounter = 0;
-
     // ArrayList to hold list of channels with id key
-    final private List<Channel> channels = new ArrayList<>();
+    private List<Channel> channels = new ArrayList<>();
 
     // Analyser class
-    final private Analyser analyser = new Analyser();
+    private Analyser analyser;
+
+    // Recent changes for clients that poll with getChangesSince, null until
+    // a client enables it so edits are not recorded for nobody
+    static final int CHANGE_JOURNAL_CAPACITY = 1024;
+    private ChangeJournal changeJournal = null;
+
+    // Write-ahead log of edits, null if the coordination is not logged
+    private CoordinationLog log = null;
+
+    // Increased by every change made through this coordination, including
+    // changes the analysis does not see such as renaming a channel
+    private long modCount = 0;
+
+    // Coordination this was forked from and its modification count at the time
+    private Coordination parent = null;
+    private long parentModCount = 0;
+
+    // Number of batches started and not yet ended
+    private int batchDepth = 0;
 
     // Current editing channel
     private Channel editChannelBackup = null;
 
     enum SortBy { ID, FREQUENCY, NAME }
-    private Comparator<Channel> sortBy = new ChannelIDComparator();
+    private SortBy sortBy = SortBy.ID;
+
+    // Channels kept in each sort order as the coordination is edited
+    private Map<SortBy, ChannelIndex> channelIndexes = newChannelIndexes();
+
+    Coordination() {
+        this(IntermodStore.Storage.HEAP);
+    }
+
+    /**
+     * Constructor for a coordination that keeps its intermods in the given
+     * storage. Off-heap storage keeps the heap small for very large
+     * coordinations at the cost of creating intermod objects as they are
+     * read. Bucketed storage makes adding and removing channels cost the
+     * same however many intermods the coordination already has.
+     * Concurrent storage lets addChannels calculate the intermods of each
+     * new channel in parallel.
+     *
+     * @param storage intermod storage
+     */
+    Coordination(@NotNull final IntermodStore.Storage storage) {
+        analyser = new Analyser(storage);
+    }
+
+    /**
+     * Create an empty index for each sort order.
+     *
+     * @return empty indexes
+     */
+    private static Map<SortBy, ChannelIndex> newChannelIndexes() {
+        final Map<SortBy, ChannelIndex> channelIndexes = new EnumMap<>(SortBy.class);
+        channelIndexes.put(SortBy.ID, new ChannelIndex(new ChannelIDComparator()));
+        channelIndexes.put(SortBy.FREQUENCY, new ChannelIndex(new ChannelFrequencyComparator()));
+        channelIndexes.put(SortBy.NAME, new ChannelIndex(new ChannelNameComparator()));
+        return channelIndexes;
+    }
 
     /**
      * Declare channel that is to be edited.
@@ -91,13 +145,28 @@ final class Coordination {
         if (editChannelBackup == null) {
             return;
         }
+        beforeChange();
         Channel channelToRestore = getChannelById(editChannelBackup.getId());
         if (channelToRestore == null) {
             return;
         }
-        channelToRestore.setName(editChannelBackup.getName());
-        channelToRestore.setFreqAndEquipment(editChannelBackup.getFreq(), editChannelBackup.getEquipment(), editChannelBackup.getRange());
-        analyser.updateChannel(channelToRestore);
+        final Channel restored = channelToRestore.copySettings();
+        restored.setName(editChannelBackup.getName());
+        restored.setFreqAndEquipment(editChannelBackup.getFreq(), editChannelBackup.getEquipment(), editChannelBackup.getRange());
+        logChannel(restored);
+        startBatch();
+        try {
+            removeFromIndexes(channelToRestore);
+            try {
+                channelToRestore.setName(restored.getName());
+                channelToRestore.setFreqAndEquipment(restored.getFreq(), restored.getEquipment(), restored.getRange());
+            } finally {
+                addToIndexes(channelToRestore);
+            }
+            analyser.updateChannel(channelToRestore);
+        } finally {
+            endBatch();
+        }
     }
 
     /**
@@ -115,19 +184,75 @@ final class Coordination {
         if (equipment == null) {
             throw new IllegalArgumentException("A valid equipment profile must be supplied");
         }
-        final int id = idCounter++;
+        beforeChange();
+        final int id = analyser.nextChannelId();
 
         final Channel newChannel = new Channel(id, frequency, equipment);
         return addChannel(newChannel);
     }
 
     final int addChannel(@NotNull final Channel channel) {
+        beforeChange();
+        logChannel(channel);
         channels.add(channel);
+        addToIndexes(channel);
         analyser.addChannel(channel);
 
         return channel.getId();
     }
 
+    /**
+     * Add several channels to the coordination at once. Intermods and
+     * conflicts are calculated in a single pass rather than once per channel.
+     *
+     * @param channelsToAdd channels to add, with unique IDs
+     */
+    final void addChannels(@NotNull final List<Channel> channelsToAdd) {
+        if (channelsToAdd == null) {
+            throw new IllegalArgumentException();
+        }
+        beforeChange();
+        startBatch();
+        try {
+            for (Channel channel : channelsToAdd) {
+                logChannel(channel);
+            }
+            analyser.addChannels(channelsToAdd);
+            for (Channel channel : channelsToAdd) {
+                channels.add(channel);
+                addToIndexes(channel);
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    /**
+     * Restore a saved coordination into this empty coordination, taking the
+     * saved intermods and conflicts as they are rather than recalculating
+     * them.
+     *
+     * @param savedChannels channels of the saved coordination
+     * @param savedIntermods sorted intermods between the channels
+     * @param savedConflicts conflicts between the channels and intermods
+     * @throws IllegalStateException if the coordination already has channels
+     */
+    final void restore(
+            @NotNull final List<Channel> savedChannels,
+            @NotNull final IntermodStore savedIntermods,
+            @NotNull final List<Conflict> savedConflicts
+    ) {
+        beforeChange();
+        analyser.restore(savedChannels, savedIntermods, savedConflicts);
+        for (Channel channel : savedChannels) {
+            channels.add(channel);
+            addToIndexes(channel);
+        }
+        if (log != null) {
+            log.checkpoint();
+        }
+    }
+
     /**
      * Update a channels frequency.
      *
@@ -137,8 +262,24 @@ final class Coordination {
      * @throws InvalidFrequencyException on invalid frequency / equipment combination
      */
     final Channel updateChannel(final Channel channelToUpdate, final double frequency) throws InvalidFrequencyException {
-        channelToUpdate.setFreq(frequency);
-        analyser.updateChannel(channelToUpdate);
+        beforeChange();
+        final Channel updated = channelToUpdate.copySettings();
+        updated.setFreq(frequency);
+        logChannel(updated);
+        startBatch();
+        try {
+            final boolean indexed = removeFromIndexes(channelToUpdate);
+            try {
+                channelToUpdate.setFreq(updated.getFreq());
+            } finally {
+                if (indexed) {
+                    addToIndexes(channelToUpdate);
+                }
+            }
+            analyser.updateChannel(channelToUpdate);
+        } finally {
+            endBatch();
+        }
 
         return channelToUpdate;
     }
@@ -159,11 +300,22 @@ final class Coordination {
      * @return the channel object
      */
     final Channel updateChannel(final int id, @NotNull final String name) {
+        beforeChange();
         final Channel channelToUpdate = getChannelById(id);
         if (channelToUpdate == null) {
             return null;
         }
-        channelToUpdate.setName(name);
+        final Channel updated = channelToUpdate.copySettings();
+        updated.setName(name);
+        logChannel(updated);
+        startBatch();
+        try {
+            removeFromIndexes(channelToUpdate);
+            channelToUpdate.setName(name);
+            addToIndexes(channelToUpdate);
+        } finally {
+            endBatch();
+        }
         return channelToUpdate;
     }
 
@@ -179,12 +331,21 @@ final class Coordination {
             final int id,
             @NotNull final Equipment equipment
     ) throws InvalidFrequencyException {
+        beforeChange();
         final Channel channelToUpdate = getChannelById(id);
         if (channelToUpdate == null) {
             return null;
         }
-        channelToUpdate.setEquipment(equipment);
-        analyser.updateChannel(channelToUpdate);
+        final Channel updated = channelToUpdate.copySettings();
+        updated.setEquipment(equipment);
+        logChannel(updated);
+        startBatch();
+        try {
+            channelToUpdate.setEquipment(equipment);
+            analyser.updateChannel(channelToUpdate);
+        } finally {
+            endBatch();
+        }
 
         return channelToUpdate;
     }
@@ -196,22 +357,129 @@ final class Coordination {
      * @return the removed channel or null if channel is not found
      */
     final Channel removeChannel(final int id) {
-        final int index = getChannelIndex(id);
-        if (index == -1) {
+        final Channel channelToRemove = getChannelById(id);
+        if (channelToRemove == null) {
             return null;
         }
-        Channel removedChannel = channels.remove(index);
-        analyser.removeChannel(removedChannel);
-
-        return removedChannel;
+        return removeChannel(channelToRemove);
     }
 
     final Channel removeChannel(@NotNull final Channel channel) {
+        beforeChange();
+        if (log != null) {
+            log.channelRemoved(channel);
+        }
         channels.remove(channel);
+        removeFromIndexes(channel);
         analyser.removeChannel(channel);
         return channel;
     }
 
+    /**
+     * Start a batch of edits. Readers see the result of the whole batch at
+     * once, and it is reported to listeners as a single change. The batch
+     * is written to the write-ahead log in one go. Every call must be paired
+     * with a call to endBatch.
+     */
+    final void startBatch() {
+        analyser.startBatch();
+        if (batchDepth++ == 0 && log != null) {
+            log.startBatch();
+        }
+    }
+
+    /**
+     * End a batch of edits. If it is the outermost batch, its records are
+     * forced to the write-ahead log and then the result is published.
+     */
+    final void endBatch() {
+        try {
+            if (batchDepth == 1 && log != null) {
+                log.endBatch();
+            }
+        } finally {
+            batchDepth--;
+            analyser.endBatch();
+        }
+    }
+
+    /**
+     * Record the new settings of a channel in the write-ahead log, if there
+     * is one, before they are applied.
+     *
+     * @param channel channel to add, or a copy of a channel with its new settings
+     */
+    private void logChannel(@NotNull final Channel channel) {
+        if (log != null) {
+            log.channelChanged(channel);
+        }
+    }
+
+    /**
+     * Record new calculation settings in the write-ahead log, if there is
+     * one, then apply them.
+     *
+     * @param calculations calculation settings with the change made
+     */
+    private void setCalculations(@NotNull final AnalyserCalculations calculations) {
+        beforeChange();
+        if (log != null) {
+            log.calculationsChanged(calculations);
+        }
+        final AnalyserCalculations current = analyser.getCalculations();
+        current.setIM2t3o(calculations.getIM2t3o());
+        current.setIM2t5o(calculations.getIM2t5o());
+        current.setIM2t7o(calculations.getIM2t7o());
+        current.setIM2t9o(calculations.getIM2t9o());
+        current.setIM3t3o(calculations.getIM3t3o());
+        analyser.calculationsChanged();
+    }
+
+    /**
+     * Add a channel to each of the sort order indexes.
+     *
+     * @param channel channel to add
+     */
+    private void addToIndexes(@NotNull final Channel channel) {
+        for (ChannelIndex channelIndex : channelIndexes.values()) {
+            channelIndex.add(channel);
+        }
+    }
+
+    /**
+     * Remove a channel from each of the sort order indexes. Must be called
+     * before changing a channel's frequency or name.
+     *
+     * @param channel channel to remove
+     * @return true if the channel was indexed
+     */
+    private boolean removeFromIndexes(@NotNull final Channel channel) {
+        boolean removed = false;
+        for (ChannelIndex channelIndex : channelIndexes.values()) {
+            removed |= channelIndex.remove(channel);
+        }
+        return removed;
+    }
+
+    /**
+     * Replace the sort order indexes with those of another coordination.
+     *
+     * @param coordination coordination to copy indexes from
+     * @param channelCopies map from the other coordination's channels to channels in this coordination
+     */
+    private void copyIndexes(
+            @NotNull final Coordination coordination,
+            @NotNull final Map<Channel, Channel> channelCopies
+    ) {
+        for (SortBy order : SortBy.values()) {
+            final ChannelIndex channelIndex = channelIndexes.get(order);
+            channelIndex.clear();
+            for (Channel channel : coordination.channelIndexes.get(order).getChannelList()) {
+                channelIndex.add(channelCopies.get(channel));
+            }
+        }
+    }
+
     /**
      * Check the impact a new channel will have on the coordination.
      *
@@ -244,39 +512,27 @@ final class Coordination {
     }
 
     /**
-     * Get channels index in channels ArrayList from id.
-     *
-     * @param id ID of channel to find
-     * @return index of channel in channels ArrayList or -1 if not found
-     */
-    private int getChannelIndex(int id) {
-        for (int index = 0; index < channels.size(); index++) {
-            if (channels.get(index).getId() == id) {
-                return index;
-            }
-        }
-        return -1;
-    }
-
-    /**
-     * Get channel from channels ArrayList from id.
+     * Get channel from id.
      *
      * @param id ID of channel to find
      * @return channel requested or null if not found
      */
     final Channel getChannelById(int id) {
-        final int index = getChannelIndex(id);
-        if (index == -1) {
+        final ChannelIndex idIndex = channelIndexes.get(SortBy.ID);
+        final int index = idIndex.firstIndexWhere((Channel channel) -> channel.getId() >= id);
+        if (index == idIndex.size() || idIndex.get(index).getId() != id) {
             return null;
         }
-        return channels.get(index);
+        return idIndex.get(index);
     }
 
     /**
-     * Sort channel list using stored comparator.
+     * Sort channel list using stored sort order. The order is maintained as
+     * channels are edited so this only copies the index.
      */
     final void sort() {
-        channels.sort(sortBy);
+        channels.clear();
+        channels.addAll(channelIndexes.get(sortBy).getChannelList());
     }
 
     /**
@@ -285,23 +541,7 @@ final class Coordination {
      * @param sortBy required sort order
      */
     final void setSortBy(SortBy sortBy) {
-        if (sortBy == null) {
-            sortBy = SortBy.ID;
-        }
-        switch (sortBy) {
-            case FREQUENCY:
-                this.sortBy = new ChannelFrequencyComparator();
-                break;
-
-            case NAME:
-                this.sortBy = new ChannelNameComparator();
-                break;
-
-            default:
-            case ID:
-                this.sortBy = new ChannelIDComparator();
-                break;
-        }
+        this.sortBy = sortBy != null ? sortBy : SortBy.ID;
     }
 
     /**
@@ -314,6 +554,35 @@ final class Coordination {
         return channels.toArray(channelArray);
     }
 
+    /**
+     * Get a page of channels in a sort order. Indexes out of range are
+     * clamped to the number of channels.
+     *
+     * @param sortBy sort order
+     * @param fromIndex index of first channel, inclusive
+     * @param toIndex index of last channel, exclusive
+     * @return array of channels
+     */
+    final Channel[] getChannels(@NotNull final SortBy sortBy, final int fromIndex, final int toIndex) {
+        return channelIndexes.get(sortBy != null ? sortBy : SortBy.ID).getPage(fromIndex, toIndex);
+    }
+
+    /**
+     * Get channels within a frequency range in frequency order.
+     *
+     * @param lo lowest frequency in MHz, inclusive
+     * @param hi highest frequency in MHz, inclusive
+     * @return array of channels
+     */
+    final Channel[] getChannelsInRange(final double lo, final double hi) {
+        final int loKhz = Channel.mhzToKhz(lo);
+        final int hiKhz = Channel.mhzToKhz(hi);
+        final ChannelIndex frequencyIndex = channelIndexes.get(SortBy.FREQUENCY);
+        return frequencyIndex.getPage(
+                frequencyIndex.firstIndexWhere((Channel channel) -> channel.getFreq() >= loKhz),
+                frequencyIndex.firstIndexWhere((Channel channel) -> channel.getFreq() > hiKhz));
+    }
+
     // Get number of channels
     public int getNumChannels() {
         return channels.size();
@@ -331,13 +600,111 @@ final class Coordination {
 
     // Get number of conflicts by type
     public int getNumConflictsOfType(Conflict.Type type) {
-        int count = 0;
-        for(Conflict conflict : analyser.getConflictList()) {
-            if (conflict.getType() == type) {
-                count++;
-            }
+        return analyser.getStatistics().getNumConflicts(type);
+    }
+
+    /**
+     * Get conflict statistics for the coordination. Counts are maintained as
+     * the coordination is edited so each can be read in constant time.
+     *
+     * @return statistics from the latest analysis snapshot
+     */
+    final CoordinationStatistics getStatistics() {
+        return analyser.getSnapshot().getStatistics();
+    }
+
+    /**
+     * Register a listener to be told what changed after each edit, so
+     * clients do not need to poll every channel.
+     *
+     * @param listener listener to add
+     */
+    final void addChangeListener(@NotNull final AnalyserListener listener) {
+        analyser.addListener(listener);
+    }
+
+    /**
+     * Remove a registered change listener.
+     *
+     * @param listener listener to remove
+     * @return true if the listener was registered
+     */
+    final boolean removeChangeListener(@NotNull final AnalyserListener listener) {
+        return analyser.removeListener(listener);
+    }
+
+    /**
+     * Get a snapshot of the latest version of the analysis, built when it is
+     * first asked for. Safe to call from any thread while edits are being
+     * made.
+     *
+     * @return latest analysis snapshot
+     */
+    final AnalyserSnapshot getSnapshot() {
+        return analyser.getSnapshot();
+    }
+
+    /**
+     * Get the version of the coordination, which increases with every edit.
+     *
+     * @return latest version
+     */
+    final long getVersion() {
+        return analyser.getVersion();
+    }
+
+    /**
+     * Get the channels, conflicts and statistics that changed since a version
+     * the client already has, so it does not need to reload everything. If
+     * the change journal is not enabled or the version is too old for it the
+     * delta is marked as a full refresh.
+     *
+     * @param version version the client last saw
+     * @return changes up to the latest version
+     */
+    final CoordinationDelta getChangesSince(final long version) {
+        if (changeJournal == null) {
+            return ChangeJournal.getFullRefresh(version, analyser.getSnapshot());
+        }
+        return changeJournal.getChangesSince(version, analyser.getSnapshot());
+    }
+
+    /**
+     * Start journalling changes for getChangesSince. Changes are only
+     * recorded while the journal is enabled, so versions from before it was
+     * enabled need a full refresh.
+     */
+    final void enableChangeJournal() {
+        if (changeJournal == null) {
+            changeJournal = new ChangeJournal(CHANGE_JOURNAL_CAPACITY, analyser.getVersion());
+            analyser.setJournal(changeJournal);
         }
-        return count;
+    }
+
+    /**
+     * Stop journalling changes and release the journalled events.
+     */
+    final void disableChangeJournal() {
+        analyser.setJournal(null);
+        changeJournal = null;
+    }
+
+    final boolean isChangeJournalEnabled() {
+        return changeJournal != null;
+    }
+
+    /**
+     * Attach a new analyser to the change journal, or detach it from any
+     * journal if the change journal is not enabled. Changes made before it
+     * was attached are not journalled so older versions need a full refresh.
+     *
+     * @param analyser analyser to journal
+     */
+    private void attachJournal(@NotNull final Analyser analyser) {
+        if (changeJournal != null) {
+            changeJournal.reset(analyser.getVersion());
+        }
+        analyser.setJournal(changeJournal);
     }
 
     final boolean getCalculate2t3o() {
@@ -345,7 +712,9 @@ final class Coordination {
     }
 
     final void setCalculate2t3o(final boolean calculate2t3o) {
-        analyser.getCalculations().setIM2t3o(calculate2t3o);
+        final AnalyserCalculations calculations = analyser.getCalculations().copy();
+        calculations.setIM2t3o(calculate2t3o);
+        setCalculations(calculations);
     }
 
     final boolean getCalculate2t5o() {
@@ -353,7 +722,9 @@ final class Coordination {
     }
 
     final void setCalculate2t5o(final boolean calculate2t5o) {
-        analyser.getCalculations().setIM2t5o(calculate2t5o);
+        final AnalyserCalculations calculations = analyser.getCalculations().copy();
+        calculations.setIM2t5o(calculate2t5o);
+        setCalculations(calculations);
     }
 
     final boolean getCalculate2t7o() {
@@ -361,7 +732,9 @@ final class Coordination {
     }
 
     final void setCalculate2t7o(final boolean calculate2t7o) {
-        analyser.getCalculations().setIM2t7o(calculate2t7o);
+        final AnalyserCalculations calculations = analyser.getCalculations().copy();
+        calculations.setIM2t7o(calculate2t7o);
+        setCalculations(calculations);
     }
 
     final boolean getCalculate2t9o() {
@@ -369,7 +742,9 @@ final class Coordination {
     }
 
     final void setCalculate2t9o(final boolean calculate2t9o) {
-        analyser.getCalculations().setIM2t9o(calculate2t9o);
+        final AnalyserCalculations calculations = analyser.getCalculations().copy();
+        calculations.setIM2t9o(calculate2t9o);
+        setCalculations(calculations);
     }
 
     final boolean getCalculate3t3o() {
@@ -377,25 +752,394 @@ final class Coordination {
     }
 
     final void setCalculate3t3o(final boolean calculate3t3o) {
-        analyser.getCalculations().setIM3t3o(calculate3t3o);
+        final AnalyserCalculations calculations = analyser.getCalculations().copy();
+        calculations.setIM3t3o(calculate3t3o);
+        setCalculations(calculations);
+    }
+
+    /**
+     * Find how many channels of one equipment type fit in a range alongside
+     * the channels already in the coordination. The coordination is not
+     * changed.
+     *
+     * @param equipment equipment of the channels
+     * @param range range to fit the channels in
+     * @param timeLimit time limit in milliseconds
+     * @return frequencies of the largest set found
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> findCapacity(
+            @NotNull final Equipment equipment,
+            @NotNull final Range range,
+            final long timeLimit
+    ) throws InvalidFrequencyException {
+        return analyser.findCapacity(equipment, range, timeLimit);
+    }
+
+    final ChannelGeneratorWrapper.Selection getFrequencySelection() {
+        return analyser.getFrequencySelection();
+    }
+
+    /**
+     * Set the order in which generated frequencies are tried. NEAREST keeps
+     * each channel as close as possible to its current frequency.
+     *
+     * @param frequencySelection order to try frequencies in
+     */
+    final void setFrequencySelection(@NotNull final ChannelGeneratorWrapper.Selection frequencySelection) {
+        beforeChange();
+        analyser.setFrequencySelection(frequencySelection);
+    }
+
+    /**
+     * Get the seed of the last frequency generation, which repeats it when
+     * passed back to updateFrequencies.
+     *
+     * @return seed of the last generation
+     */
+    final long getLastSeed() {
+        return analyser.getLastSeed();
+    }
+
+    final FrequencySetCache getFrequencySetCache() {
+        return analyser.getFrequencySetCache();
+    }
+
+    /**
+     * Set the cache of frequency sets found by earlier generations. A
+     * generation that matches one in the cache uses the stored set if it is
+     * still clear, rather than searching. Set to null to always search.
+     *
+     * @param frequencySetCache cache of frequency sets
+     */
+    final void setFrequencySetCache(final FrequencySetCache frequencySetCache) {
+        beforeChange();
+        analyser.setFrequencySetCache(frequencySetCache);
+    }
+
+    /**
+     * Add a frequency template for an equipment, offsets from the lowest
+     * frequency that are known to be clear of each other. When frequencies
+     * are generated, channels of the same equipment and range are first
+     * given the offsets of a template slid up their range to the first
+     * position clear of the other channels, and only searched for if no
+     * template fits.
+     *
+     * @param equipment equipment the template is for
+     * @param offsets offsets in kHz, starting at 0 and ascending
+     * @throws IllegalArgumentException if the offsets are not valid for the equipment
+     */
+    final void addFrequencyTemplate(
+            @NotNull final Equipment equipment,
+            @NotNull final int[] offsets
+    ) throws IllegalArgumentException {
+        beforeChange();
+        analyser.addFrequencyTemplate(equipment, offsets);
+    }
+
+    final void clearFrequencyTemplates() {
+        beforeChange();
+        analyser.clearFrequencyTemplates();
     }
 
     final Analyser getAnalyser() {
         return analyser;
     }
 
+    final int getIdCounter() {
+        return analyser.getIdCounter();
+    }
+
+    /**
+     * Set the ID to assign to the next channel added. Used when restoring a
+     * coordination so the IDs of removed channels are not reused.
+     *
+     * @param idCounter next channel ID
+     */
+    final void setIdCounter(final int idCounter) {
+        beforeChange();
+        analyser.setIdCounter(idCounter);
+    }
+
+    final CoordinationLog getLog() {
+        return log;
+    }
+
+    /**
+     * Set the write-ahead log that every edit is recorded in, or null to
+     * stop logging. Use CoordinationLog to create or recover a log rather
+     * than calling this directly.
+     *
+     * @param log write-ahead log
+     */
+    final void setLog(final CoordinationLog log) {
+        this.log = log;
+    }
+
     final void updateFrequencies(@NotNull final List<Channel> channelsToUpdate) throws InvalidFrequencyException, ChannelMissingRangeException {
-        for (Channel channel : channelsToUpdate) {
-            removeChannel(channel);
+        updateFrequencies(channelsToUpdate, Analyser.GenerationStrategy.BACKTRACKING);
+    }
+
+    /**
+     * Generate new frequencies for channels with the given search. Local
+     * search handles far more channels than backtracking, but if it finds
+     * no clear set the channels are given the set with the fewest conflicts.
+     * A channel the search could not place keeps its previous frequency.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     * @throws ChannelMissingRangeException if a channel has no range
+     */
+    final void updateFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final Analyser.GenerationStrategy strategy
+    ) throws InvalidFrequencyException, ChannelMissingRangeException {
+        beforeChange();
+        updateFrequencies(channelsToUpdate, strategy, analyser.getFrequencySelection(), analyser.nextSeed());
+    }
+
+    /**
+     * Generate new frequencies for channels with the given search, selection
+     * and seed. The same seed gives the same frequencies and the same search
+     * for the same channels and coordination, so runs can be repeated and
+     * compared. The seed of any generation can be read from getLastSeed.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param strategy search to use
+     * @param selection order to try frequencies in
+     * @param seed seed of the random number generator used by the search
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     * @throws ChannelMissingRangeException if a channel has no range
+     */
+    final void updateFrequencies(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final Analyser.GenerationStrategy strategy,
+            @NotNull final ChannelGeneratorWrapper.Selection selection,
+            final long seed
+    ) throws InvalidFrequencyException, ChannelMissingRangeException {
+        if (channelsToUpdate == null || strategy == null || selection == null) {
+            throw new IllegalArgumentException();
         }
-        List<Integer> newFrequencies = analyser.updateFrequencies(channelsToUpdate);
-        for (int i = 0; i < newFrequencies.size(); i++) {
-            Channel channel = channelsToUpdate.get(i);
-            channel.setFreq(newFrequencies.get(i));
+        beforeChange();
+        final int[] previousFrequencies = takeOutChannels(channelsToUpdate);
+        List<Integer> newFrequencies = null;
+        try {
+            newFrequencies = analyser.updateFrequencies(channelsToUpdate, strategy, selection, seed);
+        } finally {
+            putBackChannels(channelsToUpdate, previousFrequencies, newFrequencies);
+        }
+    }
+
+    /**
+     * Remove channels from the coordination while new frequencies are found
+     * for them.
+     *
+     * @param channelsToUpdate channels to remove
+     * @return frequency of each channel before it was removed
+     */
+    private int[] takeOutChannels(@NotNull final List<Channel> channelsToUpdate) {
+        final int[] previousFrequencies = new int[channelsToUpdate.size()];
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            previousFrequencies[i] = channelsToUpdate.get(i).getFreq();
+            removeChannel(channelsToUpdate.get(i));
+        }
+        return previousFrequencies;
+    }
+
+    /**
+     * Add channels back to the coordination at their new frequencies. A
+     * channel without a new frequency is put back at its previous one, even
+     * if that is outside its current range, so no channel is ever lost.
+     *
+     * @param channelsToUpdate channels removed by takeOutChannels
+     * @param previousFrequencies frequency of each channel before it was removed
+     * @param newFrequencies new frequency of each channel, null for a channel
+     *                       not placed, or null if no frequencies were found
+     * @throws InvalidFrequencyException if a new frequency cannot be set
+     */
+    private void putBackChannels(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final int[] previousFrequencies,
+            final List<Integer> newFrequencies
+    ) throws InvalidFrequencyException {
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            final Channel channel = channelsToUpdate.get(i);
+            final Integer newFrequency = newFrequencies != null ? newFrequencies.get(i) : null;
+            if (newFrequency != null) {
+                channel.setFreq(newFrequency);
+            } else {
+                channel.setFreqAndEquipment(previousFrequencies[i], channel.getEquipment(), channel.getRange());
+            }
             addChannel(channel);
         }
     }
 
+    /**
+     * Generate new frequencies for channels with as much headroom from
+     * other channels and intermods as can be found within a time limit. If
+     * no clear plot is found the channels keep their previous frequencies.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param timeLimit time limit in milliseconds
+     * @return smallest distance of the plot from any channel or intermod
+     * as a multiple of the required spacing, 0 if no clear plot was found
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     * @throws ChannelMissingRangeException if a channel has no range
+     */
+    final double optimiseHeadroom(
+            @NotNull final List<Channel> channelsToUpdate,
+            final long timeLimit
+    ) throws InvalidFrequencyException, ChannelMissingRangeException {
+        if (channelsToUpdate == null) {
+            throw new IllegalArgumentException();
+        }
+        beforeChange();
+        final int[] previousFrequencies = takeOutChannels(channelsToUpdate);
+        List<Integer> newFrequencies = null;
+        try {
+            newFrequencies = analyser.optimiseHeadroom(channelsToUpdate, timeLimit);
+        } finally {
+            putBackChannels(channelsToUpdate, previousFrequencies, newFrequencies);
+        }
+        return analyser.getHeadroom() / 1000.0;
+    }
+
+    /**
+     * Clear the conflicts of the coordination by moving as few channels as
+     * possible. Channels are chosen so that every conflict has one of its
+     * channels moved, and new frequencies are searched for those channels
+     * only, with every other channel left where it is. If no frequencies
+     * can be found for them, every channel involved in a conflict is moved
+     * instead. If that fails too the coordination is left unchanged.
+     *
+     * @return channels given a new frequency
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     * @throws ChannelMissingRangeException if a channel to move has no range
+     */
+    final List<Channel> repairFrequencies() throws InvalidFrequencyException, ChannelMissingRangeException {
+        beforeChange();
+        List<Channel> previousChannelsToMove = Collections.emptyList();
+        for (boolean includePartners : new boolean[]{ false, true }) {
+            final List<Channel> channelsToMove = analyser.getChannelsToRepair(includePartners);
+            if (channelsToMove.isEmpty() || channelsToMove.equals(previousChannelsToMove)) {
+                break;
+            }
+            previousChannelsToMove = channelsToMove;
+
+            final int[] previousFrequencies = takeOutChannels(channelsToMove);
+            List<Integer> newFrequencies = null;
+            try {
+                newFrequencies = analyser.updateFrequencies(channelsToMove);
+
+                // Only keep the new frequencies if every channel was placed
+                if (newFrequencies.contains(null)) {
+                    newFrequencies = null;
+                }
+            } finally {
+                putBackChannels(channelsToMove, previousFrequencies, newFrequencies);
+            }
+            if (newFrequencies != null) {
+                final List<Channel> movedChannels = new ArrayList<>();
+                for (int i = 0; i < channelsToMove.size(); i++) {
+                    if (channelsToMove.get(i).getFreq() != previousFrequencies[i]) {
+                        movedChannels.add(channelsToMove.get(i));
+                    }
+                }
+                return movedChannels;
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Create a scenario copy of the coordination. The fork can be edited
+     * freely without affecting this coordination, then discarded or
+     * committed back with commit. The channels and analysis are copied when
+     * the fork is made, existing intermods and conflicts are carried over
+     * rather than recalculated.
+     *
+     * @return forked coordination
+     */
+    final Coordination fork() {
+        final Coordination fork = new Coordination(analyser.getIntermodStorage());
+        final Map<Channel, Channel> channelCopies = new IdentityHashMap<>();
+        fork.analyser = analyser.fork(channelCopies);
+        for (Channel channel : channels) {
+            fork.channels.add(channelCopies.get(channel));
+        }
+        fork.copyIndexes(this, channelCopies);
+        fork.sortBy = sortBy;
+        fork.parent = this;
+        fork.parentModCount = modCount;
+        return fork;
+    }
+
+    /**
+     * Replace the state of this coordination with that of a fork. Channel
+     * objects obtained from this coordination before the commit are no longer
+     * part of it afterwards. The state is moved rather than copied, so the
+     * fork is left empty.
+     *
+     * @param fork coordination previously forked from this coordination
+     * @throws IllegalArgumentException if fork was not forked from this coordination
+     * @throws IllegalStateException if this coordination has changed since the fork was made
+     */
+    final void commit(@NotNull final Coordination fork) {
+        if (fork == null || fork.parent != this) {
+            throw new IllegalArgumentException("Coordination was not forked from this coordination");
+        }
+        if (fork.parentModCount != modCount) {
+            throw new IllegalStateException("Coordination has changed since it was forked");
+        }
+        beforeChange();
+        channels = fork.channels;
+        channelIndexes = fork.channelIndexes;
+
+        // Listeners stay with the coordination they were registered on
+        final Analyser previousAnalyser = analyser;
+        final List<AnalyserListener> forkListeners = new ArrayList<>(fork.analyser.getListeners());
+        analyser = fork.analyser;
+        for (AnalyserListener listener : forkListeners) {
+            analyser.removeListener(listener);
+        }
+
+        // A batch in progress carries on in the new analyser
+        for (int i = 0; i < batchDepth; i++) {
+            analyser.startBatch();
+            previousAnalyser.endBatch();
+        }
+        for (AnalyserListener listener : previousAnalyser.getListeners()) {
+            analyser.addListener(listener);
+        }
+        previousAnalyser.setJournal(null);
+        attachJournal(analyser);
+        analyser.notifyReplaced(previousAnalyser.getSnapshot());
+        editChannelBackup = null;
+        if (log != null) {
+            log.checkpoint();
+        }
+
+        fork.channels = new ArrayList<>();
+        fork.channelIndexes = newChannelIndexes();
+        fork.analyser = new Analyser(analyser.getIntermodStorage());
+        fork.attachJournal(fork.analyser);
+        for (AnalyserListener listener : forkListeners) {
+            fork.analyser.addListener(listener);
+        }
+        fork.editChannelBackup = null;
+        fork.parent = null;
+    }
+
+    /**
+     * Record a change made through this coordination, so that forks made
+     * before it can no longer be committed. Must be called before every
+     * change.
+     */
+    private void beforeChange() {
+        modCount++;
+    }
+
     @Override
     public String toString() {
         StringBuilder str = new StringBuilder();
@@ -0,0 +1,98 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The CoordinationDelta class describes what changed in a coordination
+ * between a version a client has already seen and the latest snapshot. If
+ * the change journal no longer covers the client's version the delta is
+ * marked as a full refresh and the client should reload from the snapshot.
+ */
+final class CoordinationDelta {
+    private final long fromVersion;
+    private final AnalyserSnapshot snapshot;
+    private final boolean fullRefresh;
+    private final List<Channel> channelsChanged;
+    private final List<Channel> channelsRemoved;
+    private final List<Conflict> conflictsAdded;
+    private final List<Conflict> conflictsRemoved;
+
+    CoordinationDelta(
+            final long fromVersion,
+            @NotNull final AnalyserSnapshot snapshot,
+            final boolean fullRefresh,
+            @NotNull final List<Channel> channelsChanged,
+            @NotNull final List<Channel> channelsRemoved,
+            @NotNull final List<Conflict> conflictsAdded,
+            @NotNull final List<Conflict> conflictsRemoved
+    ) {
+        this.fromVersion = fromVersion;
+        this.snapshot = snapshot;
+        this.fullRefresh = fullRefresh;
+        this.channelsChanged = Collections.unmodifiableList(channelsChanged);
+        this.channelsRemoved = Collections.unmodifiableList(channelsRemoved);
+        this.conflictsAdded = Collections.unmodifiableList(conflictsAdded);
+        this.conflictsRemoved = Collections.unmodifiableList(conflictsRemoved);
+    }
+
+    final long getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Method to get the version the delta leads to, which the client should
+     * pass to its next query.
+     *
+     * @return snapshot version
+     */
+    final long getToVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Method to check whether the client must reload the whole coordination
+     * from the snapshot because the changes are no longer journalled.
+     *
+     * @return true if the delta lists are not complete
+     */
+    final boolean isFullRefresh() {
+        return fullRefresh;
+    }
+
+    final AnalyserSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Method to get the channels added or changed since the version,
+     * including channels whose conflicts changed, in channel list order.
+     *
+     * @return list of channels
+     */
+    final List<Channel> getChannelsChanged() {
+        return channelsChanged;
+    }
+
+    final List<Channel> getChannelsRemoved() {
+        return channelsRemoved;
+    }
+
+    final List<Conflict> getConflictsAdded() {
+        return conflictsAdded;
+    }
+
+    final List<Conflict> getConflictsRemoved() {
+        return conflictsRemoved;
+    }
+
+    /**
+     * Method to get the aggregate counts at the version the delta leads to.
+     *
+     * @return coordination statistics
+     */
+    final CoordinationStatistics getStatistics() {
+        return snapshot.getStatistics();
+    }
+}
@@ -0,0 +1,299 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The CoordinationEditQueue class accepts edits to a coordination from any
+ * thread and applies them on a single writer thread. Edits waiting to be
+ * applied are batched so the analysis publishes one snapshot per batch, and
+ * consecutive frequency updates to the same channel are coalesced so only
+ * the final frequency is analysed.
+ */
+final class CoordinationEditQueue implements AutoCloseable {
+    private final Coordination coordination;
+    private final Executor writer;
+    private final boolean ownsWriter;
+
+    // Edits waiting for the writer, guarded by the list
+    private final List<Edit> pendingEdits = new ArrayList<>();
+    private boolean drainScheduled = false;
+    private boolean closed = false;
+
+    private enum EditType { ADD, REMOVE, FREQUENCY, NAME, EQUIPMENT }
+
+    private static final class Edit {
+        private final EditType type;
+        private final int id;
+        private double frequency;
+        private final String name;
+        private final Equipment equipment;
+        private final CompletableFuture<AnalyserSnapshot> result = new CompletableFuture<>();
+        private Exception exception;
+        private int addedId = -1;
+
+        private Edit(
+                @NotNull final EditType type,
+                final int id,
+                final double frequency,
+                final String name,
+                final Equipment equipment
+        ) {
+            this.type = type;
+            this.id = id;
+            this.frequency = frequency;
+            this.name = name;
+            this.equipment = equipment;
+        }
+
+        private boolean affectsChannel(final int id) {
+            return type != EditType.ADD && this.id == id;
+        }
+    }
+
+    /**
+     * The AddedChannel class is the result of a queued channel addition,
+     * holding the ID assigned to the new channel and the snapshot that
+     * includes it.
+     */
+    static final class AddedChannel {
+        private final int id;
+        private final AnalyserSnapshot snapshot;
+
+        private AddedChannel(final int id, @NotNull final AnalyserSnapshot snapshot) {
+            this.id = id;
+            this.snapshot = snapshot;
+        }
+
+        final int getId() {
+            return id;
+        }
+
+        final AnalyserSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    CoordinationEditQueue(@NotNull final Coordination coordination) {
+        this(coordination, Executors.newSingleThreadExecutor((Runnable runnable) -> {
+            final Thread thread = new Thread(runnable, "coordination-writer");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Create an edit queue that applies edits using the given executor. The
+     * executor must run tasks one at a time in submission order.
+     *
+     * @param coordination coordination to edit
+     * @param writer single threaded executor
+     */
+    CoordinationEditQueue(@NotNull final Coordination coordination, @NotNull final Executor writer) {
+        this(coordination, writer, false);
+    }
+
+    private CoordinationEditQueue(
+            @NotNull final Coordination coordination,
+            @NotNull final Executor writer,
+            final boolean ownsWriter
+    ) {
+        if (coordination == null || writer == null) {
+            throw new IllegalArgumentException();
+        }
+        this.coordination = coordination;
+        this.writer = writer;
+        this.ownsWriter = ownsWriter;
+    }
+
+    /**
+     * Queue a new channel.
+     *
+     * @param frequency new channel frequency in MHz
+     * @param equipment equipment type
+     * @return future completed with the ID of the new channel and the
+     * snapshot that includes it
+     */
+    final CompletableFuture<AddedChannel> addChannel(
+            final double frequency,
+            @NotNull final Equipment equipment
+    ) {
+        if (equipment == null) {
+            throw new IllegalArgumentException("A valid equipment profile must be supplied");
+        }
+        final Edit edit = new Edit(EditType.ADD, -1, frequency, null, equipment);
+        return submit(edit).thenApply((final AnalyserSnapshot snapshot) -> new AddedChannel(edit.addedId, snapshot));
+    }
+
+    /**
+     * Queue removal of a channel.
+     *
+     * @param id ID of channel to remove
+     * @return future completed with the snapshot that includes the edit
+     */
+    final CompletableFuture<AnalyserSnapshot> removeChannel(final int id) {
+        return submit(new Edit(EditType.REMOVE, id, 0, null, null));
+    }
+
+    /**
+     * Queue a channel frequency update. If the previous queued edit to the
+     * channel is also a frequency update that has not yet been applied, it
+     * is replaced by this one and both callers receive the same result.
+     *
+     * @param id ID of channel to update
+     * @param frequency new channel frequency in MHz
+     * @return future completed with the snapshot that includes the edit
+     */
+    final CompletableFuture<AnalyserSnapshot> updateChannel(final int id, final double frequency) {
+        synchronized (pendingEdits) {
+            for (int i = pendingEdits.size() - 1; i >= 0; i--) {
+                final Edit edit = pendingEdits.get(i);
+                if (edit.affectsChannel(id)) {
+                    if (edit.type == EditType.FREQUENCY) {
+                        edit.frequency = frequency;
+                        return edit.result;
+                    }
+                    break;
+                }
+            }
+            return submit(new Edit(EditType.FREQUENCY, id, frequency, null, null));
+        }
+    }
+
+    /**
+     * Queue a channel name update.
+     *
+     * @param id ID of channel to update
+     * @param name new channel name
+     * @return future completed with the snapshot that includes the edit
+     */
+    final CompletableFuture<AnalyserSnapshot> updateChannel(final int id, @NotNull final String name) {
+        return submit(new Edit(EditType.NAME, id, 0, name, null));
+    }
+
+    /**
+     * Queue a channel equipment update.
+     *
+     * @param id ID of channel to update
+     * @param equipment new channel equipment type
+     * @return future completed with the snapshot that includes the edit
+     */
+    final CompletableFuture<AnalyserSnapshot> updateChannel(final int id, @NotNull final Equipment equipment) {
+        if (equipment == null) {
+            throw new IllegalArgumentException("A valid equipment profile must be supplied");
+        }
+        return submit(new Edit(EditType.EQUIPMENT, id, 0, null, equipment));
+    }
+
+    /**
+     * Get a future that completes once every edit queued so far has been
+     * applied.
+     *
+     * @return future completed with the resulting snapshot
+     */
+    final CompletableFuture<AnalyserSnapshot> flush() {
+        final CompletableFuture<AnalyserSnapshot> result = new CompletableFuture<>();
+        synchronized (pendingEdits) {
+            writer.execute(() -> result.complete(coordination.getSnapshot()));
+        }
+        return result;
+    }
+
+    private CompletableFuture<AnalyserSnapshot> submit(@NotNull final Edit edit) {
+        synchronized (pendingEdits) {
+            if (closed) {
+                throw new IllegalStateException("Edit queue is closed");
+            }
+            pendingEdits.add(edit);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                writer.execute(this::drain);
+            }
+            return edit.result;
+        }
+    }
+
+    /**
+     * Apply all pending edits as a single batch on the writer thread.
+     */
+    private void drain() {
+        final List<Edit> batch;
+        synchronized (pendingEdits) {
+            batch = new ArrayList<>(pendingEdits);
+            pendingEdits.clear();
+            drainScheduled = false;
+        }
+
+        coordination.startBatch();
+        try {
+            for (Edit edit : batch) {
+                try {
+                    apply(edit);
+                } catch (InvalidFrequencyException | RuntimeException e) {
+                    edit.exception = e;
+                }
+            }
+        } finally {
+            coordination.endBatch();
+        }
+
+        final AnalyserSnapshot snapshot = coordination.getSnapshot();
+        for (Edit edit : batch) {
+            if (edit.exception != null) {
+                edit.result.completeExceptionally(edit.exception);
+            } else {
+                edit.result.complete(snapshot);
+            }
+        }
+    }
+
+    private void apply(@NotNull final Edit edit) throws InvalidFrequencyException {
+        switch (edit.type) {
+            case ADD:
+                edit.addedId = coordination.addChannel(edit.frequency, edit.equipment);
+                break;
+
+            case REMOVE:
+                coordination.removeChannel(edit.id);
+                break;
+
+            case FREQUENCY:
+                coordination.updateChannel(edit.id, edit.frequency);
+                break;
+
+            case NAME:
+                coordination.updateChannel(edit.id, edit.name);
+                break;
+
+            case EQUIPMENT:
+                coordination.updateChannel(edit.id, edit.equipment);
+                break;
+        }
+    }
+
+    /**
+     * Stop accepting edits and wait for queued edits to be applied if the
+     * queue owns its writer thread.
+     */
+    @Override
+    public void close() {
+        synchronized (pendingEdits) {
+            closed = true;
+        }
+        if (ownsWriter) {
+            final ExecutorService executorService = (ExecutorService) writer;
+            executorService.shutdown();
+            try {
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
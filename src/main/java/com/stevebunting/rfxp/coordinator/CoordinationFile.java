@@ -0,0 +1,360 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CoordinationFile class saves the whole analysis state of a coordination
+ * in a compact binary file and opens it again without recalculating any
+ * intermods or conflicts. The file holds tables of equipment, channels,
+ * intermods in sorted order and conflicts, with records referring to
+ * channels and equipment by table index. Files are written sequentially and
+ * read through a memory-mapped buffer.
+ */
+final class CoordinationFile {
+    private static final int MAGIC = 0x52465853;
+    private static final int FORMAT_VERSION = 2;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private static final int INTERMOD_RECORD_SIZE = 17;
+    private static final Intermod.Type[] INTERMOD_TYPES = Intermod.Type.values();
+    private static final int CONFLICT_RECORD_SIZE = 5 + INTERMOD_RECORD_SIZE;
+
+    private CoordinationFile() {
+    }
+
+    /**
+     * Method to save the latest snapshot of a coordination. May be called
+     * while the coordination is being edited on another thread.
+     *
+     * @param path file to write
+     * @param coordination coordination to save
+     * @throws IOException if the file cannot be written
+     */
+    static void write(@NotNull final Path path, @NotNull final Coordination coordination) throws IOException {
+        if (path == null || coordination == null) {
+            throw new IllegalArgumentException();
+        }
+        final AnalyserSnapshot snapshot = coordination.getSnapshot();
+        final List<Channel> channels = snapshot.getChannelList();
+        final List<Intermod> intermods = snapshot.getIntermodList();
+        final List<Conflict> conflicts = snapshot.getConflictList();
+
+        try (FileChannel file = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final Writer out = new Writer(file);
+            out.ensure(13);
+            out.buffer.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(snapshot.getIdCounter());
+            out.buffer.put(getCalculationFlags(snapshot.getCalculations()));
+
+            // Equipment table
+            final Map<Equipment, Integer> equipmentRefs = new IdentityHashMap<>();
+            final List<Equipment> equipment = new ArrayList<>();
+            for (int i = 0; i < channels.size(); i++) {
+                final Equipment channelEquipment = snapshot.getChannelEquipment(i);
+                if (!equipmentRefs.containsKey(channelEquipment)) {
+                    equipmentRefs.put(channelEquipment, equipment.size());
+                    equipment.add(channelEquipment);
+                }
+            }
+            out.putInt(equipment.size());
+            for (Equipment item : equipment) {
+                writeEquipment(out, item);
+            }
+
+            // Channel table, with settings as they were in the snapshot
+            final Map<Channel, Integer> channelRefs = new IdentityHashMap<>();
+            out.putInt(channels.size());
+            for (int i = 0; i < channels.size(); i++) {
+                final Channel channel = channels.get(i);
+                final String name = snapshot.getChannelName(i);
+                channelRefs.put(channel, i);
+                out.putInt(channel.getId());
+                out.putInt(snapshot.getChannelFrequency(i));
+                out.putString(name != null ? name : "");
+                out.putInt(equipmentRefs.get(snapshot.getChannelEquipment(i)));
+                out.putInt(getRangeIndex(snapshot.getChannelEquipment(i), snapshot.getChannelRange(i)));
+            }
+
+            // Intermod table
+            out.putInt(intermods.size());
+            for (Intermod intermod : intermods) {
+                out.ensure(INTERMOD_RECORD_SIZE);
+                putIntermod(out.buffer, intermod, channelRefs);
+            }
+
+            // Conflict table, intermods are written out again as a store
+            // need not keep the same intermod objects that conflicts refer to
+            out.putInt(conflicts.size());
+            for (Conflict conflict : conflicts) {
+                out.ensure(CONFLICT_RECORD_SIZE);
+                out.buffer.put((byte) conflict.getType().ordinal());
+                out.buffer.putInt(channelRefs.get(conflict.getChannel()));
+                switch (conflict.getType()) {
+                    case CHANNEL_SPACING:
+                        out.buffer.putInt(channelRefs.get(conflict.getConflictChannel()));
+                        break;
+
+                    case INTERMOD_SPACING:
+                        putIntermod(out.buffer, conflict.getConflictIntermod(), channelRefs);
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+            out.flush();
+        }
+    }
+
+    static Coordination read(@NotNull final Path path) throws IOException {
+        return read(path, IntermodStore.Storage.HEAP);
+    }
+
+    /**
+     * Method to open a saved coordination. Intermods and conflicts are read
+     * from the file in their saved order rather than being recalculated.
+     *
+     * @param path file to read
+     * @param storage intermod storage of the opened coordination
+     * @return coordination
+     * @throws IOException if the file cannot be read or is not a coordination file
+     */
+    static Coordination read(
+            @NotNull final Path path,
+            @NotNull final IntermodStore.Storage storage
+    ) throws IOException {
+        if (path == null || storage == null) {
+            throw new IllegalArgumentException();
+        }
+        try (FileChannel file = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer in = file.map(FileChannel.MapMode.READ_ONLY, 0, file.size());
+            return read(in, new Coordination(storage));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("Coordination file is incomplete: " + path, e);
+        }
+    }
+
+    private static Coordination read(
+            @NotNull final ByteBuffer in,
+            @NotNull final Coordination coordination
+    ) throws IOException {
+        if (in.remaining() < 8 || in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+            throw new IOException("Not a coordination file");
+        }
+        final int idCounter = in.getInt();
+        final byte calculationFlags = in.get();
+        coordination.setCalculate2t3o((calculationFlags & 1) != 0);
+        coordination.setCalculate2t5o((calculationFlags & 2) != 0);
+        coordination.setCalculate2t7o((calculationFlags & 4) != 0);
+        coordination.setCalculate2t9o((calculationFlags & 8) != 0);
+        coordination.setCalculate3t3o((calculationFlags & 16) != 0);
+
+        final Equipment[] equipment = new Equipment[in.getInt()];
+        for (int i = 0; i < equipment.length; i++) {
+            equipment[i] = readEquipment(in);
+        }
+
+        final List<Channel> channels = new ArrayList<>();
+        final int numChannels = in.getInt();
+        for (int i = 0; i < numChannels; i++) {
+            final int id = in.getInt();
+            final int frequency = in.getInt();
+            final String name = getString(in);
+            final Equipment channelEquipment = equipment[in.getInt()];
+            final int rangeIndex = in.getInt();
+            try {
+                final Channel channel = new Channel(id, Channel.khzToMhz(frequency), name, channelEquipment);
+                channel.setFreqAndEquipment(frequency, channelEquipment,
+                        rangeIndex >= 0 ? channelEquipment.getRanges()[rangeIndex] : null);
+                channels.add(channel);
+            } catch (InvalidFrequencyException e) {
+                throw new IOException("Invalid channel in coordination file", e);
+            }
+        }
+
+        // Intermods were saved in sorted order so are added without sorting
+        final int numIntermods = in.getInt();
+        final IntermodStore intermodStore = coordination.getAnalyser().getIntermodStore().newStore();
+        for (int i = 0; i < numIntermods; i++) {
+            intermodStore.add(getIntermod(in, channels));
+        }
+
+        final List<Conflict> conflicts = new ArrayList<>();
+        final int numConflicts = in.getInt();
+        final Conflict.Type[] conflictTypes = Conflict.Type.values();
+        for (int i = 0; i < numConflicts; i++) {
+            final Conflict.Type type = conflictTypes[in.get()];
+            final Channel channel = channels.get(in.getInt());
+            switch (type) {
+                case CHANNEL_SPACING:
+                    conflicts.add(new Conflict(channel, channels.get(in.getInt())));
+                    break;
+
+                case INTERMOD_SPACING:
+                    conflicts.add(new Conflict(channel, getIntermod(in, channels)));
+                    break;
+
+                default:
+                    conflicts.add(new Conflict(channel));
+                    break;
+            }
+        }
+
+        coordination.restore(channels, intermodStore, conflicts);
+        coordination.setIdCounter(Math.max(idCounter, coordination.getIdCounter()));
+        return coordination;
+    }
+
+    private static void putIntermod(
+            @NotNull final ByteBuffer out,
+            @NotNull final Intermod intermod,
+            @NotNull final Map<Channel, Integer> channelRefs
+    ) {
+        out.put((byte) intermod.getType().ordinal());
+        out.putInt(intermod.getFreq());
+        out.putInt(channelRefs.get(intermod.getF1()));
+        out.putInt(channelRefs.get(intermod.getF2()));
+        out.putInt(intermod.getF3() != null ? channelRefs.get(intermod.getF3()) : -1);
+    }
+
+    private static Intermod getIntermod(
+            @NotNull final ByteBuffer in,
+            @NotNull final List<Channel> channels
+    ) {
+        final Intermod.Type type = INTERMOD_TYPES[in.get()];
+        final int frequency = in.getInt();
+        final Channel f1 = channels.get(in.getInt());
+        final Channel f2 = channels.get(in.getInt());
+        final int f3 = in.getInt();
+        return new Intermod(type, f1, f2, f3 >= 0 ? channels.get(f3) : null, frequency);
+    }
+
+    private static byte getCalculationFlags(@NotNull final AnalyserCalculations calculations) {
+        return (byte) ((calculations.getIM2t3o() ? 1 : 0)
+                | (calculations.getIM2t5o() ? 2 : 0)
+                | (calculations.getIM2t7o() ? 4 : 0)
+                | (calculations.getIM2t9o() ? 8 : 0)
+                | (calculations.getIM3t3o() ? 16 : 0));
+    }
+
+    private static int getRangeIndex(@NotNull final Equipment equipment, final Range range) {
+        final Range[] ranges = equipment.getRanges();
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i] == range) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void writeEquipment(@NotNull final Writer out, @NotNull final Equipment equipment)
+            throws IOException {
+        out.putString(equipment.getManufacturer());
+        out.putString(equipment.getModel());
+        out.putInt(equipment.getTuningAccuracy());
+        out.putInt(equipment.getChannelSpacing());
+        for (Intermod.Type type : Intermod.Type.values()) {
+            out.putInt(equipment.getSpacing(type));
+        }
+        out.putInt(equipment.getFrontEndFilterType().ordinal());
+        out.putInt(equipment.getFrontEndFilter());
+        out.putInt(equipment.getRanges().length);
+        for (Range range : equipment.getRanges()) {
+            out.putInt(range.getLo());
+            out.putInt(range.getHi());
+            out.putString(range.getName());
+        }
+    }
+
+    private static Equipment readEquipment(@NotNull final ByteBuffer in) {
+        final String manufacturer = getString(in);
+        final String model = getString(in);
+        final int tuningAccuracy = in.getInt();
+        final int spacingChannel = in.getInt();
+        final int[] spacings = new int[Intermod.Type.values().length];
+        for (int i = 0; i < spacings.length; i++) {
+            spacings[i] = in.getInt();
+        }
+        final Equipment.FrontEndType frontEndType = Equipment.FrontEndType.values()[in.getInt()];
+        final int frontEndFilter = in.getInt();
+        final Range[] ranges = new Range[in.getInt()];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new Range(in.getInt(), in.getInt(), getString(in));
+        }
+        return new Equipment(manufacturer, model, tuningAccuracy, spacingChannel,
+                spacings[Intermod.Type.IM_2T3O.ordinal()],
+                spacings[Intermod.Type.IM_2T5O.ordinal()],
+                spacings[Intermod.Type.IM_2T7O.ordinal()],
+                spacings[Intermod.Type.IM_2T9O.ordinal()],
+                spacings[Intermod.Type.IM_3T3O.ordinal()],
+                frontEndType, frontEndFilter, ranges);
+    }
+
+    private static String getString(@NotNull final ByteBuffer in) {
+        final byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Buffered sequential writer for a file channel.
+     */
+    private static final class Writer {
+        private final FileChannel file;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+
+        private Writer(@NotNull final FileChannel file) {
+            this.file = file;
+        }
+
+        /**
+         * Method to make room in the buffer, writing out its contents if
+         * needed.
+         *
+         * @param numBytes number of bytes about to be put
+         * @throws IOException if the buffer cannot be written
+         */
+        private void ensure(final int numBytes) throws IOException {
+            if (buffer.remaining() < numBytes) {
+                flush();
+            }
+        }
+
+        private void putInt(final int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void putString(@NotNull final String value) throws IOException {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                final int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,572 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The CoordinationLog class is a write-ahead binary log of the edits made
+ * to a coordination, so the coordination can be recovered after a crash.
+ * Each edit is written and forced to the storage device before it is
+ * applied. The records of a batch of edits are buffered and written
+ * together when the batch ends, before its result is published.
+ *
+ * The log starts with a checkpoint of the whole coordination, including
+ * where its intermods are stored, and a new checkpoint is written after a
+ * number of edits, replacing the file, so recovery never replays more than
+ * that number of records.
+ *
+ * Each record is framed by its length and a checksum. Recovery stops at the
+ * first incomplete or damaged record, which can only be the last one written
+ * before a crash.
+ */
+final class CoordinationLog implements Closeable {
+    static final int DEFAULT_CHECKPOINT_INTERVAL = 1000;
+
+    private static final int MAGIC = 0x52465857;
+    private static final int FORMAT_VERSION = 2;
+
+    // Record types
+    private static final byte EQUIPMENT = 1;
+    private static final byte CHECKPOINT = 2;
+    private static final byte CHANNEL = 3;
+    private static final byte REMOVE_CHANNEL = 4;
+    private static final byte CALCULATIONS = 5;
+
+    private final Path path;
+    private final Coordination coordination;
+    private final int checkpointInterval;
+    private FileChannel file;
+
+    // Equipment written to the current file, referenced by index in records
+    private final Map<Equipment, Integer> equipmentRefs = new IdentityHashMap<>();
+    private int numRecordsSinceCheckpoint = 0;
+
+    // Records not yet written to the file, held until the end of a batch
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private int numPendingRecords = 0;
+    private boolean inBatch = false;
+
+    private CoordinationLog(
+            @NotNull final Path path,
+            @NotNull final Coordination coordination,
+            final int checkpointInterval
+    ) {
+        if (path == null || coordination == null || checkpointInterval < 1) {
+            throw new IllegalArgumentException();
+        }
+        this.path = path;
+        this.coordination = coordination;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    /**
+     * Method to start logging a coordination, replacing any existing log at
+     * the path with a checkpoint of the coordination as it is now.
+     *
+     * @param path log file
+     * @param coordination coordination to log
+     * @param checkpointInterval number of records after which a new checkpoint is written
+     * @return log attached to the coordination
+     * @throws IOException if the log cannot be written
+     */
+    static CoordinationLog create(
+            @NotNull final Path path,
+            @NotNull final Coordination coordination,
+            final int checkpointInterval
+    ) throws IOException {
+        final CoordinationLog log = new CoordinationLog(path, coordination, checkpointInterval);
+        log.writeCheckpoint();
+        coordination.setLog(log);
+        return log;
+    }
+
+    static CoordinationLog create(
+            @NotNull final Path path,
+            @NotNull final Coordination coordination
+    ) throws IOException {
+        return create(path, coordination, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Method to recover a coordination from a log. The records are replayed
+     * onto plain channel settings and the channels are then analysed in a
+     * single batch, keeping intermods in the same storage as the logged
+     * coordination. The recovered coordination continues logging to the same
+     * path, starting from a fresh checkpoint.
+     *
+     * @param path log file
+     * @param checkpointInterval number of records after which a new checkpoint is written
+     * @return recovered coordination
+     * @throws IOException if the log cannot be read or is not a coordination log
+     */
+    static Coordination recover(@NotNull final Path path, final int checkpointInterval) throws IOException {
+        final LogState state = new LogState();
+        final ByteBuffer buffer = RecordFile.read(path, MAGIC, FORMAT_VERSION, "coordination log");
+        byte[] record;
+        while ((record = RecordFile.readRecord(buffer)) != null) {
+            state.replay(record);
+        }
+
+        final Coordination coordination = new Coordination(state.storage);
+        state.applyTo(coordination);
+        create(path, coordination, checkpointInterval);
+        return coordination;
+    }
+
+    static Coordination recover(@NotNull final Path path) throws IOException {
+        return recover(path, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Method to record a channel that is about to be added or updated.
+     *
+     * @param channel channel with its new settings
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    final void channelChanged(@NotNull final Channel channel) {
+        try {
+            checkpointIfDue();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            final int equipmentRef = getEquipmentRef(channel.getEquipment());
+            out.writeByte(CHANNEL);
+            writeChannel(out, channel, equipmentRef);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to record a channel that is about to be removed.
+     *
+     * @param channel channel to remove
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    final void channelRemoved(@NotNull final Channel channel) {
+        try {
+            checkpointIfDue();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(REMOVE_CHANNEL);
+            out.writeInt(channel.getId());
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to record a change that is about to be made to the intermod
+     * calculation settings.
+     *
+     * @param calculations new calculation settings
+     * @throws UncheckedIOException if the record cannot be written
+     */
+    final void calculationsChanged(@NotNull final AnalyserCalculations calculations) {
+        try {
+            checkpointIfDue();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(CALCULATIONS);
+            writeCalculations(out, calculations);
+            append(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to replace the log with a checkpoint of the coordination as it
+     * is now.
+     *
+     * @throws UncheckedIOException if the checkpoint cannot be written
+     */
+    final void checkpoint() {
+        try {
+            writeCheckpoint();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to start holding records back until the end of a batch of
+     * edits.
+     */
+    final void startBatch() {
+        inBatch = true;
+    }
+
+    /**
+     * Method to write the records held back during a batch of edits in one
+     * go and force them to the storage device. A checkpoint is written
+     * instead if one is due. This must be called before the result of the
+     * batch is published.
+     *
+     * @throws UncheckedIOException if the records cannot be written
+     */
+    final void endBatch() {
+        inBatch = false;
+        try {
+            if (numRecordsSinceCheckpoint + numPendingRecords >= checkpointInterval) {
+                writeCheckpoint();
+            } else {
+                flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Method to force every record written so far to the storage device.
+     *
+     * @throws IOException if the log cannot be synced
+     */
+    final void sync() throws IOException {
+        file.force(false);
+    }
+
+    /**
+     * Method to stop logging and close the file.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public final void close() throws IOException {
+        if (coordination.getLog() == this) {
+            coordination.setLog(null);
+        }
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+
+    private void append(@NotNull final byte[] record) throws IOException {
+        RecordFile.writeRecord(pending, record);
+        numPendingRecords++;
+        if (!inBatch) {
+            flush();
+        }
+    }
+
+    /**
+     * Method to write a checkpoint if enough records have been written since
+     * the last one. It is only called before an edit is recorded, when the
+     * coordination holds every edit logged so far and nothing more.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void checkpointIfDue() throws IOException {
+        if (!inBatch && numRecordsSinceCheckpoint >= checkpointInterval) {
+            writeCheckpoint();
+        }
+    }
+
+    /**
+     * Method to write the held back records with a single write and force
+     * them to the storage device. The records are dropped if they cannot be
+     * written, as their edits will not be applied.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    private void flush() throws IOException {
+        if (pending.size() == 0) {
+            return;
+        }
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(pending.toByteArray());
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            file.force(false);
+            numRecordsSinceCheckpoint += numPendingRecords;
+        } finally {
+            pending.reset();
+            numPendingRecords = 0;
+        }
+    }
+
+    /**
+     * Method to write a new log file holding only a checkpoint and move it
+     * over the old one, so a crash while checkpointing leaves the old log
+     * intact.
+     *
+     * @throws IOException if the checkpoint cannot be written
+     */
+    private void writeCheckpoint() throws IOException {
+        final Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+        equipmentRefs.clear();
+        pending.reset();
+        numPendingRecords = 0;
+        try (FileChannel out = FileChannel.open(tempPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RecordFile.writeHeader(out, MAGIC, FORMAT_VERSION);
+
+            final ByteArrayOutputStream records = new ByteArrayOutputStream();
+            final Channel[] channels = coordination.getChannels();
+            final int[] channelEquipmentRefs = new int[channels.length];
+            for (int i = 0; i < channels.length; i++) {
+                channelEquipmentRefs[i] = getEquipmentRef(records, channels[i].getEquipment());
+            }
+
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final DataOutputStream data = new DataOutputStream(bytes);
+            data.writeByte(CHECKPOINT);
+            data.writeInt(coordination.getIdCounter());
+            data.writeByte(coordination.getAnalyser().getIntermodStorage().ordinal());
+            writeCalculations(data, coordination.getAnalyser().getCalculations());
+            data.writeInt(channels.length);
+            for (int i = 0; i < channels.length; i++) {
+                writeChannel(data, channels[i], channelEquipmentRefs[i]);
+            }
+            RecordFile.writeRecord(records, bytes.toByteArray());
+
+            final ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+            out.force(false);
+        }
+
+        if (file != null) {
+            file.close();
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        file = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        numRecordsSinceCheckpoint = 0;
+    }
+
+    private int getEquipmentRef(@NotNull final Equipment equipment) throws IOException {
+        return getEquipmentRef(pending, equipment);
+    }
+
+    /**
+     * Method to get the reference of an equipment profile, writing its
+     * definition the first time it is used.
+     *
+     * @param out records to add the definition to
+     * @param equipment equipment profile
+     * @return equipment reference
+     * @throws IOException if the definition cannot be written
+     */
+    private int getEquipmentRef(
+            @NotNull final ByteArrayOutputStream out,
+            @NotNull final Equipment equipment
+    ) throws IOException {
+        final Integer existingRef = equipmentRefs.get(equipment);
+        if (existingRef != null) {
+            return existingRef;
+        }
+        final int ref = equipmentRefs.size();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream data = new DataOutputStream(bytes);
+        data.writeByte(EQUIPMENT);
+        data.writeInt(ref);
+        writeEquipment(data, equipment);
+        RecordFile.writeRecord(out, bytes.toByteArray());
+        equipmentRefs.put(equipment, ref);
+        return ref;
+    }
+
+    private static void writeEquipment(
+            @NotNull final DataOutputStream out,
+            @NotNull final Equipment equipment
+    ) throws IOException {
+        out.writeUTF(equipment.getManufacturer());
+        out.writeUTF(equipment.getModel());
+        out.writeInt(equipment.getTuningAccuracy());
+        out.writeInt(equipment.getChannelSpacing());
+        out.writeInt(equipment.getSpacing(Intermod.Type.IM_2T3O));
+        out.writeInt(equipment.getSpacing(Intermod.Type.IM_2T5O));
+        out.writeInt(equipment.getSpacing(Intermod.Type.IM_2T7O));
+        out.writeInt(equipment.getSpacing(Intermod.Type.IM_2T9O));
+        out.writeInt(equipment.getSpacing(Intermod.Type.IM_3T3O));
+        out.writeByte(equipment.getFrontEndFilterType().ordinal());
+        out.writeInt(equipment.getFrontEndFilter());
+        out.writeInt(equipment.getRanges().length);
+        for (Range range : equipment.getRanges()) {
+            out.writeInt(range.getLo());
+            out.writeInt(range.getHi());
+            out.writeUTF(range.getName());
+        }
+    }
+
+    private static Equipment readEquipment(@NotNull final DataInputStream in) throws IOException {
+        final String manufacturer = in.readUTF();
+        final String model = in.readUTF();
+        final int tuningAccuracy = in.readInt();
+        final int spacingChannel = in.readInt();
+        final int spacing2t3o = in.readInt();
+        final int spacing2t5o = in.readInt();
+        final int spacing2t7o = in.readInt();
+        final int spacing2t9o = in.readInt();
+        final int spacing3t3o = in.readInt();
+        final Equipment.FrontEndType frontEndType = Equipment.FrontEndType.values()[in.readByte()];
+        final int frontEndFilter = in.readInt();
+        final Range[] ranges = new Range[in.readInt()];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = new Range(in.readInt(), in.readInt(), in.readUTF());
+        }
+        return new Equipment(manufacturer, model, tuningAccuracy, spacingChannel, spacing2t3o, spacing2t5o,
+                spacing2t7o, spacing2t9o, spacing3t3o, frontEndType, frontEndFilter, ranges);
+    }
+
+    private static void writeChannel(
+            @NotNull final DataOutputStream out,
+            @NotNull final Channel channel,
+            final int equipmentRef
+    ) throws IOException {
+        out.writeInt(channel.getId());
+        out.writeInt(channel.getFreq());
+        out.writeUTF(channel.getName() != null ? channel.getName() : "");
+        out.writeInt(equipmentRef);
+        int rangeIndex = -1;
+        final Range[] ranges = channel.getEquipment().getRanges();
+        for (int i = 0; i < ranges.length; i++) {
+            if (ranges[i] == channel.getRange()) {
+                rangeIndex = i;
+            }
+        }
+        out.writeInt(rangeIndex);
+    }
+
+    private static void writeCalculations(
+            @NotNull final DataOutputStream out,
+            @NotNull final AnalyserCalculations calculations
+    ) throws IOException {
+        out.writeBoolean(calculations.getIM2t3o());
+        out.writeBoolean(calculations.getIM2t5o());
+        out.writeBoolean(calculations.getIM2t7o());
+        out.writeBoolean(calculations.getIM2t9o());
+        out.writeBoolean(calculations.getIM3t3o());
+    }
+
+    /**
+     * Channel settings read from the log.
+     */
+    private static final class ChannelRecord {
+        private final int id;
+        private final int frequency;
+        private final String name;
+        private final Equipment equipment;
+        private final int rangeIndex;
+
+        private ChannelRecord(@NotNull final DataInputStream in, @NotNull final List<Equipment> equipment)
+                throws IOException {
+            this.id = in.readInt();
+            this.frequency = in.readInt();
+            this.name = in.readUTF();
+            this.equipment = equipment.get(in.readInt());
+            this.rangeIndex = in.readInt();
+        }
+
+        private Channel toChannel() throws InvalidFrequencyException {
+            final Channel channel = new Channel(id, Channel.khzToMhz(frequency), name, equipment);
+            final Range range = rangeIndex >= 0 ? equipment.getRanges()[rangeIndex] : null;
+            channel.setFreqAndEquipment(frequency, equipment, range);
+            return channel;
+        }
+    }
+
+    /**
+     * The state of a coordination as the log is replayed, without any
+     * analysis.
+     */
+    private static final class LogState {
+        private final List<Equipment> equipment = new ArrayList<>();
+        private final Map<Integer, ChannelRecord> channels = new LinkedHashMap<>();
+        private final boolean[] calculations = { true, true, true, true, true };
+        private int idCounter = 0;
+        private IntermodStore.Storage storage = IntermodStore.Storage.HEAP;
+
+        private void replay(@NotNull final byte[] record) throws IOException {
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+            switch (in.readByte()) {
+                case EQUIPMENT:
+                    final int ref = in.readInt();
+                    while (equipment.size() <= ref) {
+                        equipment.add(null);
+                    }
+                    equipment.set(ref, readEquipment(in));
+                    break;
+
+                case CHECKPOINT:
+                    channels.clear();
+                    idCounter = in.readInt();
+                    storage = IntermodStore.Storage.values()[in.readByte()];
+                    readCalculations(in);
+                    final int numChannels = in.readInt();
+                    for (int i = 0; i < numChannels; i++) {
+                        putChannel(new ChannelRecord(in, equipment));
+                    }
+                    break;
+
+                case CHANNEL:
+                    putChannel(new ChannelRecord(in, equipment));
+                    break;
+
+                case REMOVE_CHANNEL:
+                    channels.remove(in.readInt());
+                    break;
+
+                case CALCULATIONS:
+                    readCalculations(in);
+                    break;
+
+                default:
+                    throw new IOException("Unknown record in coordination log");
+            }
+        }
+
+        private void putChannel(@NotNull final ChannelRecord channel) {
+            channels.put(channel.id, channel);
+            idCounter = Math.max(idCounter, channel.id + 1);
+        }
+
+        private void readCalculations(@NotNull final DataInputStream in) throws IOException {
+            for (int i = 0; i < calculations.length; i++) {
+                calculations[i] = in.readBoolean();
+            }
+        }
+
+        private void applyTo(@NotNull final Coordination coordination) throws IOException {
+            coordination.setCalculate2t3o(calculations[0]);
+            coordination.setCalculate2t5o(calculations[1]);
+            coordination.setCalculate2t7o(calculations[2]);
+            coordination.setCalculate2t9o(calculations[3]);
+            coordination.setCalculate3t3o(calculations[4]);
+
+            final List<Channel> recoveredChannels = new ArrayList<>(channels.size());
+            for (ChannelRecord channel : channels.values()) {
+                try {
+                    recoveredChannels.add(channel.toChannel());
+                } catch (InvalidFrequencyException e) {
+                    throw new IOException("Invalid channel in coordination log", e);
+                }
+            }
+            coordination.addChannels(recoveredChannels);
+            coordination.setIdCounter(idCounter);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The CoordinationStatistics class keeps running totals for an analysis. The
+ * totals are updated as each channel or conflict is added or removed so
+ * every count can be read in constant time. Conflicts are attributed to the
+ * equipment and range the affected channel had when it was added.
+ */
+final class CoordinationStatistics {
+    private final int[] numConflictsOfType = new int[Conflict.Type.values().length];
+    private final int[] numIMConflictsOfType = new int[Intermod.Type.values().length];
+    private final int[] numChannelsOfValidity = new int[Channel.Validity.values().length];
+    private final Map<Equipment, int[]> numConflictsByEquipment = new HashMap<>();
+    private final Map<Range, int[]> numConflictsByRange = new HashMap<>();
+
+    // Details of each channel as it was counted
+    private static final class ChannelEntry {
+        private final Equipment equipment;
+        private final Range range;
+        private Channel.Validity validity;
+        private int numConflicts = 0;
+
+        private ChannelEntry(@NotNull final Channel channel) {
+            this.equipment = channel.getEquipment();
+            this.range = channel.getRange();
+            this.validity = channel.getValidity();
+        }
+    }
+    private final Map<Channel, ChannelEntry> channelEntries = new IdentityHashMap<>();
+
+    // Channels with at least one conflict, grouped by number of conflicts
+    private final List<Set<Channel>> channelsByNumConflicts = new ArrayList<>();
+    private int maxNumConflicts = 0;
+
+    /**
+     * Method to create an independent copy of the statistics.
+     *
+     * @return copy of statistics
+     */
+    final CoordinationStatistics copy() {
+        final CoordinationStatistics copy = new CoordinationStatistics();
+        System.arraycopy(numConflictsOfType, 0, copy.numConflictsOfType, 0, numConflictsOfType.length);
+        System.arraycopy(numIMConflictsOfType, 0, copy.numIMConflictsOfType, 0, numIMConflictsOfType.length);
+        System.arraycopy(numChannelsOfValidity, 0, copy.numChannelsOfValidity, 0, numChannelsOfValidity.length);
+        for (Map.Entry<Equipment, int[]> entry : numConflictsByEquipment.entrySet()) {
+            copy.numConflictsByEquipment.put(entry.getKey(), new int[]{ entry.getValue()[0] });
+        }
+        for (Map.Entry<Range, int[]> entry : numConflictsByRange.entrySet()) {
+            copy.numConflictsByRange.put(entry.getKey(), new int[]{ entry.getValue()[0] });
+        }
+        for (int i = 1; i <= maxNumConflicts; i++) {
+            for (Channel channel : channelsByNumConflicts.get(i)) {
+                copy.getChannelsWithNumConflicts(i).add(channel);
+            }
+        }
+        copy.maxNumConflicts = maxNumConflicts;
+        return copy;
+    }
+
+    /**
+     * Method to count a channel added to the analysis.
+     *
+     * @param channel channel added
+     */
+    final void channelAdded(@NotNull final Channel channel) {
+        final ChannelEntry entry = new ChannelEntry(channel);
+        if (channelEntries.put(channel, entry) == null) {
+            numChannelsOfValidity[entry.validity.ordinal()]++;
+        }
+    }
+
+    /**
+     * Method to stop counting a channel removed from the analysis. Any
+     * conflicts affecting the channel should be removed first.
+     *
+     * @param channel channel removed
+     */
+    final void channelRemoved(@NotNull final Channel channel) {
+        final ChannelEntry entry = channelEntries.remove(channel);
+        if (entry != null) {
+            numChannelsOfValidity[entry.validity.ordinal()]--;
+            if (entry.numConflicts > 0) {
+                channelsByNumConflicts.get(entry.numConflicts).remove(channel);
+                updateMaxNumConflicts();
+            }
+        }
+    }
+
+    /**
+     * Method to count a conflict once it has been added to a channel.
+     *
+     * @param channel channel affected by the conflict
+     * @param conflict conflict added
+     */
+    final void conflictAdded(@NotNull final Channel channel, @NotNull final Conflict conflict) {
+        updateConflictCounts(channel, conflict, 1);
+    }
+
+    /**
+     * Method to stop counting a conflict once it has been removed from a
+     * channel.
+     *
+     * @param channel channel affected by the conflict
+     * @param conflict conflict removed
+     */
+    final void conflictRemoved(@NotNull final Channel channel, @NotNull final Conflict conflict) {
+        updateConflictCounts(channel, conflict, -1);
+    }
+
+    private void updateConflictCounts(
+            @NotNull final Channel channel,
+            @NotNull final Conflict conflict,
+            final int incrementor
+    ) {
+        numConflictsOfType[conflict.getType().ordinal()] += incrementor;
+        if (conflict.getType() == Conflict.Type.INTERMOD_SPACING) {
+            numIMConflictsOfType[conflict.getConflictIntermod().getType().ordinal()] += incrementor;
+        }
+
+        final ChannelEntry entry = channelEntries.get(channel);
+        if (entry == null) {
+            return;
+        }
+        numConflictsByEquipment.computeIfAbsent(entry.equipment, (Equipment key) -> new int[1])[0] += incrementor;
+        if (entry.range != null) {
+            numConflictsByRange.computeIfAbsent(entry.range, (Range key) -> new int[1])[0] += incrementor;
+        }
+
+        numChannelsOfValidity[entry.validity.ordinal()]--;
+        entry.validity = channel.getValidity();
+        numChannelsOfValidity[entry.validity.ordinal()]++;
+
+        if (entry.numConflicts > 0) {
+            channelsByNumConflicts.get(entry.numConflicts).remove(channel);
+        }
+        entry.numConflicts += incrementor;
+        if (entry.numConflicts > 0) {
+            getChannelsWithNumConflicts(entry.numConflicts).add(channel);
+        }
+        updateMaxNumConflicts();
+    }
+
+    private Set<Channel> getChannelsWithNumConflicts(final int numConflicts) {
+        while (channelsByNumConflicts.size() <= numConflicts) {
+            channelsByNumConflicts.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+        if (numConflicts > maxNumConflicts) {
+            maxNumConflicts = numConflicts;
+        }
+        return channelsByNumConflicts.get(numConflicts);
+    }
+
+    private void updateMaxNumConflicts() {
+        while (maxNumConflicts > 0 && channelsByNumConflicts.get(maxNumConflicts).isEmpty()) {
+            maxNumConflicts--;
+        }
+    }
+
+    final int getNumConflicts() {
+        int total = 0;
+        for (int count : numConflictsOfType) {
+            total += count;
+        }
+        return total;
+    }
+
+    final int getNumConflicts(@NotNull final Conflict.Type type) {
+        if (type == null) {
+            return 0;
+        }
+        return numConflictsOfType[type.ordinal()];
+    }
+
+    final int getNumIMConflicts() {
+        return numConflictsOfType[Conflict.Type.INTERMOD_SPACING.ordinal()];
+    }
+
+    final int getNumIMConflicts(@NotNull final Intermod.Type type) {
+        if (type == null) {
+            return 0;
+        }
+        return numIMConflictsOfType[type.ordinal()];
+    }
+
+    /**
+     * Method to get the number of intermod conflicts of a given order, for
+     * example order 3 counts both 2T3O and 3T3O conflicts.
+     *
+     * @param order intermod order
+     * @return number of conflicts
+     */
+    final int getNumIMConflictsOfOrder(final int order) {
+        int total = 0;
+        for (Intermod.Type type : Intermod.Type.values()) {
+            if (type.getOrder() == order) {
+                total += numIMConflictsOfType[type.ordinal()];
+            }
+        }
+        return total;
+    }
+
+    final int getNumConflicts(@NotNull final Equipment equipment) {
+        final int[] count = numConflictsByEquipment.get(equipment);
+        return count != null ? count[0] : 0;
+    }
+
+    final int getNumConflicts(@NotNull final Range range) {
+        final int[] count = numConflictsByRange.get(range);
+        return count != null ? count[0] : 0;
+    }
+
+    final int getNumChannels() {
+        return channelEntries.size();
+    }
+
+    final int getNumChannels(@NotNull final Channel.Validity validity) {
+        if (validity == null) {
+            return 0;
+        }
+        return numChannelsOfValidity[validity.ordinal()];
+    }
+
+    /**
+     * Method to get the channels affected by the most conflicts.
+     *
+     * @param limit maximum number of channels to return
+     * @return channels in descending order of number of conflicts
+     */
+    final List<Channel> getWorstAffectedChannels(final int limit) {
+        final List<Channel> worstAffected = new ArrayList<>();
+        for (int i = maxNumConflicts; i > 0 && worstAffected.size() < limit; i--) {
+            for (Channel channel : channelsByNumConflicts.get(i)) {
+                if (worstAffected.size() == limit) {
+                    break;
+                }
+                worstAffected.add(channel);
+            }
+        }
+        return worstAffected;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.jetbrains.annotations.NotNull;
 import java.util.Arrays;
+import java.util.Objects;
 
 public class Equipment {
 
@@ -103,6 +104,13 @@ public class Equipment {
                 && this.getFrontEndFilter() == that.getFrontEndFilter());
     }
 
+    // Hash consistent with equals
+    @Override
+    public int hashCode() {
+        return Objects.hash(manufacturer, model, tuningAccuracy, spacingChannel, spacing2t3o, spacing2t5o,
+                spacing2t7o, spacing2t9o, spacing3t3o, frontEndFilterType, frontEndFilter);
+    }
+
     // Print object
     @Override
     public String toString() {
@@ -0,0 +1,313 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The FrequencySetCache class keeps frequency sets found for earlier
+ * generations in an append-only file, so a generation that has been solved
+ * before does not need to be searched again.
+ *
+ * Sets are keyed by the equipment and range of the channels to generate
+ * frequencies for, the calculation settings and the equipment and frequency
+ * of every channel already in the analysis. Channels with the same equipment
+ * and range are interchangeable, so each set is held in a canonical order of
+ * the channels rather than the order they were passed in.
+ *
+ * Each record is framed by RecordFile in the same way as CoordinationLog,
+ * and loading stops at the first incomplete or damaged record. When the file
+ * holds records that have since been superseded it is rewritten with only the
+ * sets still kept when it is opened. A set read from the cache is only a
+ * candidate, it must still be checked against the analysis before it is used.
+ */
+final class FrequencySetCache implements Closeable {
+    static final int MAX_SETS_PER_KEY = 8;
+
+    private static final int MAGIC = 0x52465843;
+    private static final int FORMAT_VERSION = 1;
+
+    private final Path path;
+    private FileChannel file;
+
+    // Number of records in the file, including superseded ones
+    private int numRecords;
+
+    // Sets by key, most recently stored first
+    private final Map<String, List<int[]>> sets = new HashMap<>();
+
+    private FrequencySetCache(@NotNull final Path path) {
+        if (path == null) {
+            throw new IllegalArgumentException();
+        }
+        this.path = path;
+    }
+
+    /**
+     * Method to open a cache, loading the sets already stored at the path or
+     * starting a new file if there is none.
+     *
+     * @param path cache file
+     * @return open cache
+     * @throws IOException if the file cannot be read or written or is not a
+     * frequency set cache
+     */
+    static FrequencySetCache open(@NotNull final Path path) throws IOException {
+        final FrequencySetCache cache = new FrequencySetCache(path);
+        if (Files.exists(path) && Files.size(path) > 0) {
+            final long size = cache.load();
+            if (cache.numRecords > cache.size()) {
+                cache.compact();
+            } else {
+                // Drop any damaged record at the end so new records follow
+                // the last complete one
+                cache.file = FileChannel.open(path, StandardOpenOption.WRITE);
+                cache.file.truncate(size);
+                cache.file.position(size);
+            }
+        } else {
+            cache.file = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            RecordFile.writeHeader(cache.file, MAGIC, FORMAT_VERSION);
+            cache.file.force(false);
+        }
+        return cache;
+    }
+
+    /**
+     * Method to rewrite the file with only the sets held in memory, replacing
+     * the old file once the new one is complete, and open it for appending.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void compact() throws IOException {
+        final Path compactPath = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(compactPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RecordFile.writeHeader(out, MAGIC, FORMAT_VERSION);
+            for (Map.Entry<String, List<int[]>> entry : sets.entrySet()) {
+                // Oldest first, so loading the file again keeps the same order
+                final List<int[]> keySets = entry.getValue();
+                for (int i = keySets.size() - 1; i >= 0; i--) {
+                    RecordFile.writeRecord(out, toRecord(entry.getKey(), keySets.get(i)));
+                }
+            }
+            out.force(false);
+        }
+        Files.move(compactPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        numRecords = size();
+        file = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Method to load the sets stored in the file.
+     *
+     * @return length of the file up to the end of the last complete record
+     * @throws IOException if the file cannot be read or is not a frequency set cache
+     */
+    private long load() throws IOException {
+        final ByteBuffer buffer = RecordFile.read(path, MAGIC, FORMAT_VERSION, "frequency set cache");
+        long size = buffer.position();
+        byte[] record;
+        while ((record = RecordFile.readRecord(buffer)) != null) {
+            final DataInputStream data = new DataInputStream(new ByteArrayInputStream(record));
+            final String key = data.readUTF();
+            final int[] frequencies = new int[data.readInt()];
+            for (int i = 0; i < frequencies.length; i++) {
+                frequencies[i] = data.readInt();
+            }
+            addSet(key, frequencies);
+            numRecords++;
+            size = buffer.position();
+        }
+        return size;
+    }
+
+    /**
+     * Method to get the key of a generation.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @param fixedChannels channels already in the analysis
+     * @param calculations calculation settings of the analysis
+     * @return key of the generation
+     */
+    static String getKey(
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final List<Channel> fixedChannels,
+            @NotNull final AnalyserCalculations calculations
+    ) {
+        final List<String> channelsDescriptions = new ArrayList<>(channelsToUpdate.size());
+        for (Channel channel : channelsToUpdate) {
+            channelsDescriptions.add(describeSetting(channel));
+        }
+        Collections.sort(channelsDescriptions);
+
+        final List<String> fixedDescriptions = new ArrayList<>(fixedChannels.size());
+        for (Channel channel : fixedChannels) {
+            fixedDescriptions.add(describe(channel.getEquipment()) + '|' + channel.getFreq());
+        }
+        Collections.sort(fixedDescriptions);
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(String.format("%b|%b|%b|%b|%b\n",
+                calculations.getIM2t3o(),
+                calculations.getIM2t5o(),
+                calculations.getIM2t7o(),
+                calculations.getIM2t9o(),
+                calculations.getIM3t3o()).getBytes(StandardCharsets.UTF_8));
+        for (String description : channelsDescriptions) {
+            digest.update((description + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        for (String description : fixedDescriptions) {
+            digest.update((description + '\n').getBytes(StandardCharsets.UTF_8));
+        }
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    /**
+     * Method to get the canonical order of channels, the order the
+     * frequencies of a set are held in.
+     *
+     * @param channelsToUpdate channels to generate frequencies for
+     * @return index of each channel in the list, in canonical order
+     */
+    static int[] getOrder(@NotNull final List<Channel> channelsToUpdate) {
+        final String[] descriptions = new String[channelsToUpdate.size()];
+        final Integer[] order = new Integer[channelsToUpdate.size()];
+        for (int i = 0; i < order.length; i++) {
+            descriptions[i] = describeSetting(channelsToUpdate.get(i));
+            order[i] = i;
+        }
+        Arrays.sort(order, (final Integer a, final Integer b) -> descriptions[a].compareTo(descriptions[b]));
+
+        final int[] indexes = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            indexes[i] = order[i];
+        }
+        return indexes;
+    }
+
+    private static String describeSetting(@NotNull final Channel channel) {
+        final Range range = channel.getRange();
+        return describe(channel.getEquipment()) + '|' + range.getLo() + '|' + range.getHi();
+    }
+
+    private static String describe(@NotNull final Equipment equipment) {
+        return equipment.getManufacturer()
+                + '|' + equipment.getModel()
+                + '|' + equipment.getTuningAccuracy()
+                + '|' + equipment.getChannelSpacing()
+                + '|' + equipment.getSpacing(Intermod.Type.IM_2T3O)
+                + '|' + equipment.getSpacing(Intermod.Type.IM_2T5O)
+                + '|' + equipment.getSpacing(Intermod.Type.IM_2T7O)
+                + '|' + equipment.getSpacing(Intermod.Type.IM_2T9O)
+                + '|' + equipment.getSpacing(Intermod.Type.IM_3T3O)
+                + '|' + equipment.getFrontEndFilterType()
+                + '|' + equipment.getFrontEndFilter();
+    }
+
+    /**
+     * Method to get the sets stored for a key.
+     *
+     * @param key key of the generation
+     * @return sets in canonical order, most recently stored first
+     */
+    final List<int[]> get(@NotNull final String key) {
+        final List<int[]> keySets = sets.get(key);
+        return keySets != null ? Collections.unmodifiableList(keySets) : Collections.emptyList();
+    }
+
+    /**
+     * Method to store a set for a key, unless the same set is already
+     * stored. Only the most recent sets of a key are kept in memory.
+     *
+     * @param key key of the generation
+     * @param frequencies frequencies in canonical order
+     * @throws UncheckedIOException if the set cannot be written
+     */
+    final void put(@NotNull final String key, @NotNull final int[] frequencies) {
+        if (key == null || frequencies == null) {
+            throw new IllegalArgumentException();
+        }
+        for (int[] set : get(key)) {
+            if (Arrays.equals(set, frequencies)) {
+                return;
+            }
+        }
+        try {
+            RecordFile.writeRecord(file, toRecord(key, frequencies));
+            file.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        numRecords++;
+        addSet(key, frequencies.clone());
+    }
+
+    private static byte[] toRecord(@NotNull final String key, @NotNull final int[] frequencies) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(key);
+        out.writeInt(frequencies.length);
+        for (int frequency : frequencies) {
+            out.writeInt(frequency);
+        }
+        return bytes.toByteArray();
+    }
+
+    private void addSet(@NotNull final String key, @NotNull final int[] frequencies) {
+        final List<int[]> keySets = sets.computeIfAbsent(key, (final String k) -> new ArrayList<>());
+        keySets.removeIf((final int[] set) -> Arrays.equals(set, frequencies));
+        keySets.add(0, frequencies);
+        if (keySets.size() > MAX_SETS_PER_KEY) {
+            keySets.remove(keySets.size() - 1);
+        }
+    }
+
+    final int size() {
+        int size = 0;
+        for (List<int[]> keySets : sets.values()) {
+            size += keySets.size();
+        }
+        return size;
+    }
+
+    final Path getPath() {
+        return path;
+    }
+
+    @Override
+    public final void close() throws IOException {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The HeapIntermodStore class holds a sorted list of intermod objects on the
+ * heap. The frequencies of the list are also kept in a contiguous array so
+ * searches do not need to read the intermod objects. The array is built with
+ * each new list and is null while intermods are still being added. It is
+ * volatile as it may be built by any thread searching the store.
+ */
+final class HeapIntermodStore extends IntermodStore {
+    private List<Intermod> intermods;
+    private volatile int[] frequencies;
+    private List<List<Intermod>> backups;
+    private List<int[]> frequencyBackups;
+
+    HeapIntermodStore() {
+        this.intermods = new ArrayList<>();
+        this.frequencies = new int[0];
+        this.backups = new ArrayList<>();
+        this.frequencyBackups = new ArrayList<>();
+    }
+
+    @Override
+    final Storage getStorage() {
+        return Storage.HEAP;
+    }
+
+    @Override
+    final IntermodStore newStore() {
+        return new HeapIntermodStore();
+    }
+
+    @Override
+    final void add(@NotNull final Intermod intermod) {
+        intermods.add(intermod);
+        frequencies = null;
+    }
+
+    @Override
+    final void remove(@NotNull final Channel channel) {
+        final List<Intermod> remainingList = new ArrayList<>(intermods.size());
+        final int[] remainingFrequencies = new int[intermods.size()];
+        for (Intermod intermod : intermods) {
+            if (intermod.getF1() != channel
+                    && intermod.getF2() != channel
+                    && intermod.getF3() != channel) {
+                remainingFrequencies[remainingList.size()] = intermod.getFreq();
+                remainingList.add(intermod);
+            }
+        }
+        intermods = remainingList;
+        frequencies = Arrays.copyOf(remainingFrequencies, remainingList.size());
+    }
+
+    @Override
+    final void pushToBackupStack() {
+        backups.add(intermods);
+        frequencyBackups.add(frequencies);
+    }
+
+    @Override
+    final void popFromBackupStack() {
+        intermods = backups.remove(backups.size() - 1);
+        frequencies = frequencyBackups.remove(frequencyBackups.size() - 1);
+    }
+
+    @Override
+    final void mergeIn(@NotNull final IntermodStore intermodStore) {
+        List<Intermod> a = intermods;
+        List<Intermod> b = ((HeapIntermodStore) intermodStore).intermods;
+        List<Intermod> mergedList = new ArrayList<>(a.size() + b.size());
+
+        int indexA = 0;
+        int indexB = 0;
+        while (indexA < a.size() || indexB < b.size()) {
+            if (indexA == a.size()) {
+                mergedList.add(b.get(indexB));
+                indexB++;
+            } else if (indexB == b.size()) {
+                mergedList.add(a.get(indexA));
+                indexA++;
+            } else if (a.get(indexA).compareTo(b.get(indexB)) < 0) {
+                mergedList.add(a.get(indexA));
+                indexA++;
+            } else {
+                mergedList.add(b.get(indexB));
+                indexB++;
+            }
+        }
+        intermods = mergedList;
+        frequencies = buildFrequencies(mergedList);
+    }
+
+    private static int[] buildFrequencies(@NotNull final List<Intermod> intermods) {
+        final int[] frequencies = new int[intermods.size()];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = intermods.get(i).getFreq();
+        }
+        return frequencies;
+    }
+
+    private int[] getFrequencies() {
+        int[] current = frequencies;
+        if (current == null) {
+            current = buildFrequencies(intermods);
+            frequencies = current;
+        }
+        return current;
+    }
+
+    /**
+     * Method to find the first index in part of a sorted array holding a
+     * value above the limit. The loop always runs the same number of times
+     * for a given length and the comparison only selects the next base, so
+     * the search does not depend on branch prediction.
+     *
+     * @param values sorted values
+     * @param from first index searched
+     * @param to index after the last index searched
+     * @param limitLo limit
+     * @return first index with a value above limitLo, or to if there is none
+     */
+    static int getNextIndex(
+            @NotNull final int[] values,
+            final int from,
+            final int to,
+            final int limitLo
+    ) {
+        int base = from;
+        int length = to - from;
+        while (length > 1) {
+            final int half = length >>> 1;
+            base = values[base + half - 1] <= limitLo ? base + half : base;
+            length -= half;
+        }
+        return length == 1 && values[base] <= limitLo ? base + 1 : base;
+    }
+
+    @Override
+    final void sort() {
+        intermods.sort(null);
+        frequencies = null;
+    }
+
+    @Override
+    final int size() {
+        return intermods.size();
+    }
+
+    @Override
+    final List<Intermod> getIntermodList() {
+        return Collections.unmodifiableList(intermods);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Intermod> iterator() {
+        return intermods.iterator();
+    }
+
+    @Override
+    final void forRange(final int rangeLo, final int rangeHi, @NotNull final Consumer<Intermod> consumer) {
+        final int[] frequencies = getFrequencies();
+        int index = getNextIndex(frequencies, 0, frequencies.length, rangeLo);
+        while (index < frequencies.length && frequencies[index] < rangeHi) {
+            consumer.accept(intermods.get(index++));
+        }
+    }
+
+    @Override
+    final void forRanges(
+            @NotNull final int[] rangeLos,
+            @NotNull final int[] rangeHis,
+            @NotNull final ObjIntConsumer<Intermod> consumer
+    ) {
+        final int[] frequencies = getFrequencies();
+
+        // Visit the ranges in order of their lower limit so each search can
+        // start where the previous one finished
+        final long[] order = new long[rangeLos.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = ((long) rangeLos[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        final int[] starts = new int[rangeLos.length];
+        int start = 0;
+        for (long entry : order) {
+            final int range = (int) entry;
+            start = getNextIndex(frequencies, start, frequencies.length, rangeLos[range]);
+            starts[range] = start;
+        }
+
+        for (int range = 0; range < starts.length; range++) {
+            int index = starts[range];
+            while (index < frequencies.length && frequencies[index] < rangeHis[range]) {
+                consumer.accept(intermods.get(index++), range);
+            }
+        }
+    }
+}
@@ -4,21 +4,27 @@ import org.jetbrains.annotations.NotNull;
 
 class Intermod implements Comparable<Intermod>, FrequencyComponent {
     enum Type {
-        IM_2T3O("2T3O"),
-        IM_2T5O("2T5O"),
-        IM_2T7O("2T7O"),
-        IM_2T9O("2T9O"),
-        IM_3T3O("3T3O");
+        IM_2T3O("2T3O", 3),
+        IM_2T5O("2T5O", 5),
+        IM_2T7O("2T7O", 7),
+        IM_2T9O("2T9O", 9),
+        IM_3T3O("3T3O", 3);
 
         private final String label;
+        private final int order;
 
-        Type(@NotNull final String label) {
+        Type(@NotNull final String label, final int order) {
             this.label = label;
+            this.order = order;
         }
 
         public String pretty() {
             return this.label;
         }
+
+        public int getOrder() {
+            return this.order;
+        }
     }
 
     private final int frequency;
@@ -31,6 +37,19 @@ class Intermod implements Comparable<Intermod>, FrequencyComponent {
              @NotNull final Channel f1,
              @NotNull final Channel f2,
              final Channel f3) {
+        this(type, f1, f2, f3, calculateFrequency(type, f1, f2, f3));
+    }
+
+    /**
+     * Constructor for an intermod whose frequency was calculated when it was
+     * first created, such as one read back from a store. The channels may
+     * have changed frequency since.
+     */
+    Intermod(@NotNull final Type type,
+             @NotNull final Channel f1,
+             @NotNull final Channel f2,
+             final Channel f3,
+             final int frequency) {
         if (type == null) {
             throw new IllegalArgumentException("Type may not be null");
         }
@@ -44,30 +63,34 @@ class Intermod implements Comparable<Intermod>, FrequencyComponent {
         this.f2 = f2;
         this.f3 = type == Type.IM_3T3O ? f3 : null;
         this.type = type;
+        this.frequency = frequency;
+    }
+
+    static int calculateFrequency(@NotNull final Type type,
+                                  @NotNull final Channel f1,
+                                  @NotNull final Channel f2,
+                                  final Channel f3) {
+        if (type == null || f1 == null || f2 == null) {
+            return -1;
+        }
         switch (type) {
             case IM_2T3O:
-                this.frequency = (2 * f1.getFreq()) - f2.getFreq();
-                break;
+                return (2 * f1.getFreq()) - f2.getFreq();
 
             case IM_2T5O:
-                this.frequency = (3 * f1.getFreq()) - (2 * f2.getFreq());
-                break;
+                return (3 * f1.getFreq()) - (2 * f2.getFreq());
 
             case IM_2T7O:
-                this.frequency = (4 * f1.getFreq()) - (3 * f2.getFreq());
-                break;
+                return (4 * f1.getFreq()) - (3 * f2.getFreq());
 
             case IM_2T9O:
-                this.frequency = (5 * f1.getFreq()) - (4 * f2.getFreq());
-                break;
+                return (5 * f1.getFreq()) - (4 * f2.getFreq());
 
             case IM_3T3O:
-                this.frequency = f1.getFreq() + f2.getFreq() - f3.getFreq();
-                break;
+                return f1.getFreq() + f2.getFreq() - f3.getFreq();
 
             default:
-                this.frequency = -1;
-                break;
+                return -1;
         }
     }
 
@@ -1,115 +1,141 @@
 package com.stevebunting.rfxp.coordinator;
 
 import org.jetbrains.annotations.NotNull;
-import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.function.Consumer;
-
-class IntermodStore implements Iterable<Intermod> {
-    private List<Intermod> intermods;
-    private List<List<Intermod>> backups;
-
-    IntermodStore() {
-        this.intermods = new ArrayList<>();
-        this.backups = new ArrayList<>();
-    }
-
-    final void add(@NotNull final Intermod intermod) {
-        intermods.add(intermod);
-    }
-
-    final void remove(@NotNull final Channel channel) {
-        intermods.removeIf((Intermod intermod) ->
-                intermod.getF1() == channel
-                        || intermod.getF2() == channel
-                        || intermod.getF3() == channel);
-    }
-
-    final void pushToBackupStack() {
-        backups.add(intermods);
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The IntermodStore class holds a sorted list of intermods. Once a list has
+ * been merged into the store it is never changed in place, removals and
+ * merges build a new list, so a list obtained from getIntermodList may be
+ * shared with readers on other threads.
+ *
+ * Subclasses decide where the intermods are kept, either as objects on the
+ * heap, as records in off-heap memory, as objects in frequency buckets or in
+ * a concurrent skip list.
+ */
+abstract class IntermodStore implements Iterable<Intermod> {
+
+    enum Storage { HEAP, OFF_HEAP, BUCKETED, CONCURRENT }
+
+    /**
+     * Method to create an empty store.
+     *
+     * @param storage where the store keeps its intermods
+     * @return empty store
+     */
+    static IntermodStore create(@NotNull final Storage storage) {
+        if (storage == null) {
+            throw new IllegalArgumentException();
+        }
+        switch (storage) {
+            case OFF_HEAP:
+                return new OffHeapIntermodStore();
+            case BUCKETED:
+                return new BucketedIntermodStore();
+            case CONCURRENT:
+                return new ConcurrentIntermodStore();
+            default:
+                return new HeapIntermodStore();
+        }
     }
 
-    final void popFromBackupStack() {
-        intermods = backups.remove(backups.size() - 1);
+    abstract Storage getStorage();
+
+    /**
+     * Method to create an empty store of the same kind, which can be merged
+     * into this store.
+     *
+     * @return empty store
+     */
+    abstract IntermodStore newStore();
+
+    /**
+     * Method to add an intermod to the end of the store. The store must be
+     * sorted before it is searched or merged.
+     *
+     * @param intermod intermod to add
+     */
+    abstract void add(@NotNull final Intermod intermod);
+
+    /**
+     * Method to check whether intermods may be added to the store from
+     * several threads at once.
+     *
+     * @return true if add may be called concurrently
+     */
+    boolean isConcurrent() {
+        return false;
     }
 
-    final void mergeIn(@NotNull final IntermodStore intermodStore) {
-        List<Intermod> mergedList = new ArrayList<>();
-        List<Intermod> a = intermods;
-        List<Intermod> b = intermodStore.intermods;
-
-        int indexA = 0;
-        int indexB = 0;
-        while (indexA < a.size() || indexB < b.size()) {
-            if (indexA == a.size()) {
-                mergedList.add(b.get(indexB));
-                indexB++;
-            } else if (indexB == b.size()) {
-                mergedList.add(a.get(indexA));
-                indexA++;
-            } else if (a.get(indexA).compareTo(b.get(indexB)) < 0) {
-                mergedList.add(a.get(indexA));
-                indexA++;
-            } else {
-                mergedList.add(b.get(indexB));
-                indexB++;
-            }
-        }
-        intermods = mergedList;
-    }
+    /**
+     * Method to remove every intermod that a channel contributes to.
+     *
+     * @param channel channel removed
+     */
+    abstract void remove(@NotNull final Channel channel);
 
-    private int getNextImIndex(final int limitLo) {
-        return getNextImIndex(limitLo, 0, intermods.size() - 1);
-    }
+    abstract void pushToBackupStack();
 
-    private int getNextImIndex(
-            final int limitLo,
-            final int start,
-            final int end
-    ) {
-        if (start > end) {
-            return start;
-        }
+    abstract void popFromBackupStack();
 
-        final int mid = start + ((end - start) / 2);
-        if (intermods.get(mid).getFreq() <= limitLo) {
-            return mid + 1 < intermods.size() && intermods.get(mid + 1).getFreq() > limitLo
-                    ? mid + 1
-                    : getNextImIndex(limitLo, mid + 1, end);
-        } else {
-            return mid > 0 && intermods.get(mid - 1).getFreq() <= limitLo
-                    ? mid
-                    : getNextImIndex(limitLo, start, mid - 1);
-        }
-    }
+    /**
+     * Method to merge another sorted store of the same kind into this store.
+     *
+     * @param intermodStore store to merge in
+     */
+    abstract void mergeIn(@NotNull final IntermodStore intermodStore);
 
-    final void sort() {
-        intermods.sort(null);
-    }
+    abstract void sort();
 
-    final int size() {
-        return intermods.size();
-    }
+    abstract int size();
 
     final boolean isEmpty() {
-        return intermods.size() == 0;
+        return size() == 0;
     }
 
-    final Intermod[] getIntermodsArray() {
-        return intermods.toArray(new Intermod[0]);
-    }
+    /**
+     * Method to get a read only view of the current intermod list.
+     *
+     * @return unmodifiable sorted list of intermods
+     */
+    abstract List<Intermod> getIntermodList();
 
-    @NotNull
-    @Override
-    public Iterator<Intermod> iterator() {
-        return intermods.iterator();
+    final Intermod[] getIntermodsArray() {
+        return getIntermodList().toArray(new Intermod[0]);
     }
 
-    final void forRange(final int rangeLo, final int rangeHi, Consumer<Intermod> consumer) {
-        int index = getNextImIndex(rangeLo);
-        while (index < intermods.size() && intermods.get(index).getFreq() < rangeHi) {
-            consumer.accept(intermods.get(index++));
+    /**
+     * Method to pass each intermod with a frequency above rangeLo and below
+     * rangeHi to a consumer, in order.
+     *
+     * @param rangeLo lower frequency limit in kHz, exclusive
+     * @param rangeHi upper frequency limit in kHz, exclusive
+     * @param consumer consumer of intermods
+     */
+    abstract void forRange(final int rangeLo, final int rangeHi, @NotNull final Consumer<Intermod> consumer);
+
+    /**
+     * Method to pass the intermods in each of several ranges to a consumer,
+     * along with the index of the range. Ranges are visited in the order
+     * given and the intermods of each range in frequency order.
+     *
+     * @param rangeLos lower frequency limits in kHz, exclusive
+     * @param rangeHis upper frequency limits in kHz, exclusive
+     * @param consumer consumer of intermods and range indexes
+     */
+    void forRanges(
+            @NotNull final int[] rangeLos,
+            @NotNull final int[] rangeHis,
+            @NotNull final ObjIntConsumer<Intermod> consumer
+    ) {
+        if (rangeLos.length != rangeHis.length) {
+            throw new IllegalArgumentException();
+        }
+        for (int i = 0; i < rangeLos.length; i++) {
+            final int range = i;
+            forRange(rangeLos[i], rangeHis[i], (@NotNull final Intermod im) -> consumer.accept(im, range));
         }
     }
 }
@@ -0,0 +1,287 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * The LocalSearchGenerator class finds frequencies for a list of channels by
+ * min-conflicts local search. Every channel is first given the least
+ * conflicting of a sample of frequencies in its range, even if the result
+ * has conflicts. The search then repeatedly takes the channel involved in
+ * the most conflicts and moves it to the least conflicting of a new sample,
+ * until no conflicts are left or the step limit is reached.
+ *
+ * Channels that have just moved are tabu for a few steps so the search does
+ * not move the same channel back and forth, and a small share of moves go to
+ * a random conflicting channel to leave local minima.
+ *
+ * Each move removes the channel from the analyser and adds it again, so the
+ * conflicts of the analyser are kept up to date incrementally. The conflicts
+ * each channel is involved in are tracked as the analyser adds and removes
+ * them, so choosing the next move never reads the whole conflict list.
+ */
+final class LocalSearchGenerator {
+    static final int MAX_STEPS = 5000;
+    static final int SAMPLE_SIZE = 32;
+    static final int TABU_TENURE = 5;
+    static final double NOISE = 0.1;
+
+    private final Analyser analyser;
+    private final List<Channel> channelsToUpdate;
+    private final ChannelGeneratorWrapper.Selection selection;
+    private final Map<Channel, Integer> indexes = new IdentityHashMap<>();
+
+    // Conflicts in the analysis that each channel is involved in, and their number
+    private final List<Set<Conflict>> involvedConflicts;
+    private final int[] involvement;
+    private final SplittableRandom random;
+    private int numSteps = 0;
+    private boolean clear = false;
+
+    /**
+     * Constructor for a search over channels that are not in the analysis.
+     *
+     * @param analyser analyser holding the fixed channels
+     * @param channelsToUpdate channels to find frequencies for
+     * @param selection NEAREST to keep channels at their current frequency
+     *                  where it is clear
+     * @param random generator for every random choice of the search
+     */
+    LocalSearchGenerator(
+            @NotNull final Analyser analyser,
+            @NotNull final List<Channel> channelsToUpdate,
+            @NotNull final ChannelGeneratorWrapper.Selection selection,
+            @NotNull final SplittableRandom random
+    ) {
+        this.analyser = analyser;
+        this.channelsToUpdate = channelsToUpdate;
+        this.selection = selection;
+        this.random = random;
+        this.involvedConflicts = new ArrayList<>(channelsToUpdate.size());
+        this.involvement = new int[channelsToUpdate.size()];
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            indexes.put(channelsToUpdate.get(i), i);
+            involvedConflicts.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+        }
+    }
+
+    /**
+     * Method to run the search. The channels are added to the analyser while
+     * the search runs and removed again before it returns.
+     *
+     * @return frequencies with the fewest conflicts found, in the order of
+     * the channels, which may still conflict if no clear set was found
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    final List<Integer> generate() throws InvalidFrequencyException {
+        final int fixedConflicts = analyser.getConflictList().size();
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            final Channel channel = channelsToUpdate.get(i);
+            if (!keepsCurrentFrequency(channel)) {
+                channel.setFreq(getLeastConflictingFrequency(channel));
+            }
+            addChannel(i);
+        }
+
+        int bestConflicts = analyser.getConflictList().size();
+        List<Integer> bestFrequencies = getFrequencies();
+        final int[] tabuUntil = new int[channelsToUpdate.size()];
+        final int tabuTenure = Math.min(TABU_TENURE, channelsToUpdate.size() - 1);
+
+        while (bestConflicts > fixedConflicts && numSteps < MAX_STEPS) {
+            final int index = getChannelToMove(tabuUntil);
+            if (index < 0) {
+                // Only conflicts between fixed channels are left
+                break;
+            }
+            final Channel channel = channelsToUpdate.get(index);
+            removeChannel(index);
+            channel.setFreq(getLeastConflictingFrequency(channel));
+            addChannel(index);
+            tabuUntil[index] = numSteps + tabuTenure + 1;
+            numSteps++;
+
+            final int numConflicts = analyser.getConflictList().size();
+            if (numConflicts < bestConflicts) {
+                bestConflicts = numConflicts;
+                bestFrequencies = getFrequencies();
+            }
+        }
+
+        for (int i = 0; i < channelsToUpdate.size(); i++) {
+            removeChannel(i);
+        }
+        clear = bestConflicts == fixedConflicts;
+        return bestFrequencies;
+    }
+
+    /**
+     * Method to add a channel to the analyser and count the conflicts it
+     * adds against every channel involved in them. The analyser appends the
+     * conflicts of a new channel to the end of its conflict list.
+     *
+     * @param index index of the channel to add
+     */
+    private void addChannel(final int index) {
+        final List<Conflict> conflicts = analyser.getConflictList();
+        final int firstNewConflict = conflicts.size();
+        analyser.addChannel(channelsToUpdate.get(index));
+        for (int i = firstNewConflict; i < conflicts.size(); i++) {
+            final Conflict conflict = conflicts.get(i);
+            for (Channel channel : conflict.getInvolvedChannels()) {
+                final Integer involved = indexes.get(channel);
+                if (involved != null) {
+                    involvedConflicts.get(involved).add(conflict);
+                    involvement[involved]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Method to remove a channel from the analyser, which removes every
+     * conflict it is involved in, and uncount those conflicts.
+     *
+     * @param index index of the channel to remove
+     */
+    private void removeChannel(final int index) {
+        for (Conflict conflict : involvedConflicts.get(index)) {
+            for (Channel channel : conflict.getInvolvedChannels()) {
+                final Integer involved = indexes.get(channel);
+                if (involved != null) {
+                    if (involved != index) {
+                        involvedConflicts.get(involved).remove(conflict);
+                    }
+                    involvement[involved]--;
+                }
+            }
+        }
+        involvedConflicts.get(index).clear();
+        analyser.removeChannel(channelsToUpdate.get(index));
+    }
+
+    /**
+     * Method to find the channel to move, the channel involved in the most
+     * conflicts that is not tabu, with ties and noise moves chosen at random.
+     * If every conflicting channel is tabu the tabu is ignored.
+     *
+     * @param tabuUntil step each channel stays tabu until
+     * @return index of the channel to move, or -1 if no channel conflicts
+     */
+    private int getChannelToMove(@NotNull final int[] tabuUntil) {
+        final List<Integer> conflicting = new ArrayList<>();
+        for (int i = 0; i < involvement.length; i++) {
+            if (involvement[i] > 0) {
+                conflicting.add(i);
+            }
+        }
+        if (conflicting.isEmpty()) {
+            return -1;
+        }
+        if (random.nextDouble() < NOISE) {
+            return conflicting.get(random.nextInt(conflicting.size()));
+        }
+
+        int chosen = -1;
+        int numTied = 0;
+        for (boolean ignoreTabu : new boolean[]{ false, true }) {
+            for (int i : conflicting) {
+                if (!ignoreTabu && tabuUntil[i] > numSteps) {
+                    continue;
+                }
+                if (chosen < 0 || involvement[i] > involvement[chosen]) {
+                    chosen = i;
+                    numTied = 1;
+                } else if (involvement[i] == involvement[chosen] && random.nextInt(++numTied) == 0) {
+                    chosen = i;
+                }
+            }
+            if (chosen >= 0) {
+                break;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Method to find the least conflicting of a sample of random frequencies
+     * for a channel that is not in the analysis. Each frequency is first
+     * checked against the channels and intermods in the analysis, and the
+     * intermods of the channel itself are only calculated if that check has
+     * not already ruled the frequency out.
+     *
+     * @param channel channel to move
+     * @return frequency with the fewest conflicts found
+     * @throws InvalidFrequencyException if a frequency cannot be set
+     */
+    private int getLeastConflictingFrequency(@NotNull final Channel channel) throws InvalidFrequencyException {
+        if (random.nextDouble() < NOISE) {
+            return getRandomFrequency(channel);
+        }
+
+        int bestFrequency = 0;
+        int bestConflicts = Integer.MAX_VALUE;
+        int numTied = 0;
+        for (int i = 0; i < SAMPLE_SIZE && bestConflicts > 0; i++) {
+            final int frequency = getRandomFrequency(channel);
+            channel.setFreq(frequency);
+            final int numConflicts = analyser.countConflicts(channel, i == 0 ? Integer.MAX_VALUE : bestConflicts + 1);
+            if (numConflicts < bestConflicts) {
+                bestFrequency = frequency;
+                bestConflicts = numConflicts;
+                numTied = 1;
+            } else if (numConflicts == bestConflicts && random.nextInt(++numTied) == 0) {
+                bestFrequency = frequency;
+            }
+        }
+        return bestFrequency;
+    }
+
+    /**
+     * Method to check whether a channel may start the search at its current
+     * frequency, which it does with NEAREST selection if the frequency is in
+     * its range and clear of the channels already placed.
+     *
+     * @param channel channel to check
+     * @return true if the channel keeps its frequency
+     */
+    private boolean keepsCurrentFrequency(@NotNull final Channel channel) {
+        return selection == ChannelGeneratorWrapper.Selection.NEAREST
+                && channel.getRange().isValidFrequency(channel.getFreq())
+                && analyser.countConflicts(channel, 1) == 0;
+    }
+
+    private int getRandomFrequency(@NotNull final Channel channel) {
+        final Range range = channel.getRange();
+        final int tuningAccuracy = channel.getEquipment().getTuningAccuracy();
+        return range.getLo() + tuningAccuracy * random.nextInt((range.getHi() - range.getLo()) / tuningAccuracy + 1);
+    }
+
+    private List<Integer> getFrequencies() {
+        final List<Integer> frequencies = new ArrayList<>(channelsToUpdate.size());
+        for (Channel channel : channelsToUpdate) {
+            frequencies.add(channel.getFreq());
+        }
+        return frequencies;
+    }
+
+    /**
+     * Method to check whether the last search found frequencies that add no
+     * conflicts to the analysis.
+     *
+     * @return true if the frequencies found are clear
+     */
+    final boolean isClear() {
+        return clear;
+    }
+
+    final int getNumSteps() {
+        return numSteps;
+    }
+}
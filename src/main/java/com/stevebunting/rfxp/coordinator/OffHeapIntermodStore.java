@@ -0,0 +1,485 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+
+/**
+ * The OffHeapIntermodStore class keeps intermods as fixed size records in
+ * direct memory so large coordinations do not fill the heap with long lived
+ * intermod objects. Each record holds the frequency, type and the table
+ * indexes of the channels. Intermod objects are created only while they are
+ * being read and are not kept by the store.
+ *
+ * A record buffer that has been handed to a reader or pushed to the backup
+ * stack is never changed, removals and merges write a new buffer, so a list
+ * obtained from getIntermodList stays valid for readers on other threads.
+ * Buffers nobody else holds are edited in place, and the last one replaced
+ * is kept to be written into next, so repeated edits do not allocate.
+ */
+final class OffHeapIntermodStore extends IntermodStore {
+    private static final int RECORD_SIZE = 17;
+    private static final int FREQUENCY_OFFSET = 0;
+    private static final int TYPE_OFFSET = 4;
+    private static final int F1_OFFSET = 5;
+    private static final int F2_OFFSET = 9;
+    private static final int F3_OFFSET = 13;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private static final Intermod.Type[] TYPES = Intermod.Type.values();
+
+    /**
+     * The ChannelTable class numbers the channels referred to by the records
+     * of a family of stores. The index of a removed channel is released for
+     * reuse, and readers hold on to the array as it was when records were
+     * published to them, so a slot of an array that has been shared is only
+     * reused in a copy of the array.
+     */
+    private static final class ChannelTable {
+        private final Map<Channel, Integer> indexes = new IdentityHashMap<>();
+        private final List<Integer> freeIndexes = new ArrayList<>();
+        private Channel[] channels = new Channel[INITIAL_CAPACITY];
+        private int numIndexes = 0;
+        private boolean channelsShared = false;
+
+        private int indexOf(@NotNull final Channel channel) {
+            final Integer index = indexes.get(channel);
+            if (index != null) {
+                return index;
+            }
+            final int newIndex;
+            if (!freeIndexes.isEmpty()) {
+                newIndex = freeIndexes.remove(freeIndexes.size() - 1);
+                if (channelsShared) {
+                    channels = channels.clone();
+                    channelsShared = false;
+                }
+            } else {
+                // A new slot is not in use by any reader, so it is written in
+                // place even if the array is shared
+                newIndex = numIndexes++;
+                if (newIndex == channels.length) {
+                    channels = Arrays.copyOf(channels, channels.length * 2);
+                    channelsShared = false;
+                }
+            }
+            channels[newIndex] = channel;
+            indexes.put(channel, newIndex);
+            return newIndex;
+        }
+
+        private int find(@NotNull final Channel channel) {
+            final Integer index = indexes.get(channel);
+            return index != null ? index : -1;
+        }
+
+        private void release(@NotNull final Channel channel) {
+            final Integer index = indexes.remove(channel);
+            if (index == null) {
+                return;
+            }
+            if (!channelsShared) {
+                channels[index] = null;
+            }
+            freeIndexes.add(index);
+        }
+
+        private int size() {
+            return indexes.size();
+        }
+
+        private Channel[] share() {
+            channelsShared = true;
+            return channels;
+        }
+    }
+
+    private final ChannelTable channelTable;
+    private ByteBuffer records;
+    private int size = 0;
+    private boolean recordsShared = false;
+
+    // Buffer replaced by the last edit that nobody else holds, written into
+    // by the next edit that cannot be made in place
+    private ByteBuffer spareRecords;
+
+    private final List<ByteBuffer> backupRecords = new ArrayList<>();
+    private final List<Integer> backupSizes = new ArrayList<>();
+
+    // Channels removed while there were backups, which may still refer to
+    // them, released once the backup stack is empty
+    private final List<Channel> pendingReleases = new ArrayList<>();
+
+    OffHeapIntermodStore() {
+        this(new ChannelTable());
+    }
+
+    private OffHeapIntermodStore(@NotNull final ChannelTable channelTable) {
+        this.channelTable = channelTable;
+        this.records = ByteBuffer.allocateDirect(INITIAL_CAPACITY * RECORD_SIZE);
+    }
+
+    @Override
+    final Storage getStorage() {
+        return Storage.OFF_HEAP;
+    }
+
+    @Override
+    final IntermodStore newStore() {
+        return new OffHeapIntermodStore(channelTable);
+    }
+
+    @Override
+    final void add(@NotNull final Intermod intermod) {
+        if ((size + 1) * RECORD_SIZE > records.capacity()) {
+            replaceRecords(copyRecords(records, size, Math.max(INITIAL_CAPACITY, size * 2)), size);
+        }
+        final int offset = size * RECORD_SIZE;
+        records.putInt(offset + FREQUENCY_OFFSET, intermod.getFreq());
+        records.put(offset + TYPE_OFFSET, (byte) intermod.getType().ordinal());
+        records.putInt(offset + F1_OFFSET, channelTable.indexOf(intermod.getF1()));
+        records.putInt(offset + F2_OFFSET, channelTable.indexOf(intermod.getF2()));
+        records.putInt(offset + F3_OFFSET, intermod.getF3() != null ? channelTable.indexOf(intermod.getF3()) : -1);
+        size++;
+    }
+
+    @Override
+    final void remove(@NotNull final Channel channel) {
+        final int channelIndex = channelTable.find(channel);
+        if (channelIndex < 0) {
+            return;
+        }
+        final ByteBuffer remaining = recordsShared ? getSpareRecords(size) : records;
+        int remainingSize = 0;
+        for (int i = 0; i < size; i++) {
+            if (!refersTo(records, i, channelIndex)) {
+                copyRecord(records, i, remaining, remainingSize++);
+            }
+        }
+        replaceRecords(remaining, remainingSize);
+
+        if (backupRecords.isEmpty()) {
+            channelTable.release(channel);
+        } else {
+            pendingReleases.add(channel);
+        }
+    }
+
+    @Override
+    final void pushToBackupStack() {
+        backupRecords.add(records);
+        backupSizes.add(size);
+        recordsShared = true;
+    }
+
+    @Override
+    final void popFromBackupStack() {
+        if (!recordsShared) {
+            spareRecords = records;
+        }
+        records = backupRecords.remove(backupRecords.size() - 1);
+        size = backupSizes.remove(backupSizes.size() - 1);
+
+        // The restored buffer may have been handed to a reader before it was
+        // pushed
+        recordsShared = true;
+
+        if (backupRecords.isEmpty() && !pendingReleases.isEmpty()) {
+            releasePendingChannels();
+        }
+    }
+
+    /**
+     * Method to release the channels removed while there were backups,
+     * unless a restored record still refers to them.
+     */
+    private void releasePendingChannels() {
+        final boolean[] referenced = new boolean[channelTable.channels.length];
+        for (int i = 0; i < size; i++) {
+            final int offset = i * RECORD_SIZE;
+            referenced[records.getInt(offset + F1_OFFSET)] = true;
+            referenced[records.getInt(offset + F2_OFFSET)] = true;
+            final int f3 = records.getInt(offset + F3_OFFSET);
+            if (f3 >= 0) {
+                referenced[f3] = true;
+            }
+        }
+        for (Channel channel : pendingReleases) {
+            final int channelIndex = channelTable.find(channel);
+            if (channelIndex >= 0 && !referenced[channelIndex]) {
+                channelTable.release(channel);
+            }
+        }
+        pendingReleases.clear();
+    }
+
+    @Override
+    final void mergeIn(@NotNull final IntermodStore intermodStore) {
+        final OffHeapIntermodStore other = (OffHeapIntermodStore) intermodStore;
+        if (other.channelTable != channelTable) {
+            throw new IllegalArgumentException("Stores must share a channel table to be merged");
+        }
+        final int mergedSize = size + other.size;
+        if (!recordsShared && mergedSize * RECORD_SIZE <= records.capacity()) {
+            // Merge from the end so records are moved before they are
+            // overwritten
+            int indexA = size - 1;
+            int indexB = other.size - 1;
+            int index = mergedSize - 1;
+            while (indexB >= 0) {
+                if (indexA >= 0 && compareRecords(records, indexA, other.records, indexB) >= 0) {
+                    copyRecord(records, indexA--, records, index--);
+                } else {
+                    copyRecord(other.records, indexB--, records, index--);
+                }
+            }
+            size = mergedSize;
+            return;
+        }
+
+        final ByteBuffer merged = getSpareRecords(mergedSize);
+        int indexA = 0;
+        int indexB = 0;
+        int index = 0;
+        while (indexA < size || indexB < other.size) {
+            if (indexA == size) {
+                copyRecord(other.records, indexB++, merged, index++);
+            } else if (indexB == other.size) {
+                copyRecord(records, indexA++, merged, index++);
+            } else if (compareRecords(records, indexA, other.records, indexB) < 0) {
+                copyRecord(records, indexA++, merged, index++);
+            } else {
+                copyRecord(other.records, indexB++, merged, index++);
+            }
+        }
+        replaceRecords(merged, mergedSize);
+    }
+
+    @Override
+    final void sort() {
+        final Intermod[] intermods = new Intermod[size];
+        for (int i = 0; i < size; i++) {
+            intermods[i] = getIntermod(records, channelTable.channels, i);
+        }
+        Arrays.sort(intermods);
+        if (recordsShared) {
+            replaceRecords(getSpareRecords(size), 0);
+        }
+        size = 0;
+        for (Intermod intermod : intermods) {
+            add(intermod);
+        }
+    }
+
+    /**
+     * Method to get a buffer to write a new version of the records into,
+     * reusing the spare buffer if it is large enough.
+     *
+     * @param numRecords number of records the buffer must hold
+     * @return buffer that nobody else holds
+     */
+    private ByteBuffer getSpareRecords(final int numRecords) {
+        final ByteBuffer spare = spareRecords;
+        spareRecords = null;
+        if (spare != null && numRecords * RECORD_SIZE <= spare.capacity()) {
+            return spare;
+        }
+        // Leave room to grow so following edits can be made in place
+        return ByteBuffer.allocateDirect(Math.max(INITIAL_CAPACITY, numRecords + numRecords / 2) * RECORD_SIZE);
+    }
+
+    /**
+     * Method to make a buffer the current records, keeping the buffer it
+     * replaces as the spare if nobody else holds it.
+     *
+     * @param newRecords new records
+     * @param newSize number of records
+     */
+    private void replaceRecords(@NotNull final ByteBuffer newRecords, final int newSize) {
+        if (newRecords != records) {
+            if (!recordsShared) {
+                spareRecords = records;
+            }
+            records = newRecords;
+            recordsShared = false;
+        }
+        size = newSize;
+    }
+
+    @Override
+    final int size() {
+        return size;
+    }
+
+    /**
+     * Method to get the number of channels the channel table holds an index
+     * for.
+     *
+     * @return number of channels in the table
+     */
+    final int getNumTableChannels() {
+        return channelTable.size();
+    }
+
+    @Override
+    final List<Intermod> getIntermodList() {
+        final ByteBuffer listRecords = records;
+        final Channel[] listChannels = channelTable.share();
+        final int listSize = size;
+        recordsShared = true;
+        return new AbstractList<Intermod>() {
+            @Override
+            public Intermod get(final int index) {
+                if (index < 0 || index >= listSize) {
+                    throw new IndexOutOfBoundsException();
+                }
+                return getIntermod(listRecords, listChannels, index);
+            }
+
+            @Override
+            public int size() {
+                return listSize;
+            }
+        };
+    }
+
+    @NotNull
+    @Override
+    public Iterator<Intermod> iterator() {
+        final ByteBuffer iteratorRecords = records;
+        final Channel[] iteratorChannels = channelTable.share();
+        final int iteratorSize = size;
+        recordsShared = true;
+        return new Iterator<Intermod>() {
+            private int index = 0;
+
+            @Override
+            public boolean hasNext() {
+                return index < iteratorSize;
+            }
+
+            @Override
+            public Intermod next() {
+                if (index >= iteratorSize) {
+                    throw new NoSuchElementException();
+                }
+                return getIntermod(iteratorRecords, iteratorChannels, index++);
+            }
+        };
+    }
+
+    @Override
+    final void forRange(final int rangeLo, final int rangeHi, @NotNull final Consumer<Intermod> consumer) {
+        // Find the first record with a frequency above rangeLo
+        int base = 0;
+        int length = size;
+        while (length > 1) {
+            final int half = length >>> 1;
+            base = getFrequency(records, base + half - 1) <= rangeLo ? base + half : base;
+            length -= half;
+        }
+        final int lo = length == 1 && getFrequency(records, base) <= rangeLo ? base + 1 : base;
+        for (int index = lo; index < size && getFrequency(records, index) < rangeHi; index++) {
+            consumer.accept(getIntermod(records, channelTable.channels, index));
+        }
+    }
+
+    private static Intermod getIntermod(
+            @NotNull final ByteBuffer buffer,
+            @NotNull final Channel[] channels,
+            final int index
+    ) {
+        final int offset = index * RECORD_SIZE;
+        final int f3 = buffer.getInt(offset + F3_OFFSET);
+        return new Intermod(
+                TYPES[buffer.get(offset + TYPE_OFFSET)],
+                channels[buffer.getInt(offset + F1_OFFSET)],
+                channels[buffer.getInt(offset + F2_OFFSET)],
+                f3 >= 0 ? channels[f3] : null,
+                buffer.getInt(offset + FREQUENCY_OFFSET));
+    }
+
+    private static boolean refersTo(@NotNull final ByteBuffer buffer, final int index, final int channelIndex) {
+        final int offset = index * RECORD_SIZE;
+        return buffer.getInt(offset + F1_OFFSET) == channelIndex
+                || buffer.getInt(offset + F2_OFFSET) == channelIndex
+                || buffer.getInt(offset + F3_OFFSET) == channelIndex;
+    }
+
+    private static int getFrequency(@NotNull final ByteBuffer buffer, final int index) {
+        return buffer.getInt(index * RECORD_SIZE + FREQUENCY_OFFSET);
+    }
+
+    /**
+     * Method to compare two records in the same order as Intermod.compareTo.
+     *
+     * @return negative, zero or positive as record a sorts before, with or after record b
+     */
+    private int compareRecords(
+            @NotNull final ByteBuffer a,
+            final int indexA,
+            @NotNull final ByteBuffer b,
+            final int indexB
+    ) {
+        final int offsetA = indexA * RECORD_SIZE;
+        final int offsetB = indexB * RECORD_SIZE;
+        final int frequencyA = a.getInt(offsetA + FREQUENCY_OFFSET);
+        final int frequencyB = b.getInt(offsetB + FREQUENCY_OFFSET);
+        if (frequencyA != frequencyB) {
+            return frequencyA - frequencyB;
+        }
+        final int typeA = a.get(offsetA + TYPE_OFFSET);
+        final int typeB = b.get(offsetB + TYPE_OFFSET);
+        if (typeA != typeB) {
+            return typeA - typeB;
+        }
+        final Channel[] channels = channelTable.channels;
+        final int f1 = channels[a.getInt(offsetA + F1_OFFSET)].getFreq()
+                - channels[b.getInt(offsetB + F1_OFFSET)].getFreq();
+        if (f1 != 0) {
+            return f1;
+        }
+        final int f2 = channels[a.getInt(offsetA + F2_OFFSET)].getFreq()
+                - channels[b.getInt(offsetB + F2_OFFSET)].getFreq();
+        if (f2 != 0) {
+            return f2;
+        }
+        final int f3A = a.getInt(offsetA + F3_OFFSET);
+        final int f3B = b.getInt(offsetB + F3_OFFSET);
+        return f3A >= 0 && f3B >= 0 ? channels[f3A].getFreq() - channels[f3B].getFreq() : 0;
+    }
+
+    private static void copyRecord(
+            @NotNull final ByteBuffer from,
+            final int fromIndex,
+            @NotNull final ByteBuffer to,
+            final int toIndex
+    ) {
+        final int fromOffset = fromIndex * RECORD_SIZE;
+        final int toOffset = toIndex * RECORD_SIZE;
+        to.putLong(toOffset, from.getLong(fromOffset));
+        to.putLong(toOffset + 8, from.getLong(fromOffset + 8));
+        to.put(toOffset + 16, from.get(fromOffset + 16));
+    }
+
+    private static ByteBuffer copyRecords(
+            @NotNull final ByteBuffer from,
+            final int size,
+            final int capacity
+    ) {
+        final ByteBuffer source = from.duplicate();
+        source.position(0);
+        source.limit(size * RECORD_SIZE);
+        final ByteBuffer to = ByteBuffer.allocateDirect(capacity * RECORD_SIZE);
+        to.put(source);
+        return to;
+    }
+}
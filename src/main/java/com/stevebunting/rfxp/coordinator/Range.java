@@ -3,6 +3,7 @@ package com.stevebunting.rfxp.coordinator;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.jetbrains.annotations.NotNull;
+import java.util.Objects;
 
 final class Range implements Comparable<Range> {
     final private int lo;
@@ -27,6 +28,19 @@ final class Range implements Comparable<Range> {
         } else return this.name.compareTo(that.getName());
     }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Range)) {
+            return false;
+        }
+        return this.compareTo((Range) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lo, hi, name);
+    }
+
     final boolean isValidFrequency(final int frequency) {
         return frequency >= lo && frequency <= hi;
     }
@@ -0,0 +1,138 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.jetbrains.annotations.NotNull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The RecordFile class holds the framing shared by the files made of
+ * records, such as CoordinationLog and FrequencySetCache. A file starts with
+ * a magic number and a format version, and each record after it is framed
+ * by its length and a CRC32 checksum so that an incomplete or damaged record
+ * at the end of the file is recognised.
+ */
+final class RecordFile {
+    static final int HEADER_SIZE = 8;
+
+    private RecordFile() {}
+
+    /**
+     * Method to write the header of a file.
+     *
+     * @param out file positioned at the start
+     * @param magic magic number of the file type
+     * @param formatVersion format version of the file type
+     * @throws IOException if the header cannot be written
+     */
+    static void writeHeader(
+            @NotNull final FileChannel out,
+            final int magic,
+            final int formatVersion
+    ) throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(magic).putInt(formatVersion).flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    /**
+     * Method to read a whole file and check its header.
+     *
+     * @param path file to read
+     * @param magic magic number of the file type
+     * @param formatVersion format version of the file type
+     * @param description name of the file type for the error message
+     * @return contents of the file, positioned at the first record
+     * @throws IOException if the file cannot be read or does not have the header
+     */
+    static ByteBuffer read(
+            @NotNull final Path path,
+            final int magic,
+            final int formatVersion,
+            @NotNull final String description
+    ) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) in.size());
+            while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+                // Read the whole file
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE
+                    || buffer.getInt() != magic
+                    || buffer.getInt() != formatVersion) {
+                throw new IOException("Not a " + description + ": " + path);
+            }
+            return buffer;
+        }
+    }
+
+    /**
+     * Method to write a record framed by its length and checksum.
+     *
+     * @param out file to append to
+     * @param record record to write
+     * @throws IOException if the record cannot be written
+     */
+    static void writeRecord(
+            @NotNull final FileChannel out,
+            @NotNull final byte[] record
+    ) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(frame(record));
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Method to write a record framed by its length and checksum to a
+     * buffer, so several records can be written to a file at once.
+     *
+     * @param out buffer to append to
+     * @param record record to write
+     */
+    static void writeRecord(
+            @NotNull final ByteArrayOutputStream out,
+            @NotNull final byte[] record
+    ) {
+        final byte[] framed = frame(record);
+        out.write(framed, 0, framed.length);
+    }
+
+    private static byte[] frame(@NotNull final byte[] record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(record.length + 8);
+        buffer.putInt(record.length).put(record).putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Method to read the next record from a buffer.
+     *
+     * @param buffer buffer positioned at the start of a record
+     * @return record, or null at the end of the file or at an incomplete or damaged record
+     */
+    static byte[] readRecord(@NotNull final ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        final int length = buffer.getInt();
+        if (length <= 0 || buffer.remaining() < length + 4) {
+            return null;
+        }
+        final byte[] record = new byte[length];
+        buffer.get(record);
+        final CRC32 crc = new CRC32();
+        crc.update(record, 0, length);
+        if (buffer.getInt() != (int) crc.getValue()) {
+            return null;
+        }
+        return record;
+    }
+}
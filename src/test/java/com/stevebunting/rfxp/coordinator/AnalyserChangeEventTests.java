@@ -0,0 +1,116 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Change notifications...")
+class AnalyserChangeEventTests {
+    Coordination coordination;
+    Equipment equipment;
+    BlockingQueue<AnalyserChangeEvent> events;
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        coordination = new Coordination();
+        equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(610.0, equipment);
+        events = new LinkedBlockingQueue<>();
+        coordination.addChangeListener(events::add);
+    }
+
+    private AnalyserChangeEvent nextEvent() throws InterruptedException {
+        final AnalyserChangeEvent event = events.poll(5, TimeUnit.SECONDS);
+        assertNotNull(event);
+        return event;
+    }
+
+    @DisplayName("report an added channel and its conflicts")
+    @Test
+    final void testReportAddedChannel() throws InvalidFrequencyException, InterruptedException {
+        final int id = coordination.addChannel(606.1, equipment);
+
+        final AnalyserChangeEvent event = nextEvent();
+        assertEquals(coordination.getSnapshot().getVersion(), event.getVersion());
+        assertEquals(1, event.getChannelsAdded().size());
+        assertSame(coordination.getChannelById(id), event.getChannelsAdded().get(0));
+        assertEquals(0, event.getChannelsRemoved().size());
+        assertEquals(2, event.getConflictsAdded().size());
+        assertTrue(event.getChannelsChanged().contains(coordination.getChannelById(0)));
+        assertEquals(19, event.getIntermodDelta());
+
+        assertEquals(1, event.getValidityChanges().size());
+        final AnalyserChangeEvent.ValidityChange change = event.getValidityChanges().get(0);
+        assertSame(coordination.getChannelById(0), change.getChannel());
+        assertEquals(Channel.Validity.VALID, change.getBefore());
+        assertEquals(Channel.Validity.INVALID, change.getAfter());
+    }
+
+    @DisplayName("deliver events of every coordination on one thread")
+    @Test
+    final void testSharedNotificationThread() throws InvalidFrequencyException, InterruptedException {
+        final BlockingQueue<Thread> threads = new LinkedBlockingQueue<>();
+        coordination.addChangeListener((final AnalyserChangeEvent event) -> threads.add(Thread.currentThread()));
+        final Coordination other = new Coordination();
+        other.addChangeListener((final AnalyserChangeEvent event) -> threads.add(Thread.currentThread()));
+
+        coordination.addChannel(611.0, equipment);
+        other.addChannel(611.0, equipment);
+        final Thread first = threads.poll(5, TimeUnit.SECONDS);
+        final Thread second = threads.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertSame(first, second);
+        assertTrue(first.isDaemon());
+    }
+
+    @DisplayName("report an updated channel as changed")
+    @Test
+    final void testReportUpdatedChannel() throws InvalidFrequencyException, InterruptedException {
+        coordination.updateChannel(1, 606.1);
+        AnalyserChangeEvent event = nextEvent();
+        assertEquals(0, event.getChannelsAdded().size());
+        assertEquals(0, event.getChannelsRemoved().size());
+        assertEquals(2, event.getChannelsChanged().size());
+        assertEquals(2, event.getValidityChanges().size());
+        assertEquals(0, event.getIntermodDelta());
+
+        coordination.updateChannel(1, 610.0);
+        event = nextEvent();
+        assertEquals(2, event.getConflictsRemoved().size());
+        assertEquals(0, event.getConflictsAdded().size());
+        for (AnalyserChangeEvent.ValidityChange change : event.getValidityChanges()) {
+            assertEquals(Channel.Validity.INVALID, change.getBefore());
+            assertEquals(Channel.Validity.VALID, change.getAfter());
+        }
+    }
+
+    @DisplayName("report a removed channel")
+    @Test
+    final void testReportRemovedChannel() throws InterruptedException {
+        final Channel channel = coordination.getChannelById(0);
+        coordination.removeChannel(0);
+
+        final AnalyserChangeEvent event = nextEvent();
+        assertEquals(1, event.getChannelsRemoved().size());
+        assertSame(channel, event.getChannelsRemoved().get(0));
+        assertEquals(-8, event.getIntermodDelta());
+    }
+
+    @DisplayName("stop after the listener is removed")
+    @Test
+    final void testStopAfterListenerRemoved() throws InvalidFrequencyException, InterruptedException {
+        final AnalyserListener listener = (AnalyserChangeEvent event) -> {};
+        coordination.addChangeListener(listener);
+        assertTrue(coordination.removeChangeListener(listener));
+        assertFalse(coordination.removeChangeListener(listener));
+
+        coordination.addChannel(620.0, equipment);
+        nextEvent();
+        assertNull(events.poll(100, TimeUnit.MILLISECONDS));
+    }
+}
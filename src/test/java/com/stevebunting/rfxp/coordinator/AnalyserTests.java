@@ -331,4 +331,113 @@ class AnalyserTests {
         assertEquals(1, analyser.getNumIMConflicts());
         assertEquals(1, analyser.getConflictList().size());
     }
+
+    @DisplayName("publish a new snapshot version after each write")
+    @Test
+    final void testPublishSnapshotAfterWrite() throws InvalidFrequencyException {
+        final AnalyserSnapshot emptySnapshot = analyser.getSnapshot();
+        assertEquals(0, emptySnapshot.getNumChannels());
+
+        Channel ch1 = new Channel(null, 606.0, equipment);
+        analyser.addChannel(ch1);
+        analyser.addChannel(new Channel(null, 606.3, equipment));
+        final AnalyserSnapshot snapshot = analyser.getSnapshot();
+
+        assertTrue(snapshot.getVersion() > emptySnapshot.getVersion());
+        assertEquals(0, emptySnapshot.getNumChannels());
+        assertEquals(2, snapshot.getNumChannels());
+        assertEquals(analyser.getIntermodStore().size(), snapshot.getNumIntermods());
+        assertEquals(analyser.getConflictList().size(), snapshot.getNumConflicts());
+        assertEquals(analyser.getNumChannelConflicts(), snapshot.getNumConflictsOfType(Conflict.Type.CHANNEL_SPACING));
+        assertEquals(analyser.getValidChannels(), snapshot.getValidChannels());
+    }
+
+    @DisplayName("leave published snapshots unchanged by later writes")
+    @Test
+    final void testSnapshotUnchangedByLaterWrites() throws InvalidFrequencyException {
+        Channel ch1 = new Channel(null, 606.0, equipment);
+        Channel ch2 = new Channel(null, 606.2, equipment);
+        analyser.addChannel(ch1);
+        analyser.addChannel(ch2);
+        final AnalyserSnapshot snapshot = analyser.getSnapshot();
+        final int numIntermods = snapshot.getNumIntermods();
+        final int numConflicts = snapshot.getNumConflicts();
+
+        ch2.setFreq(640.0);
+        analyser.updateChannel(ch2);
+        analyser.removeChannel(ch1);
+
+        assertEquals(2, snapshot.getNumChannels());
+        assertEquals(606200, snapshot.getChannelFrequency(1));
+        assertEquals(Channel.Validity.INVALID, snapshot.getChannelValidity(1));
+        assertEquals(numIntermods, snapshot.getNumIntermods());
+        assertEquals(numConflicts, snapshot.getNumConflicts());
+        assertEquals(1, analyser.getSnapshot().getNumChannels());
+        assertEquals(0, analyser.getSnapshot().getNumConflicts());
+    }
+
+    @DisplayName("give readers the previous snapshot without waiting for a write")
+    @Test
+    final void testReadDuringWrite() throws InvalidFrequencyException, InterruptedException {
+        analyser.addChannel(new Channel(null, 606.0, equipment));
+        final AnalyserSnapshot before = analyser.getSnapshot();
+
+        analyser.startBatch();
+        analyser.addChannel(new Channel(null, 606.3, equipment));
+        final AnalyserSnapshot[] read = new AnalyserSnapshot[1];
+        final Thread reader = new Thread(() -> read[0] = analyser.getSnapshot());
+        reader.start();
+        reader.join(10000);
+        assertSame(before, read[0]);
+        assertSame(before, analyser.getSnapshot());
+        analyser.endBatch();
+
+        assertEquals(2, analyser.getSnapshot().getNumChannels());
+        assertEquals(1, before.getNumChannels());
+    }
+
+    @DisplayName("keep the ID counter and calculations of a snapshot")
+    @Test
+    final void testSnapshotSettings() throws InvalidFrequencyException {
+        analyser.addChannel(new Channel(4, 606.0, equipment));
+        final AnalyserSnapshot snapshot = analyser.getSnapshot();
+        assertEquals(5, snapshot.getIdCounter());
+        assertTrue(snapshot.getCalculations().getIM3t3o());
+
+        analyser.getCalculations().setIM3t3o(false);
+        analyser.calculationsChanged();
+        analyser.setIdCounter(9);
+
+        assertEquals(5, snapshot.getIdCounter());
+        assertTrue(snapshot.getCalculations().getIM3t3o());
+        assertEquals(9, analyser.getSnapshot().getIdCounter());
+        assertFalse(analyser.getSnapshot().getCalculations().getIM3t3o());
+        assertEquals(1, analyser.getSnapshot().getNumChannels());
+    }
+
+    @DisplayName("analyse a batch of channels as if added one at a time")
+    @Test
+    final void testAddChannelsMatchesAddChannel() throws InvalidFrequencyException {
+        final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0 };
+        final Analyser incremental = new Analyser();
+        final List<Channel> batch = new ArrayList<>();
+        for (double frequency : frequencies) {
+            incremental.addChannel(new Channel(null, frequency, equipment));
+            batch.add(new Channel(null, frequency, equipment));
+        }
+        analyser.addChannel(batch.remove(0));
+        analyser.addChannels(batch);
+
+        assertEquals(incremental.getIntermodStore().size(), analyser.getIntermodStore().size());
+        TestHelpers.assertIsSorted(analyser.getIntermodStore().getIntermodsArray());
+        assertEquals(incremental.getConflictList().size(), analyser.getConflictList().size());
+        assertEquals(incremental.getNumChannelConflicts(), analyser.getNumChannelConflicts());
+        assertEquals(incremental.getNumIMConflicts(), analyser.getNumIMConflicts());
+        assertEquals(incremental.getValidChannels(), analyser.getValidChannels());
+        for (int i = 0; i < frequencies.length; i++) {
+            assertEquals(incremental.getChannelList().get(i).getNumConflicts(),
+                    analyser.getChannelList().get(i).getNumConflicts());
+        }
+        assertThrows(IllegalArgumentException.class, () -> analyser.addChannels(null));
+    }
 }
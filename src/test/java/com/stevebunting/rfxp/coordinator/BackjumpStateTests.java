@@ -0,0 +1,82 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Backjump state...")
+class BackjumpStateTests {
+    final Range range = new Range(606000, 614000, "Range");
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+    List<ChannelGeneratorWrapper> wrappers;
+    BackjumpState state;
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        wrappers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Channel channel = new Channel(i, 606 + i, equipment);
+            channel.setRange(range);
+            final ChannelGeneratorWrapper wrapper = new ChannelGeneratorWrapper(channel);
+            wrapper.getPossibleFrequencies(new ArrayList<>(), IntermodStore.create(IntermodStore.Storage.HEAP));
+            wrapper.setTestFrequency(false);
+            wrappers.add(wrapper);
+        }
+        state = new BackjumpState(wrappers);
+        for (int level = 0; level < wrappers.size(); level++) {
+            state.startLevel(level);
+        }
+    }
+
+    private Channel channel(final int level) {
+        return wrappers.get(level).getChannel();
+    }
+
+    @DisplayName("jump back to the most recent culprit")
+    @Test
+    final void testJumpsToMostRecentCulprit() {
+        state.addCulprit(3, channel(0));
+        state.addCulprit(3, new Intermod(Intermod.Type.IM_2T3O, channel(0), channel(1), null));
+        assertEquals(1, state.fail(3));
+        assertEquals(1, state.getBackjumpLevel());
+
+        // The rest of the conflict set passes to the level jumped back to
+        assertEquals(0, state.fail(1));
+    }
+
+    @DisplayName("backtrack chronologically without culprits among placed channels")
+    @Test
+    final void testChronologicalBacktracking() {
+        state.addCulprit(2, channel(3));
+        assertEquals(1, state.fail(2));
+        assertEquals(-1, state.fail(0));
+    }
+
+    @DisplayName("blame every level up to an interchangeable channel")
+    @Test
+    final void testSymmetryCulprit() {
+        state.addSymmetryCulprit(3, channel(1));
+        assertEquals(1, state.fail(3));
+        assertEquals(0, state.fail(1));
+    }
+
+    @DisplayName("reject a combination recorded as a nogood")
+    @Test
+    final void testNogood() throws InvalidFrequencyException {
+        state.addCulprit(3, channel(0));
+        state.addCulprit(3, channel(2));
+        assertEquals(2, state.fail(3));
+        assertEquals(1, state.getNumNogoods());
+
+        state.startLevel(2);
+        assertTrue(state.isNogood(2));
+        assertEquals(0, state.fail(2));
+
+        wrappers.get(2).setTestFrequency(false);
+        state.startLevel(2);
+        assertFalse(state.isNogood(2));
+    }
+}
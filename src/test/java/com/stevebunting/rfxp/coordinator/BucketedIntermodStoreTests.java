@@ -0,0 +1,39 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Bucketed intermod storage...")
+class BucketedIntermodStoreTests {
+    Coordination heap;
+    Coordination bucketed;
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0, 610.3 };
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        heap = new Coordination();
+        bucketed = new Coordination(IntermodStore.Storage.BUCKETED);
+        for (double frequency : frequencies) {
+            heap.addChannel(frequency, equipment);
+            bucketed.addChannel(frequency, equipment);
+        }
+    }
+
+    @DisplayName("drop removed intermods from the lists of the other channels")
+    @Test
+    final void testCompactChannelLists() throws InvalidFrequencyException {
+        final BucketedIntermodStore store = (BucketedIntermodStore) bucketed.getAnalyser().getIntermodStore();
+        for (int i = 0; i < 50; i++) {
+            heap.removeChannel(heap.getChannels()[0].getId());
+            heap.addChannel(611.0 + i * 0.025, equipment);
+            bucketed.removeChannel(bucketed.getChannels()[0].getId());
+            bucketed.addChannel(611.0 + i * 0.025, equipment);
+        }
+
+        assertTrue(store.getNumChannelEntries() <= 4 * store.size());
+        IntermodStoreTests.assertSameAnalysis(heap, bucketed);
+    }
+}
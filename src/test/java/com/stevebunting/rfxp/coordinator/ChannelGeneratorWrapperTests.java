@@ -3,6 +3,8 @@ package com.stevebunting.rfxp.coordinator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
 @DisplayName("Frequency generator...")
@@ -55,4 +57,108 @@ public class ChannelGeneratorWrapperTests {
         ChannelGeneratorWrapper channelGeneratorWrapper = new ChannelGeneratorWrapper(channel);
         assertEquals(0, channelGeneratorWrapper.getMaxPossibleFrequencies());
     }
+
+    @DisplayName("removes frequencies near channels and intermods")
+    @Test
+    final void testGetPossibleFrequencies() throws InvalidFrequencyException {
+        Range range = new Range(606000, 614000, "Range");
+        Equipment equipment = new Equipment("Manufacturer", "Model", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        Analyser analyser = new Analyser();
+        for (double frequency : new double[]{ 606.5, 607.25, 609.0, 612.75 }) {
+            analyser.addChannel(new Channel(null, frequency, equipment));
+        }
+        Channel channel = new Channel(null, 606, equipment);
+        channel.setRange(range);
+        ChannelGeneratorWrapper channelGeneratorWrapper = new ChannelGeneratorWrapper(channel);
+        channelGeneratorWrapper.getPossibleFrequencies(analyser.getChannelList(), analyser.getIntermodStore());
+
+        int expected = 0;
+        for (int frequency = range.getLo(); frequency <= range.getHi(); frequency += 25) {
+            boolean possible = true;
+            for (Channel other : analyser.getChannelList()) {
+                possible &= Math.abs(other.getFreq() - frequency) >= 325;
+            }
+            for (Intermod intermod : analyser.getIntermodStore()) {
+                possible &= Math.abs(intermod.getFreq() - frequency) >= equipment.getSpacing(intermod.getType());
+            }
+            expected += possible ? 1 : 0;
+        }
+        assertEquals(expected, channelGeneratorWrapper.numPossibleFrequencies());
+    }
+
+    @DisplayName("shares possible frequencies between channels with the same equipment and range")
+    @Test
+    final void testSharesPossibleFrequencies() throws InvalidFrequencyException {
+        Range range = new Range(606000, 610000, "Range");
+        Equipment equipment = new Equipment("Manufacturer", "Model", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        Analyser analyser = new Analyser();
+        analyser.addChannel(new Channel(null, 607, equipment));
+        analyser.addChannel(new Channel(null, 608.5, equipment));
+
+        List<ChannelGeneratorWrapper> wrappers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Channel channel = new Channel(null, 606, equipment);
+            channel.setRange(range);
+            wrappers.add(new ChannelGeneratorWrapper(channel));
+        }
+        ChannelGeneratorWrapper.getPossibleFrequencies(wrappers, analyser.getChannelList(), analyser.getIntermodStore());
+
+        ChannelGeneratorWrapper expected = new ChannelGeneratorWrapper(wrappers.get(0).getChannel());
+        expected.getPossibleFrequencies(analyser.getChannelList(), analyser.getIntermodStore());
+        for (ChannelGeneratorWrapper wrapper : wrappers) {
+            assertEquals(expected.numPossibleFrequencies(), wrapper.numPossibleFrequencies());
+        }
+
+        wrappers.get(1).setTestFrequency(false);
+        assertEquals(expected.numPossibleFrequencies() - 1, wrappers.get(1).numPossibleFrequencies());
+        assertEquals(expected.numPossibleFrequencies(), wrappers.get(0).numPossibleFrequencies());
+        assertEquals(expected.numPossibleFrequencies(), wrappers.get(2).numPossibleFrequencies());
+    }
+
+    @DisplayName("excludes frequencies that failed for an interchangeable channel")
+    @Test
+    final void testExcludesFailedFrequencies() throws InvalidFrequencyException {
+        Range range = new Range(606000, 610000, "Range");
+        Equipment equipment = new Equipment("Manufacturer", "Model", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        Analyser analyser = new Analyser();
+
+        List<ChannelGeneratorWrapper> wrappers = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Channel channel = new Channel(null, 606, equipment);
+            channel.setRange(range);
+            wrappers.add(new ChannelGeneratorWrapper(channel));
+        }
+        ChannelGeneratorWrapper.getPossibleFrequencies(wrappers, analyser.getChannelList(), analyser.getIntermodStore());
+        ChannelGeneratorWrapper.breakSymmetry(wrappers);
+        final int numFrequencies = wrappers.get(1).numPossibleFrequencies();
+
+        wrappers.get(0).setTestFrequency(true);
+        wrappers.get(0).excludeProposedFrequency();
+        wrappers.get(1).getPossibleFrequencies(analyser.getChannelList(), analyser.getIntermodStore());
+        assertEquals(numFrequencies - 1, wrappers.get(1).numPossibleFrequencies());
+
+        wrappers.get(0).restoreExcludedFrequencies();
+        wrappers.get(1).getPossibleFrequencies(analyser.getChannelList(), analyser.getIntermodStore());
+        assertEquals(numFrequencies, wrappers.get(1).numPossibleFrequencies());
+    }
+
+    @DisplayName("tries the frequencies nearest the starting frequency first")
+    @Test
+    final void testNearestSelection() throws InvalidFrequencyException {
+        Range range = new Range(606000, 610000, "Range");
+        Equipment equipment = new Equipment("Manufacturer", "Model", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        Analyser analyser = new Analyser();
+        analyser.addChannel(new Channel(null, 608, equipment));
+
+        Channel channel = new Channel(null, 608.1, equipment);
+        channel.setRange(range);
+        ChannelGeneratorWrapper wrapper = new ChannelGeneratorWrapper(channel);
+        wrapper.getPossibleFrequencies(analyser.getChannelList(), analyser.getIntermodStore());
+
+        wrapper.setTestFrequency(ChannelGeneratorWrapper.Selection.NEAREST);
+        assertEquals(608325, (int) wrapper.getProposedFrequency());
+        assertEquals(608325, channel.getFreq());
+        wrapper.setTestFrequency(ChannelGeneratorWrapper.Selection.NEAREST);
+        assertEquals(608350, (int) wrapper.getProposedFrequency());
+    }
 }
@@ -0,0 +1,35 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Concurrent intermod storage...")
+class ConcurrentIntermodStoreTests {
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0, 610.3 };
+
+    @DisplayName("accept intermods from several threads at once")
+    @Test
+    final void testConcurrentAdd() throws InvalidFrequencyException {
+        final Coordination heap = new Coordination();
+        for (double frequency : frequencies) {
+            heap.addChannel(frequency, equipment);
+        }
+        final List<Intermod> intermods = heap.getAnalyser().getIntermodStore().getIntermodList();
+        final IntermodStore store = IntermodStore.create(IntermodStore.Storage.CONCURRENT);
+        assertTrue(store.isConcurrent());
+        IntStream.range(0, intermods.size()).parallel().forEach((final int i) -> store.add(intermods.get(i)));
+
+        assertEquals(intermods.size(), store.size());
+        TestHelpers.assertIsSorted(store.getIntermodsArray());
+        final List<Intermod> found = new ArrayList<>();
+        store.forRange(606500, 607500, found::add);
+        for (Intermod intermod : intermods) {
+            assertEquals(intermod.getFreq() > 606500 && intermod.getFreq() < 607500, found.contains(intermod));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Changes since a version...")
+class CoordinationDeltaTests {
+    Coordination coordination;
+    Equipment equipment;
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        coordination = new Coordination();
+        coordination.enableChangeJournal();
+        equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(610.0, equipment);
+    }
+
+    @DisplayName("increase the version with every edit")
+    @Test
+    final void testVersionIncreases() throws InvalidFrequencyException {
+        final long version = coordination.getVersion();
+        coordination.addChannel(620.0, equipment);
+        assertTrue(coordination.getVersion() > version);
+    }
+
+    @DisplayName("return nothing when the version is current")
+    @Test
+    final void testNoChanges() {
+        final CoordinationDelta delta = coordination.getChangesSince(coordination.getVersion());
+        assertFalse(delta.isFullRefresh());
+        assertEquals(coordination.getVersion(), delta.getToVersion());
+        assertEquals(0, delta.getChannelsChanged().size());
+        assertEquals(0, delta.getChannelsRemoved().size());
+        assertEquals(0, delta.getConflictsAdded().size());
+    }
+
+    @DisplayName("combine the changes of several edits")
+    @Test
+    final void testCombineChanges() throws InvalidFrequencyException {
+        final long version = coordination.getVersion();
+        final int id = coordination.addChannel(606.1, equipment);
+        coordination.updateChannel(1, 630.0);
+
+        final CoordinationDelta delta = coordination.getChangesSince(version);
+        assertFalse(delta.isFullRefresh());
+        assertEquals(3, delta.getChannelsChanged().size());
+        assertTrue(delta.getChannelsChanged().contains(coordination.getChannelById(id)));
+        assertEquals(2, delta.getConflictsAdded().size());
+        assertEquals(0, delta.getConflictsRemoved().size());
+        assertEquals(2, delta.getStatistics().getNumConflicts());
+    }
+
+    @DisplayName("cancel out conflicts added and then removed")
+    @Test
+    final void testCancelConflicts() throws InvalidFrequencyException {
+        final long version = coordination.getVersion();
+        final int id = coordination.addChannel(606.1, equipment);
+        coordination.removeChannel(id);
+
+        final CoordinationDelta delta = coordination.getChangesSince(version);
+        assertEquals(0, delta.getConflictsAdded().size());
+        assertEquals(0, delta.getConflictsRemoved().size());
+        assertEquals(0, delta.getChannelsRemoved().size());
+        assertEquals(1, delta.getChannelsChanged().size());
+        assertSame(coordination.getChannelById(0), delta.getChannelsChanged().get(0));
+    }
+
+    @DisplayName("report a removed channel")
+    @Test
+    final void testRemovedChannel() {
+        final long version = coordination.getVersion();
+        final Channel channel = coordination.getChannelById(1);
+        coordination.removeChannel(1);
+
+        final CoordinationDelta delta = coordination.getChangesSince(version);
+        assertEquals(1, delta.getChannelsRemoved().size());
+        assertSame(channel, delta.getChannelsRemoved().get(0));
+        assertEquals(0, delta.getChannelsChanged().size());
+    }
+
+    @DisplayName("ask for a full refresh while the journal is not enabled")
+    @Test
+    final void testJournalNotEnabled() throws InvalidFrequencyException {
+        final Coordination unjournalled = new Coordination();
+        assertFalse(unjournalled.isChangeJournalEnabled());
+        final long version = unjournalled.getVersion();
+        unjournalled.addChannel(606.0, equipment);
+        assertTrue(unjournalled.getChangesSince(version).isFullRefresh());
+
+        unjournalled.enableChangeJournal();
+        final long enabledVersion = unjournalled.getVersion();
+        unjournalled.addChannel(606.1, equipment);
+        assertTrue(unjournalled.getChangesSince(version).isFullRefresh());
+        assertEquals(2, unjournalled.getChangesSince(enabledVersion).getConflictsAdded().size());
+
+        unjournalled.disableChangeJournal();
+        assertTrue(unjournalled.getChangesSince(enabledVersion).isFullRefresh());
+    }
+
+    @DisplayName("ask for a full refresh once the journal has moved on")
+    @Test
+    final void testFullRefresh() throws InvalidFrequencyException {
+        final long version = coordination.getVersion();
+        for (int i = 0; i <= Coordination.CHANGE_JOURNAL_CAPACITY; i++) {
+            coordination.updateChannel(1, i % 2 == 0 ? 620.0 : 630.0);
+        }
+        assertTrue(coordination.getChangesSince(version).isFullRefresh());
+        assertFalse(coordination.getChangesSince(coordination.getVersion() - 1).isFullRefresh());
+
+        final Coordination fork = coordination.fork();
+        fork.addChannel(640.0, equipment);
+        final long beforeCommit = coordination.getVersion();
+        coordination.commit(fork);
+        assertTrue(coordination.getChangesSince(beforeCommit).isFullRefresh());
+    }
+}
@@ -0,0 +1,117 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Coordination edit queue...")
+class CoordinationEditQueueTests {
+    Coordination coordination;
+    Equipment equipment;
+    List<Runnable> writerTasks;
+    CoordinationEditQueue editQueue;
+
+    @BeforeEach
+    final void setUp() {
+        coordination = new Coordination();
+        equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+        writerTasks = new ArrayList<>();
+        editQueue = new CoordinationEditQueue(coordination, writerTasks::add);
+    }
+
+    private void runWriter() {
+        while (!writerTasks.isEmpty()) {
+            writerTasks.remove(0).run();
+        }
+    }
+
+    @DisplayName("coalesces consecutive frequency updates to a channel")
+    @Test
+    final void testCoalescesFrequencyUpdates() throws InvalidFrequencyException, ExecutionException, InterruptedException {
+        final int id = coordination.addChannel(606, equipment);
+        final long versionBefore = coordination.getSnapshot().getVersion();
+
+        final List<CompletableFuture<AnalyserSnapshot>> results = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            results.add(editQueue.updateChannel(id, 606 + i * 0.025));
+        }
+        assertEquals(1, writerTasks.size());
+        assertEquals(606000, coordination.getChannelById(id).getFreq());
+
+        runWriter();
+
+        assertEquals(607000, coordination.getChannelById(id).getFreq());
+        assertEquals(versionBefore + 1, coordination.getSnapshot().getVersion());
+        for (CompletableFuture<AnalyserSnapshot> result : results) {
+            assertSame(coordination.getSnapshot(), result.get());
+        }
+    }
+
+    @DisplayName("batches independent edits into one snapshot")
+    @Test
+    final void testBatchesIndependentEdits() throws InvalidFrequencyException, ExecutionException, InterruptedException {
+        final int id1 = coordination.addChannel(606, equipment);
+        final int id2 = coordination.addChannel(607, equipment);
+        final long versionBefore = coordination.getSnapshot().getVersion();
+
+        editQueue.updateChannel(id1, 608.0);
+        editQueue.updateChannel(id2, "Renamed");
+        editQueue.removeChannel(id2);
+        final CompletableFuture<CoordinationEditQueue.AddedChannel> result = editQueue.addChannel(610, equipment);
+        runWriter();
+
+        assertEquals(versionBefore + 1, result.get().getSnapshot().getVersion());
+        assertEquals(2, result.get().getSnapshot().getNumChannels());
+        assertEquals(608000, coordination.getChannelById(id1).getFreq());
+        assertNull(coordination.getChannelById(id2));
+        assertEquals(610000, coordination.getChannelById(result.get().getId()).getFreq());
+    }
+
+    @DisplayName("does not coalesce frequency updates across other edits to the channel")
+    @Test
+    final void testDoesNotCoalesceAcrossOtherEdits() throws InvalidFrequencyException {
+        final int id = coordination.addChannel(606, equipment);
+        final Equipment otherEquipment = new Equipment("Test", "Other", 5, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+
+        final CompletableFuture<AnalyserSnapshot> first = editQueue.updateChannel(id, 606.5);
+        editQueue.updateChannel(id, otherEquipment);
+        final CompletableFuture<AnalyserSnapshot> second = editQueue.updateChannel(id, 606.505);
+        assertNotSame(first, second);
+
+        runWriter();
+        assertEquals(606505, coordination.getChannelById(id).getFreq());
+        assertSame(otherEquipment, coordination.getChannelById(id).getEquipment());
+    }
+
+    @DisplayName("completes invalid edits exceptionally without affecting the batch")
+    @Test
+    final void testCompletesInvalidEditsExceptionally() throws InvalidFrequencyException {
+        final int id = coordination.addChannel(606, equipment);
+
+        final CompletableFuture<AnalyserSnapshot> invalid = editQueue.updateChannel(id, 606.001);
+        final CompletableFuture<CoordinationEditQueue.AddedChannel> valid = editQueue.addChannel(610, equipment);
+        runWriter();
+
+        assertTrue(invalid.isCompletedExceptionally());
+        assertFalse(valid.isCompletedExceptionally());
+        assertEquals(2, coordination.getNumChannels());
+    }
+
+    @DisplayName("applies edits on its own writer thread")
+    @Test
+    final void testAppliesEditsOnWriterThread() throws InvalidFrequencyException, ExecutionException, InterruptedException {
+        final int id = coordination.addChannel(606, equipment);
+        try (CoordinationEditQueue threadedQueue = new CoordinationEditQueue(coordination)) {
+            for (int i = 1; i <= 100; i++) {
+                threadedQueue.updateChannel(id, 606 + i * 0.025);
+            }
+            final AnalyserSnapshot snapshot = threadedQueue.flush().get();
+            assertEquals(608500, snapshot.getChannelFrequency(0));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Coordination file...")
+class CoordinationFileTests {
+    Path path;
+    Coordination coordination;
+    final Range range = new Range(606000, 614000, "A");
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50,
+            Equipment.FrontEndType.TRACKING, 100000, new Range[]{ range });
+
+    @BeforeEach
+    final void setUp() throws IOException, InvalidFrequencyException {
+        path = Files.createTempFile("coordination", ".rfxp");
+        coordination = new Coordination();
+        coordination.setCalculate2t9o(false);
+        for (double frequency : new double[]{ 606.0, 606.3, 606.775, 607.1, 607.525, 608.35, 609.0, 606.1 }) {
+            coordination.addChannel(frequency, equipment);
+        }
+        coordination.getChannelById(2).setRange(range);
+        coordination.updateChannel(3, "Lead vocal");
+        coordination.removeChannel(4);
+    }
+
+    @AfterEach
+    final void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @DisplayName("save channel settings as they were in the snapshot")
+    @Test
+    final void testWriteFromSnapshot() throws IOException {
+        final Channel channel = coordination.getChannelById(0);
+        channel.setName("Unpublished");
+        channel.setRange(range);
+        CoordinationFile.write(path, coordination);
+        final Coordination opened = CoordinationFile.read(path);
+
+        assertEquals("Channel 1", opened.getChannelById(0).getName());
+        assertNull(opened.getChannelById(0).getRange());
+        assertEquals("Lead vocal", opened.getChannelById(3).getName());
+        assertEquals(range, opened.getChannelById(2).getRange());
+    }
+
+    @DisplayName("reopen the saved analysis without recalculating")
+    @Test
+    final void testWriteAndRead() throws IOException {
+        CoordinationFile.write(path, coordination);
+        final Coordination opened = CoordinationFile.read(path);
+
+        assertEquals(coordination.getNumChannels(), opened.getNumChannels());
+        assertEquals(coordination.getNumIntermods(), opened.getNumIntermods());
+        assertEquals(coordination.getNumConflicts(), opened.getNumConflicts());
+        assertFalse(opened.getCalculate2t9o());
+        assertTrue(opened.getCalculate3t3o());
+        TestHelpers.assertIsSorted(opened.getAnalyser().getIntermodStore().getIntermodsArray());
+        for (Channel channel : coordination.getChannels()) {
+            final Channel openedChannel = opened.getChannelById(channel.getId());
+            assertEquals(channel.getFreq(), openedChannel.getFreq());
+            assertEquals(channel.getName(), openedChannel.getName());
+            assertEquals(channel.getRange(), openedChannel.getRange());
+            assertEquals(channel.getValidity(), openedChannel.getValidity());
+            assertEquals(channel.getNumConflicts(), openedChannel.getNumConflicts());
+        }
+        assertEquals(coordination.getStatistics().getNumIMConflicts(Intermod.Type.IM_3T3O),
+                opened.getStatistics().getNumIMConflicts(Intermod.Type.IM_3T3O));
+        assertNull(opened.getChannelById(4));
+    }
+
+    @DisplayName("continue editing an opened coordination")
+    @Test
+    final void testEditAfterRead() throws IOException, InvalidFrequencyException {
+        CoordinationFile.write(path, coordination);
+        final Coordination opened = CoordinationFile.read(path);
+
+        assertEquals(8, opened.addChannel(610.5, equipment));
+        coordination.addChannel(610.5, equipment);
+        opened.removeChannel(0);
+        coordination.removeChannel(0);
+        assertEquals(coordination.getNumIntermods(), opened.getNumIntermods());
+        assertEquals(coordination.getNumConflicts(), opened.getNumConflicts());
+        assertEquals(coordination.getStatistics().getNumChannels(Channel.Validity.VALID),
+                opened.getStatistics().getNumChannels(Channel.Validity.VALID));
+    }
+
+    @DisplayName("open into off-heap intermod storage")
+    @Test
+    final void testReadOffHeap() throws IOException {
+        CoordinationFile.write(path, coordination);
+        final Coordination opened = CoordinationFile.read(path, IntermodStore.Storage.OFF_HEAP);
+
+        assertEquals(IntermodStore.Storage.OFF_HEAP, opened.getAnalyser().getIntermodStorage());
+        assertEquals(coordination.getNumIntermods(), opened.getNumIntermods());
+        assertEquals(coordination.getNumConflicts(), opened.getNumConflicts());
+        opened.removeChannel(0);
+        coordination.removeChannel(0);
+        assertEquals(coordination.getNumIntermods(), opened.getNumIntermods());
+        assertEquals(coordination.getNumConflicts(), opened.getNumConflicts());
+    }
+
+    @DisplayName("reject a file that is not a coordination file")
+    @Test
+    final void testRejectOtherFile() throws IOException {
+        Files.write(path, new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 });
+        assertThrows(IOException.class, () -> CoordinationFile.read(path));
+    }
+
+    @DisplayName("reject an incomplete file")
+    @Test
+    final void testRejectIncompleteFile() throws IOException {
+        CoordinationFile.write(path, coordination);
+        final byte[] bytes = Files.readAllBytes(path);
+        final byte[] truncated = new byte[bytes.length / 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+        Files.write(path, truncated);
+        assertThrows(IOException.class, () -> CoordinationFile.read(path));
+    }
+}
@@ -0,0 +1,170 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Coordination log...")
+class CoordinationLogTests {
+    Path directory;
+    Path path;
+    Coordination coordination;
+    final Range range = new Range(606000, 614000, "A");
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50,
+            Equipment.FrontEndType.TRACKING, 100000, new Range[]{ range });
+
+    @BeforeEach
+    final void setUp() throws IOException {
+        directory = Files.createTempDirectory("coordination-log");
+        path = directory.resolve("show.log");
+        coordination = new Coordination();
+    }
+
+    @AfterEach
+    final void tearDown() throws IOException {
+        if (coordination.getLog() != null) {
+            coordination.getLog().close();
+        }
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(directory);
+    }
+
+    @DisplayName("recover every logged edit")
+    @Test
+    final void testRecoverEdits() throws IOException, InvalidFrequencyException {
+        coordination.addChannel(606.0, equipment);
+        CoordinationLog.create(path, coordination);
+        coordination.setCalculate3t3o(false);
+        coordination.addChannel(606.1, equipment);
+        final int id = coordination.addChannel(612.0, equipment);
+        coordination.updateChannel(1, 608.0);
+        coordination.updateChannel(0, "Lead vocal");
+        coordination.getChannelById(0).setRange(range);
+        coordination.updateChannel(0, 606.5);
+        coordination.removeChannel(id);
+        coordination.getLog().close();
+
+        final Coordination recovered = CoordinationLog.recover(path);
+        try {
+            assertEquals(2, recovered.getNumChannels());
+            assertEquals(606500, recovered.getChannelById(0).getFreq());
+            assertEquals("Lead vocal", recovered.getChannelById(0).getName());
+            assertEquals(range, recovered.getChannelById(0).getRange());
+            assertEquals(608000, recovered.getChannelById(1).getFreq());
+            assertEquals(equipment, recovered.getChannelById(1).getEquipment());
+            assertNull(recovered.getChannelById(id));
+            assertFalse(recovered.getCalculate3t3o());
+            assertEquals(coordination.getNumIntermods(), recovered.getNumIntermods());
+            assertEquals(coordination.getNumConflicts(), recovered.getNumConflicts());
+
+            // Removed IDs are not reused
+            assertEquals(id + 1, recovered.addChannel(620.0, equipment));
+        } finally {
+            recovered.getLog().close();
+        }
+    }
+
+    @DisplayName("ignore a damaged final record")
+    @Test
+    final void testIgnoreDamagedRecord() throws IOException, InvalidFrequencyException {
+        CoordinationLog.create(path, coordination);
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(610.0, equipment);
+        coordination.getLog().close();
+
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        final Coordination recovered = CoordinationLog.recover(path);
+        recovered.getLog().close();
+        assertEquals(1, recovered.getNumChannels());
+        assertEquals(606000, recovered.getChannelById(0).getFreq());
+    }
+
+    @DisplayName("checkpoint after the interval")
+    @Test
+    final void testCheckpoint() throws IOException, InvalidFrequencyException {
+        coordination.setCalculate3t3o(false);
+        CoordinationLog.create(path, coordination, 10);
+        final int id = coordination.addChannel(606.0, equipment);
+        long sizeBeforeCheckpoint = 0;
+        for (int i = 0; i < 25; i++) {
+            coordination.updateChannel(id, 606.0 + i * 0.025);
+            if (i == 7) {
+                sizeBeforeCheckpoint = Files.size(path);
+            }
+        }
+
+        // Nine records were written before the first checkpoint, six after the second
+        assertTrue(Files.size(path) < sizeBeforeCheckpoint);
+        coordination.getLog().close();
+
+        final Coordination recovered = CoordinationLog.recover(path);
+        recovered.getLog().close();
+        assertEquals(606600, recovered.getChannelById(id).getFreq());
+    }
+
+    @DisplayName("recover with the logged intermod storage")
+    @Test
+    final void testRecoverStorage() throws IOException, InvalidFrequencyException {
+        coordination = new Coordination(IntermodStore.Storage.OFF_HEAP);
+        CoordinationLog.create(path, coordination);
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(606.1, equipment);
+        coordination.getLog().close();
+
+        final Coordination recovered = CoordinationLog.recover(path);
+        recovered.getLog().close();
+        assertEquals(IntermodStore.Storage.OFF_HEAP, recovered.getAnalyser().getIntermodStorage());
+        assertEquals(coordination.getNumIntermods(), recovered.getNumIntermods());
+    }
+
+    @DisplayName("write a batch of edits when the batch ends")
+    @Test
+    final void testBatch() throws IOException, InvalidFrequencyException {
+        CoordinationLog.create(path, coordination);
+        final long sizeBeforeBatch = Files.size(path);
+        coordination.startBatch();
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(608.0, equipment);
+        coordination.updateChannel(0, 607.0);
+        assertEquals(sizeBeforeBatch, Files.size(path));
+        coordination.endBatch();
+        assertTrue(Files.size(path) > sizeBeforeBatch);
+        coordination.getLog().close();
+
+        final Coordination recovered = CoordinationLog.recover(path);
+        recovered.getLog().close();
+        assertEquals(2, recovered.getNumChannels());
+        assertEquals(607000, recovered.getChannelById(0).getFreq());
+    }
+
+    @DisplayName("leave the coordination unchanged when an edit cannot be logged")
+    @Test
+    final void testEditNotLogged() throws IOException, InvalidFrequencyException {
+        CoordinationLog.create(path, coordination);
+        final int id = coordination.addChannel(606.0, equipment);
+        final char[] chars = new char[70000];
+        Arrays.fill(chars, 'A');
+        final String name = new String(chars);
+
+        // The name is too long for a record, so the edit fails to be logged
+        assertThrows(UncheckedIOException.class, () -> coordination.updateChannel(id, name));
+        assertFalse(name.equals(coordination.getChannelById(id).getName()));
+    }
+
+    @DisplayName("reject a file that is not a log")
+    @Test
+    final void testRejectOtherFile() throws IOException {
+        Files.write(path, new byte[]{ 1, 2, 3 });
+        assertThrows(IOException.class, () -> CoordinationLog.recover(path));
+    }
+}
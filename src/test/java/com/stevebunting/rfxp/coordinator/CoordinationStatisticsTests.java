@@ -0,0 +1,108 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Coordination statistics...")
+class CoordinationStatisticsTests {
+    Coordination coordination;
+    Range range;
+    Equipment equipment;
+    Equipment otherEquipment;
+
+    @BeforeEach
+    final void setUp() {
+        coordination = new Coordination();
+        range = new Range(606000, 614000, "Channel 38");
+        equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000, new Range[]{range});
+        otherEquipment = new Equipment("Test", "Other", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    }
+
+    private void assertMatchesConflictList(CoordinationStatistics statistics) {
+        int channelConflicts = 0;
+        int imConflicts = 0;
+        for (Conflict conflict : coordination.getAnalyser().getConflictList()) {
+            if (conflict.getType() == Conflict.Type.CHANNEL_SPACING) {
+                channelConflicts++;
+            } else if (conflict.getType() == Conflict.Type.INTERMOD_SPACING) {
+                imConflicts++;
+            }
+        }
+        assertEquals(coordination.getAnalyser().getConflictList().size(), statistics.getNumConflicts());
+        assertEquals(channelConflicts, statistics.getNumConflicts(Conflict.Type.CHANNEL_SPACING));
+        assertEquals(imConflicts, statistics.getNumIMConflicts());
+    }
+
+    @DisplayName("count conflicts by type and order")
+    @Test
+    final void testCountsByTypeAndOrder() throws InvalidFrequencyException {
+        double[] frequencies = new double[]{ 606.0, 606.2, 606.775, 607.1, 607.525, 608.175, 610.3 };
+        for (Double frequency : frequencies) {
+            coordination.addChannel(frequency, equipment);
+        }
+        final CoordinationStatistics statistics = coordination.getStatistics();
+        assertMatchesConflictList(statistics);
+        assertEquals(statistics.getNumIMConflicts(Intermod.Type.IM_2T3O) + statistics.getNumIMConflicts(Intermod.Type.IM_3T3O),
+                statistics.getNumIMConflictsOfOrder(3));
+        assertEquals(statistics.getNumIMConflicts(Intermod.Type.IM_2T5O), statistics.getNumIMConflictsOfOrder(5));
+        assertEquals(coordination.getAnalyser().getValidChannels(), statistics.getNumChannels(Channel.Validity.VALID));
+        assertEquals(frequencies.length, statistics.getNumChannels(Channel.Validity.VALID)
+                + statistics.getNumChannels(Channel.Validity.INVALID));
+
+        coordination.removeChannel(1);
+        coordination.updateChannel(3, 612.0);
+        assertMatchesConflictList(coordination.getStatistics());
+    }
+
+    @DisplayName("count conflicts by equipment and range")
+    @Test
+    final void testCountsByEquipmentAndRange() throws InvalidFrequencyException {
+        final int id1 = coordination.addChannel(606.0, equipment);
+        coordination.getChannelById(id1).setRange(range);
+        coordination.updateChannel(id1, 606.0);
+        coordination.addChannel(606.1, otherEquipment);
+
+        CoordinationStatistics statistics = coordination.getStatistics();
+        assertEquals(1, statistics.getNumConflicts(equipment));
+        assertEquals(1, statistics.getNumConflicts(otherEquipment));
+        assertEquals(1, statistics.getNumConflicts(range));
+
+        coordination.removeChannel(id1);
+        statistics = coordination.getStatistics();
+        assertEquals(0, statistics.getNumConflicts(equipment));
+        assertEquals(0, statistics.getNumConflicts(otherEquipment));
+        assertEquals(0, statistics.getNumConflicts(range));
+    }
+
+    @DisplayName("rank the worst affected channels")
+    @Test
+    final void testWorstAffectedChannels() throws InvalidFrequencyException {
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(606.1, equipment);
+        coordination.addChannel(606.2, equipment);
+        coordination.addChannel(640.0, equipment);
+
+        final List<Channel> worstAffected = coordination.getStatistics().getWorstAffectedChannels(2);
+        assertEquals(2, worstAffected.size());
+        assertTrue(worstAffected.get(0).getNumConflicts() >= worstAffected.get(1).getNumConflicts());
+        for (Channel channel : coordination.getChannels()) {
+            assertTrue(worstAffected.get(0).getNumConflicts() >= channel.getNumConflicts());
+        }
+        assertEquals(3, coordination.getStatistics().getWorstAffectedChannels(10).size());
+    }
+
+    @DisplayName("are not affected by testing a channel")
+    @Test
+    final void testUnaffectedByTestChannel() throws InvalidFrequencyException {
+        coordination.addChannel(606.0, equipment);
+        coordination.addChannel(607.0, equipment);
+        coordination.testChannel(606.1, equipment);
+
+        assertEquals(2, coordination.getAnalyser().getValidChannels());
+        assertEquals(0, coordination.getStatistics().getNumConflicts());
+        assertEquals(0, coordination.getChannelById(0).getNumConflicts());
+    }
+}
@@ -4,6 +4,8 @@ import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.*;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @DisplayName("Coordination Class...")
 class CoordinationTests {
@@ -270,6 +272,229 @@ class CoordinationTests {
         }
     }
 
+    @DisplayName("maintains sorted views by...")
+    @Nested
+    class CoordinationSortedViewTests {
+
+        final double[] frequencies = new double[]{ 450, 440, 780, 900, 55, 350, 650, 490 };
+        final String[] names = new String[] { "d", "f", "a", "g", "e", "b", "c", "h" };
+
+        @BeforeEach
+        void setUp() throws InvalidFrequencyException {
+            coordination = new Coordination();
+            for (int i = 0; i < frequencies.length; i++) {
+                int id = coordination.addChannel(frequencies[i], equipmentProfiles.get(4));
+                coordination.updateChannel(id, names[i]);
+            }
+        }
+
+        @DisplayName("returning pages in each sort order")
+        @Test
+        final void testGetPages() {
+            Channel[] page = coordination.getChannels(Coordination.SortBy.FREQUENCY, 2, 5);
+            assertEquals(3, page.length);
+            assertEquals(440000, page[0].getFreq());
+            assertEquals(450000, page[1].getFreq());
+            assertEquals(490000, page[2].getFreq());
+
+            page = coordination.getChannels(Coordination.SortBy.NAME, 0, 3);
+            assertEquals("a", page[0].getName());
+            assertEquals("b", page[1].getName());
+            assertEquals("c", page[2].getName());
+
+            page = coordination.getChannels(Coordination.SortBy.ID, 6, 100);
+            assertEquals(2, page.length);
+            assertEquals(6, page[0].getId());
+            assertEquals(0, coordination.getChannels(Coordination.SortBy.ID, 10, 20).length);
+        }
+
+        @DisplayName("returning channels in a frequency range")
+        @Test
+        final void testGetChannelsInRange() {
+            Channel[] channels = coordination.getChannelsInRange(440, 650);
+            assertEquals(4, channels.length);
+            assertEquals(440000, channels[0].getFreq());
+            assertEquals(650000, channels[3].getFreq());
+            assertEquals(0, coordination.getChannelsInRange(100, 300).length);
+        }
+
+        @DisplayName("keeping order through edits")
+        @Test
+        final void testKeepsOrderThroughEdits() throws InvalidFrequencyException {
+            coordination.updateChannel(4, 950.0);
+            coordination.updateChannel(2, "z");
+            coordination.removeChannel(0);
+            coordination.addChannel(600, equipmentProfiles.get(4));
+
+            Channel[] byFrequency = coordination.getChannels(Coordination.SortBy.FREQUENCY, 0, 100);
+            assertEquals(8, byFrequency.length);
+            for (int i = 0; i < byFrequency.length - 1; i++) {
+                assertTrue(byFrequency[i].getFreq() <= byFrequency[i + 1].getFreq());
+            }
+            assertEquals(950000, byFrequency[7].getFreq());
+
+            Channel[] byName = coordination.getChannels(Coordination.SortBy.NAME, 0, 100);
+            assertEquals("z", byName[7].getName());
+            assertNull(coordination.getChannelById(0));
+            assertEquals(8, coordination.getChannelById(8).getId());
+        }
+    }
+
+    @DisplayName("forks scenarios by...")
+    @Nested
+    class CoordinationForkTests {
+
+        final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+
+        @BeforeEach
+        void setUp() throws InvalidFrequencyException {
+            coordination = new Coordination();
+            double[] frequencies = new double[]{ 606.0, 606.2, 607.1, 608.35, 609.0, 610.3 };
+            for (Double frequency : frequencies) {
+                coordination.addChannel(frequency, equipment);
+            }
+        }
+
+        @DisplayName("copying the analysis")
+        @Test
+        final void testForkCopiesAnalysis() {
+            Coordination fork = coordination.fork();
+            assertEquals(coordination.getNumChannels(), fork.getNumChannels());
+            assertEquals(coordination.getNumIntermods(), fork.getNumIntermods());
+            assertEquals(coordination.getNumConflicts(), fork.getNumConflicts());
+            assertEquals(coordination.getAnalyser().getValidChannels(), fork.getAnalyser().getValidChannels());
+            assertEquals(coordination.getAnalyser().getNumIMConflicts(), fork.getAnalyser().getNumIMConflicts());
+            TestHelpers.assertIsSorted(fork.getAnalyser().getIntermodStore().getIntermodsArray());
+
+            Channel[] channels = coordination.getChannels();
+            Channel[] forkChannels = fork.getChannels();
+            for (int i = 0; i < channels.length; i++) {
+                assertNotSame(channels[i], forkChannels[i]);
+                assertEquals(channels[i], forkChannels[i]);
+                assertEquals(channels[i].getValidity(), forkChannels[i].getValidity());
+                assertEquals(channels[i].getNumConflicts(), forkChannels[i].getNumConflicts());
+            }
+        }
+
+        @DisplayName("isolating edits to the fork")
+        @Test
+        final void testForkIsolatesEdits() throws InvalidFrequencyException {
+            final int numConflicts = coordination.getNumConflicts();
+            final int numIntermods = coordination.getNumIntermods();
+
+            Coordination fork = coordination.fork();
+            fork.addChannel(611.0, equipment);
+            fork.updateChannel(1, 612.0);
+            fork.removeChannel(0);
+
+            assertEquals(6, coordination.getNumChannels());
+            assertEquals(numConflicts, coordination.getNumConflicts());
+            assertEquals(numIntermods, coordination.getNumIntermods());
+            assertEquals(606200, coordination.getChannelById(1).getFreq());
+            assertEquals(6, fork.getNumChannels());
+            assertEquals(TestHelpers.expectedIntermods(fork.getAnalyser()), fork.getNumIntermods());
+        }
+
+        @DisplayName("matching a rebuilt coordination after edits")
+        @Test
+        final void testForkMatchesRebuiltCoordination() throws InvalidFrequencyException {
+            Coordination fork = coordination.fork();
+            fork.removeChannel(1);
+            fork.addChannel(611.5, equipment);
+
+            Coordination rebuilt = new Coordination();
+            for (Channel channel : fork.getChannels()) {
+                rebuilt.addChannel(Channel.khzToMhz(channel.getFreq()), channel.getEquipment());
+            }
+            assertEquals(rebuilt.getNumIntermods(), fork.getNumIntermods());
+            assertEquals(rebuilt.getNumConflicts(), fork.getNumConflicts());
+            assertEquals(rebuilt.getAnalyser().getValidChannels(), fork.getAnalyser().getValidChannels());
+        }
+
+        @DisplayName("committing the fork back")
+        @Test
+        final void testCommitFork() throws InvalidFrequencyException {
+            Coordination fork = coordination.fork();
+            fork.removeChannel(1);
+            final int id = fork.addChannel(611.5, equipment);
+            final int numConflicts = fork.getNumConflicts();
+            coordination.commit(fork);
+
+            assertEquals(6, coordination.getNumChannels());
+            assertNull(coordination.getChannelById(1));
+            assertEquals(611500, coordination.getChannelById(id).getFreq());
+            assertEquals(numConflicts, coordination.getNumConflicts());
+
+            assertEquals(0, fork.getNumChannels());
+            fork.removeChannel(id);
+            assertNotNull(coordination.getChannelById(id));
+        }
+
+        @DisplayName("committing the fork inside a batch")
+        @Test
+        final void testCommitForkInBatch() throws InvalidFrequencyException {
+            Coordination fork = coordination.fork();
+            fork.removeChannel(1);
+            coordination.startBatch();
+            coordination.commit(fork);
+            final long version = coordination.getVersion();
+            coordination.addChannel(611.5, equipment);
+            assertEquals(version, coordination.getVersion());
+            assertEquals(5, coordination.getSnapshot().getNumChannels());
+            coordination.endBatch();
+
+            assertEquals(version + 1, coordination.getVersion());
+            assertEquals(6, coordination.getSnapshot().getNumChannels());
+        }
+
+        @DisplayName("isolating the fork from later edits")
+        @Test
+        final void testForkIsolatedFromLaterEdits() {
+            final int numIntermods = coordination.getNumIntermods();
+            Coordination fork = coordination.fork();
+            coordination.removeChannel(0);
+
+            assertEquals(6, fork.getNumChannels());
+            assertEquals(numIntermods, fork.getNumIntermods());
+            assertNotNull(fork.getChannelById(0));
+        }
+
+        @DisplayName("carrying over the generation settings")
+        @Test
+        final void testForkKeepsGenerationSettings() {
+            coordination.setFrequencySelection(ChannelGeneratorWrapper.Selection.NEAREST);
+            coordination.addFrequencyTemplate(equipment, new int[]{ 0, 400 });
+            Coordination fork = coordination.fork();
+
+            assertEquals(ChannelGeneratorWrapper.Selection.NEAREST, fork.getFrequencySelection());
+            assertEquals(1, fork.getAnalyser().getFrequencyTemplates(equipment).size());
+            fork.clearFrequencyTemplates();
+            assertEquals(1, coordination.getAnalyser().getFrequencyTemplates(equipment).size());
+        }
+
+        @DisplayName("refusing to commit a fork after a channel is renamed")
+        @Test
+        final void testCommitAfterRename() throws InvalidFrequencyException {
+            Coordination fork = coordination.fork();
+            fork.removeChannel(1);
+            coordination.updateChannel(0, "Renamed");
+
+            assertThrows(IllegalStateException.class, () -> coordination.commit(fork));
+            assertEquals("Renamed", coordination.getChannelById(0).getName());
+        }
+
+        @DisplayName("refusing to commit a stale fork")
+        @Test
+        final void testCommitStaleFork() throws InvalidFrequencyException {
+            Coordination fork = coordination.fork();
+            Coordination otherFork = coordination.fork();
+            coordination.commit(fork);
+
+            assertThrows(IllegalStateException.class, () -> coordination.commit(otherFork));
+            assertThrows(IllegalArgumentException.class, () -> coordination.commit(new Coordination()));
+        }
+    }
+
     @DisplayName("edits channels by...")
     @Nested
     class CoordinationEditTests {
@@ -279,6 +504,34 @@ class CoordinationTests {
             coordination = new Coordination();
         }
 
+        @DisplayName("publishing snapshots that agree while a channel is updated")
+        @Test
+        final void testSnapshotsAgreeDuringUpdates() throws InvalidFrequencyException, InterruptedException {
+            final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+            coordination.addChannel(606.0, equipment);
+            final int id = coordination.addChannel(610.0, equipment);
+
+            final AtomicBoolean done = new AtomicBoolean(false);
+            final AtomicReference<String> failure = new AtomicReference<>();
+            final Thread reader = new Thread(() -> {
+                while (!done.get()) {
+                    final AnalyserSnapshot snapshot = coordination.getSnapshot();
+                    final boolean close = snapshot.getChannelFrequency(1) == 606100;
+                    if (close != (snapshot.getChannelValidity(1) == Channel.Validity.INVALID)
+                            || close != (snapshot.getNumConflicts() > 0)) {
+                        failure.set("Snapshot " + snapshot.getVersion() + " does not agree");
+                    }
+                }
+            });
+            reader.start();
+            for (int i = 0; i < 20000; i++) {
+                coordination.updateChannel(id, i % 2 == 0 ? 606.1 : 610.0);
+            }
+            done.set(true);
+            reader.join();
+            assertNull(failure.get());
+        }
+
         @DisplayName("not updating frequency before start editing called")
         @Test
         final void testNoUpdateFrequencyBeforeStartEditing() throws InvalidFrequencyException {
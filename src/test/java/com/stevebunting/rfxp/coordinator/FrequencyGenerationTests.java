@@ -81,6 +81,430 @@ class FrequencyGenerationTests {
         assertEquals(0, coordination.getAnalyser().getNumIMConflicts());
     }
 
+    @DisplayName("returns frequencies in the order channels are passed")
+    @Test
+    final void testReturnsFrequenciesInChannelOrder() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Range narrowRange = new Range(610000, 611000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range, narrowRange});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(i == 4 ? narrowRange : range);
+            frequenciesToUpdate.add(channel);
+        }
+
+        coordination.updateFrequencies(frequenciesToUpdate);
+
+        assertEquals(0, coordination.getNumConflicts());
+        assertEquals(6, coordination.getAnalyser().getValidChannels());
+        for (Channel channel : frequenciesToUpdate) {
+            assertTrue(channel.getRange().isValidFrequency(channel.getFreq()));
+        }
+    }
+
+    @DisplayName("gives up on a range too small for every channel")
+    @Test
+    final void testGivesUpOnRangeTooSmall() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 608000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+            coordination.removeChannel(channel);
+        }
+
+        final List<Integer> frequencies = coordination.getAnalyser().updateFrequencies(frequenciesToUpdate);
+
+        assertEquals(7, frequencies.size());
+        assertTrue(frequencies.contains(null));
+    }
+
+    @DisplayName("generates 21 valid frequencies in 606-648MHz by local search")
+    @Test
+    final void testGenerate21FrequenciesByLocalSearch() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 648000, "Higher Range");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        final int fixedId = coordination.addChannel(620, uhfr);
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 21; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+
+        coordination.updateFrequencies(frequenciesToUpdate, Analyser.GenerationStrategy.LOCAL_SEARCH);
+
+        assertEquals(22, coordination.getChannels().length);
+        assertEquals(22, coordination.getAnalyser().getValidChannels());
+        assertEquals(0, coordination.getAnalyser().getConflictList().size());
+        assertEquals(620000, coordination.getChannelById(fixedId).getFreq());
+        for (Channel channel : frequenciesToUpdate) {
+            assertTrue(channel.getRange().isValidFrequency(channel.getFreq()));
+        }
+    }
+
+    @DisplayName("gives every channel a frequency by local search when the range is too small")
+    @Test
+    final void testLocalSearchOnRangeTooSmall() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 608000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+            coordination.removeChannel(channel);
+        }
+
+        final List<Integer> frequencies = coordination.getAnalyser()
+                .updateFrequencies(frequenciesToUpdate, Analyser.GenerationStrategy.LOCAL_SEARCH);
+
+        assertEquals(7, frequencies.size());
+        assertFalse(frequencies.contains(null));
+        assertEquals(0, coordination.getAnalyser().getChannelList().size());
+        assertEquals(0, coordination.getAnalyser().getIntermodStore().size());
+    }
+
+    @DisplayName("repairs a late addition by moving only conflicting channels")
+    @Test
+    final void testRepairsLateAddition() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+        coordination.updateFrequencies(frequenciesToUpdate);
+        assertEquals(0, coordination.getNumConflicts());
+        final int[] previousFrequencies = new int[frequenciesToUpdate.size()];
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            previousFrequencies[i] = frequenciesToUpdate.get(i).getFreq();
+        }
+
+        // A late channel with no range cannot be moved itself
+        final Channel lateChannel = coordination.getChannelById(
+                coordination.addChannel(Channel.khzToMhz(previousFrequencies[0]), uhfr));
+        assertTrue(coordination.getNumConflicts() > 0);
+
+        final List<Channel> movedChannels = coordination.repairFrequencies();
+
+        assertEquals(0, coordination.getNumConflicts());
+        assertEquals(7, coordination.getAnalyser().getValidChannels());
+        assertEquals(previousFrequencies[0], lateChannel.getFreq());
+        assertTrue(movedChannels.size() > 0);
+        assertTrue(movedChannels.size() < frequenciesToUpdate.size());
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            final Channel channel = frequenciesToUpdate.get(i);
+            if (!movedChannels.contains(channel)) {
+                assertEquals(previousFrequencies[i], channel.getFreq());
+            }
+        }
+    }
+
+    @DisplayName("repair leaves a clear coordination untouched")
+    @Test
+    final void testRepairLeavesClearCoordination() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        final Channel channel = coordination.getChannelById(coordination.addChannel(606.5, uhfr));
+        channel.setRange(range);
+        coordination.addChannel(610, uhfr);
+
+        assertTrue(coordination.repairFrequencies().isEmpty());
+        assertEquals(606500, channel.getFreq());
+        assertEquals(2, coordination.getNumChannels());
+    }
+
+    @DisplayName("repair leaves channels in place when no repair is found")
+    @Test
+    final void testRepairLeavesChannelsWhenNoneFound() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range narrowRange = new Range(606000, 606100, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{narrowRange});
+        final Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+        channel.setRange(narrowRange);
+        coordination.addChannel(606.05, uhfr);
+        assertTrue(coordination.getNumConflicts() > 0);
+
+        assertTrue(coordination.repairFrequencies().isEmpty());
+        assertEquals(606000, channel.getFreq());
+        assertEquals(2, coordination.getNumChannels());
+    }
+
+    @DisplayName("keeps a channel that cannot be placed in its new range")
+    @Test
+    final void testKeepsUnplaceableChannel() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range wideRange = new Range(606000, 614000, "Channel 38");
+        final Range fullRange = new Range(613000, 613000, "Full");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{wideRange, fullRange});
+        coordination.addChannel(613, uhfr);
+        final int id = coordination.addChannel(606, uhfr);
+        final Channel channel = coordination.getChannelById(id);
+        channel.setRange(fullRange);
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        frequenciesToUpdate.add(channel);
+        coordination.updateFrequencies(frequenciesToUpdate);
+
+        assertSame(channel, coordination.getChannelById(id));
+        assertEquals(606000, channel.getFreq());
+        assertEquals(2, coordination.getNumChannels());
+
+        coordination.addChannel(606.05, uhfr);
+        assertTrue(coordination.repairFrequencies().isEmpty());
+        assertSame(channel, coordination.getChannelById(id));
+        assertEquals(606000, channel.getFreq());
+        assertEquals(3, coordination.getNumChannels());
+    }
+
+    @DisplayName("keeps channels near their current frequencies with nearest selection")
+    @Test
+    final void testNearestSelectionKeepsFrequencies() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+        coordination.updateFrequencies(frequenciesToUpdate);
+        final int[] previousFrequencies = new int[frequenciesToUpdate.size()];
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            previousFrequencies[i] = frequenciesToUpdate.get(i).getFreq();
+        }
+
+        coordination.setFrequencySelection(ChannelGeneratorWrapper.Selection.NEAREST);
+        coordination.updateFrequencies(frequenciesToUpdate);
+
+        assertEquals(0, coordination.getNumConflicts());
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            assertEquals(previousFrequencies[i], frequenciesToUpdate.get(i).getFreq());
+        }
+
+        coordination.updateFrequencies(frequenciesToUpdate, Analyser.GenerationStrategy.LOCAL_SEARCH);
+
+        assertEquals(0, coordination.getNumConflicts());
+        for (int i = 0; i < previousFrequencies.length; i++) {
+            assertEquals(previousFrequencies[i], frequenciesToUpdate.get(i).getFreq());
+        }
+    }
+
+    @DisplayName("finds how many channels fit in a range")
+    @Test
+    final void testFindsCapacity() throws InvalidFrequencyException {
+        final Range range = new Range(606000, 608000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Integer> frequencies = coordination.findCapacity(uhfr, range, 60000);
+
+        assertEquals(5, frequencies.size());
+        assertEquals(0, coordination.getNumChannels());
+        assertEquals(0, coordination.getAnalyser().getIntermodStore().size());
+        for (int frequency : frequencies) {
+            coordination.addChannel(Channel.khzToMhz(frequency), uhfr);
+        }
+        assertEquals(0, coordination.getNumConflicts());
+    }
+
+    @DisplayName("finds fewer channels fit alongside existing channels")
+    @Test
+    final void testFindsCapacityWithExistingChannels() throws InvalidFrequencyException {
+        final Range range = new Range(606000, 608000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        coordination.addChannel(607, uhfr);
+
+        final List<Integer> frequencies = coordination.findCapacity(uhfr, range, 60000);
+
+        assertTrue(frequencies.size() < 5);
+        assertEquals(1, coordination.getNumChannels());
+        for (int frequency : frequencies) {
+            coordination.addChannel(Channel.khzToMhz(frequency), uhfr);
+        }
+        assertEquals(0, coordination.getNumConflicts());
+    }
+
+    @DisplayName("optimises headroom beyond the required spacing")
+    @Test
+    final void testOptimisesHeadroom() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+
+        final double headroom = coordination.optimiseHeadroom(frequenciesToUpdate, 1000);
+
+        assertTrue(headroom > 1);
+        assertEquals(0, coordination.getNumConflicts());
+        assertEquals(6, coordination.getAnalyser().getValidChannels());
+        for (int i = 0; i < frequenciesToUpdate.size(); i++) {
+            for (int j = i + 1; j < frequenciesToUpdate.size(); j++) {
+                final int spacing = Math.abs(frequenciesToUpdate.get(i).getFreq() - frequenciesToUpdate.get(j).getFreq());
+                assertTrue(spacing >= headroom * 325);
+            }
+        }
+    }
+
+    @DisplayName("keeps previous frequencies when no plot with headroom is found")
+    @Test
+    final void testOptimiseHeadroomOnRangeTooSmall() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 607000, "Narrow");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+
+        assertEquals(0, coordination.optimiseHeadroom(frequenciesToUpdate, 200));
+        assertEquals(5, coordination.getNumChannels());
+        for (Channel channel : frequenciesToUpdate) {
+            assertEquals(606000, channel.getFreq());
+        }
+    }
+
+    @DisplayName("keeps a channel that cannot be placed when optimising headroom")
+    @Test
+    final void testHeadroomKeepsUnplaceableChannel() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range wideRange = new Range(606000, 614000, "Channel 38");
+        final Range fullRange = new Range(613000, 613000, "Full");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{wideRange, fullRange});
+        coordination.addChannel(613, uhfr);
+        final int id = coordination.addChannel(606, uhfr);
+        final Channel channel = coordination.getChannelById(id);
+        channel.setRange(fullRange);
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        frequenciesToUpdate.add(channel);
+        assertEquals(0, coordination.optimiseHeadroom(frequenciesToUpdate, 100));
+
+        assertSame(channel, coordination.getChannelById(id));
+        assertEquals(606000, channel.getFreq());
+        assertEquals(2, coordination.getNumChannels());
+    }
+
+    @DisplayName("places channels from a template that fits")
+    @Test
+    final void testTemplateFits() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        final int[] offsets = new int[]{ 0, 350, 1150, 2600, 3400, 5050 };
+        coordination.addFrequencyTemplate(uhfr, offsets);
+        coordination.addChannel(606.0, uhfr);
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+        coordination.updateFrequencies(frequenciesToUpdate);
+
+        assertEquals(0, coordination.getNumConflicts());
+        final int position = frequenciesToUpdate.get(0).getFreq();
+        assertTrue(position > 606000);
+        for (int i = 0; i < frequenciesToUpdate.size(); i++) {
+            assertEquals(position + offsets[i], frequenciesToUpdate.get(i).getFreq());
+        }
+    }
+
+    @DisplayName("searches if no template fits")
+    @Test
+    final void testTemplateDoesNotFit() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        coordination.addFrequencyTemplate(uhfr, new int[]{ 0, 100, 200, 300, 400 });
+        coordination.addFrequencyTemplate(uhfr, new int[]{ 0, 350, 1150 });
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+        coordination.updateFrequencies(frequenciesToUpdate);
+
+        assertEquals(5, coordination.getNumChannels());
+        assertEquals(0, coordination.getNumConflicts());
+    }
+
+    @DisplayName("rejects templates that do not suit the equipment")
+    @Test
+    final void testRejectsInvalidTemplate() {
+        assertThrows(IllegalArgumentException.class, () -> coordination.addFrequencyTemplate(equipment, new int[]{ 100, 400 }));
+        assertThrows(IllegalArgumentException.class, () -> coordination.addFrequencyTemplate(equipment, new int[]{ 0, 400, 300 }));
+        assertThrows(IllegalArgumentException.class, () -> coordination.addFrequencyTemplate(equipment, new int[]{ 0, 410 }));
+        assertThrows(IllegalArgumentException.class, () -> coordination.addFrequencyTemplate(equipment, new int[0]));
+    }
+
+    private List<Channel> addSeededChannels(final Coordination coordination) throws InvalidFrequencyException {
+        final Range range = new Range(606000, 614000, "Channel 38");
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50, Equipment.FrontEndType.TRACKING, 25, new Range[]{range});
+        coordination.addChannel(610.0, uhfr);
+
+        final List<Channel> frequenciesToUpdate = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(range);
+            frequenciesToUpdate.add(channel);
+        }
+        return frequenciesToUpdate;
+    }
+
+    @DisplayName("repeats a generation with the same seed")
+    @Test
+    final void testSameSeedRepeatsGeneration() throws InvalidFrequencyException, ChannelMissingRangeException {
+        for (Analyser.GenerationStrategy strategy : Analyser.GenerationStrategy.values()) {
+            final Coordination first = new Coordination();
+            final List<Channel> firstChannels = addSeededChannels(first);
+            first.updateFrequencies(firstChannels, strategy, ChannelGeneratorWrapper.Selection.RANDOM, 42);
+            assertEquals(42, first.getLastSeed());
+
+            final Coordination second = new Coordination();
+            final List<Channel> secondChannels = addSeededChannels(second);
+            second.updateFrequencies(secondChannels, strategy, ChannelGeneratorWrapper.Selection.RANDOM, 42);
+
+            assertEquals(0, second.getNumConflicts());
+            for (int i = 0; i < firstChannels.size(); i++) {
+                assertEquals(firstChannels.get(i).getFreq(), secondChannels.get(i).getFreq());
+            }
+        }
+    }
+
+    @DisplayName("records the seed of an unseeded generation")
+    @Test
+    final void testRecordsSeed() throws InvalidFrequencyException, ChannelMissingRangeException {
+        final List<Channel> firstChannels = addSeededChannels(coordination);
+        coordination.updateFrequencies(firstChannels);
+        final long seed = coordination.getLastSeed();
+
+        final Coordination repeat = new Coordination();
+        final List<Channel> repeatChannels = addSeededChannels(repeat);
+        repeat.updateFrequencies(repeatChannels, Analyser.GenerationStrategy.BACKTRACKING,
+                ChannelGeneratorWrapper.Selection.RANDOM, seed);
+
+        assertEquals(seed, repeat.getLastSeed());
+        for (int i = 0; i < firstChannels.size(); i++) {
+            assertEquals(firstChannels.get(i).getFreq(), repeatChannels.get(i).getFreq());
+        }
+    }
+
     @DisplayName("generates valid frequencies with 3 existing channels")
     @Test
     @Disabled
@@ -0,0 +1,178 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Frequency set cache...")
+class FrequencySetCacheTests {
+    Path directory;
+    Path path;
+    final Range range = new Range(606000, 614000, "Channel 38");
+    final Range lowerRange = new Range(606000, 610000, "Lower");
+    final Equipment equipment = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50,
+            Equipment.FrontEndType.TRACKING, 25, new Range[]{ range, lowerRange });
+
+    @BeforeEach
+    final void setUp() throws IOException {
+        directory = Files.createTempDirectory("frequency-set-cache");
+        path = directory.resolve("sets.cache");
+    }
+
+    @AfterEach
+    final void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+        Files.deleteIfExists(directory);
+    }
+
+    private List<Channel> addChannels(
+            final Coordination coordination,
+            final int numChannels
+    ) throws InvalidFrequencyException {
+        final List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < numChannels; i++) {
+            final Channel channel = coordination.getChannelById(coordination.addChannel(606, equipment));
+            channel.setRange(range);
+            channels.add(channel);
+        }
+        return channels;
+    }
+
+    @DisplayName("reuse a set stored by an earlier generation")
+    @Test
+    final void testReuseStoredSet() throws IOException, InvalidFrequencyException, ChannelMissingRangeException {
+        final Coordination first = new Coordination();
+        first.addChannel(613.9, equipment);
+        final List<Channel> firstChannels = addChannels(first, 5);
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            first.setFrequencySetCache(cache);
+            first.updateFrequencies(firstChannels);
+            assertEquals(1, cache.size());
+        }
+
+        final Coordination second = new Coordination();
+        second.addChannel(613.9, equipment);
+        final List<Channel> secondChannels = addChannels(second, 5);
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            second.setFrequencySetCache(cache);
+            second.updateFrequencies(secondChannels);
+            assertEquals(1, cache.size());
+        }
+
+        assertEquals(0, second.getNumConflicts());
+        for (int i = 0; i < firstChannels.size(); i++) {
+            assertEquals(firstChannels.get(i).getFreq(), secondChannels.get(i).getFreq());
+        }
+    }
+
+    @DisplayName("search again if a stored set is not clear")
+    @Test
+    final void testRejectConflictingSet() throws IOException, InvalidFrequencyException, ChannelMissingRangeException {
+        final Coordination coordination = new Coordination();
+        final List<Channel> channels = addChannels(coordination, 4);
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            final List<Channel> fixedChannels = new ArrayList<>();
+            final String key = FrequencySetCache.getKey(channels, fixedChannels, new AnalyserCalculations());
+            final int[] conflictingSet = new int[]{ 606000, 606100, 606200, 606300 };
+            cache.put(key, conflictingSet);
+
+            coordination.setFrequencySetCache(cache);
+            coordination.updateFrequencies(channels);
+
+            assertEquals(0, coordination.getNumConflicts());
+            assertEquals(2, cache.size());
+            assertFalse(Arrays.equals(conflictingSet, cache.get(key).get(0)));
+        }
+    }
+
+    @DisplayName("keep channels with the same equipment and range interchangeable")
+    @Test
+    final void testKeyIgnoresOrder() throws InvalidFrequencyException {
+        final Coordination coordination = new Coordination();
+        final List<Channel> channels = addChannels(coordination, 3);
+        channels.get(1).setRange(lowerRange);
+
+        final List<Channel> reversed = new ArrayList<>(channels);
+        Collections.reverse(reversed);
+        final List<Channel> fixedChannels = new ArrayList<>();
+        final AnalyserCalculations calculations = new AnalyserCalculations();
+        assertEquals(FrequencySetCache.getKey(channels, fixedChannels, calculations),
+                FrequencySetCache.getKey(reversed, fixedChannels, calculations));
+
+        calculations.setIM3t3o(false);
+        assertNotEquals(FrequencySetCache.getKey(channels, fixedChannels, new AnalyserCalculations()),
+                FrequencySetCache.getKey(channels, fixedChannels, calculations));
+
+        final int[] order = FrequencySetCache.getOrder(channels);
+        assertEquals(3, order.length);
+        assertSame(channels.get(1).getRange(), channels.get(order[0]).getRange());
+    }
+
+    @DisplayName("ignore a damaged final record")
+    @Test
+    final void testIgnoreDamagedRecord() throws IOException {
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            cache.put("a", new int[]{ 606000, 607000 });
+            cache.put("b", new int[]{ 608000, 609000 });
+        }
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            assertEquals(1, cache.size());
+            assertTrue(cache.get("b").isEmpty());
+            cache.put("c", new int[]{ 610000 });
+        }
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            assertEquals(2, cache.size());
+            assertArrayEquals(new int[]{ 610000 }, cache.get("c").get(0));
+        }
+    }
+
+    @DisplayName("drop superseded sets when reopened")
+    @Test
+    final void testCompactOnOpen() throws IOException {
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            for (int i = 0; i < FrequencySetCache.MAX_SETS_PER_KEY + 4; i++) {
+                cache.put("a", new int[]{ 606000 + i * 100 });
+            }
+            cache.put("b", new int[]{ 608000 });
+        }
+        final long fullSize = Files.size(path);
+
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            assertEquals(FrequencySetCache.MAX_SETS_PER_KEY + 1, cache.size());
+        }
+        assertTrue(Files.size(path) < fullSize);
+        assertFalse(Files.exists(path.resolveSibling(path.getFileName() + ".tmp")));
+
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            assertEquals(FrequencySetCache.MAX_SETS_PER_KEY + 1, cache.size());
+            final int last = FrequencySetCache.MAX_SETS_PER_KEY + 3;
+            assertArrayEquals(new int[]{ 606000 + last * 100 }, cache.get("a").get(0));
+            assertArrayEquals(new int[]{ 608000 }, cache.get("b").get(0));
+            cache.put("c", new int[]{ 610000 });
+        }
+        try (FrequencySetCache cache = FrequencySetCache.open(path)) {
+            assertEquals(FrequencySetCache.MAX_SETS_PER_KEY + 2, cache.size());
+        }
+    }
+
+    @DisplayName("reject a file that is not a cache")
+    @Test
+    final void testRejectOtherFile() throws IOException {
+        Files.write(path, new byte[]{ 1, 2, 3 });
+        assertThrows(IOException.class, () -> FrequencySetCache.open(path));
+    }
+}
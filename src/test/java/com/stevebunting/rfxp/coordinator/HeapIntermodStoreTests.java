@@ -0,0 +1,86 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Heap intermod storage...")
+class HeapIntermodStoreTests {
+    Coordination coordination;
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0, 610.3 };
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        coordination = new Coordination();
+        for (double frequency : frequencies) {
+            coordination.addChannel(frequency, equipment);
+        }
+    }
+
+    private List<Intermod> inRange(final int rangeLo, final int rangeHi) {
+        final List<Intermod> expected = new ArrayList<>();
+        for (Intermod intermod : coordination.getAnalyser().getIntermodStore()) {
+            if (intermod.getFreq() > rangeLo && intermod.getFreq() < rangeHi) {
+                expected.add(intermod);
+            }
+        }
+        return expected;
+    }
+
+    @DisplayName("find the first value above a limit")
+    @Test
+    final void testGetNextIndex() {
+        final int[] values = { 1, 3, 3, 3, 5, 8, 8, 13 };
+        for (int limit = 0; limit <= 14; limit++) {
+            int expected = 0;
+            while (expected < values.length && values[expected] <= limit) {
+                expected++;
+            }
+            assertEquals(expected, HeapIntermodStore.getNextIndex(values, 0, values.length, limit));
+            final int from = Math.min(expected, 2);
+            assertEquals(expected, HeapIntermodStore.getNextIndex(values, from, values.length, limit));
+        }
+        assertEquals(0, HeapIntermodStore.getNextIndex(new int[0], 0, 0, 5));
+    }
+
+    @DisplayName("find intermods in a range after adds and removes")
+    @Test
+    final void testForRange() {
+        final IntermodStore store = coordination.getAnalyser().getIntermodStore();
+        final List<Intermod> found = new ArrayList<>();
+        store.forRange(606500, 607500, found::add);
+        assertEquals(inRange(606500, 607500), found);
+
+        coordination.removeChannel(4);
+        found.clear();
+        store.forRange(606500, 607500, found::add);
+        assertEquals(inRange(606500, 607500), found);
+    }
+
+    @DisplayName("find intermods for several ranges in one sweep")
+    @Test
+    final void testForRanges() {
+        final IntermodStore store = coordination.getAnalyser().getIntermodStore();
+        final int[] rangeLos = { 608000, 605000, 606900, 606900, 620000 };
+        final int[] rangeHis = { 608400, 606100, 607200, 606950, 620100 };
+        final List<List<Intermod>> found = new ArrayList<>();
+        for (int i = 0; i < rangeLos.length; i++) {
+            found.add(new ArrayList<>());
+        }
+        final List<Integer> visited = new ArrayList<>();
+        store.forRanges(rangeLos, rangeHis, (final Intermod intermod, final int range) -> {
+            found.get(range).add(intermod);
+            visited.add(range);
+        });
+        for (int i = 0; i < rangeLos.length; i++) {
+            assertEquals(inRange(rangeLos[i], rangeHis[i]), found.get(i));
+        }
+        for (int i = 1; i < visited.size(); i++) {
+            assertTrue(visited.get(i - 1) <= visited.get(i));
+        }
+    }
+}
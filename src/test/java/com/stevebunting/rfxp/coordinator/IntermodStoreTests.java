@@ -0,0 +1,151 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Intermod storage of every kind...")
+class IntermodStoreTests {
+    Coordination heap;
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0, 610.3 };
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        heap = new Coordination();
+        for (double frequency : frequencies) {
+            heap.addChannel(frequency, equipment);
+        }
+    }
+
+    private Coordination createCoordination(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = new Coordination(storage);
+        for (double frequency : frequencies) {
+            coordination.addChannel(frequency, equipment);
+        }
+        assertEquals(storage, coordination.getAnalyser().getIntermodStorage());
+        return coordination;
+    }
+
+    static void assertSameAnalysis(final Coordination expected, final Coordination actual) {
+        final Intermod[] expectedIntermods = expected.getAnalyser().getIntermodStore().getIntermodsArray();
+        final Intermod[] actualIntermods = actual.getAnalyser().getIntermodStore().getIntermodsArray();
+        assertEquals(expectedIntermods.length, actualIntermods.length);
+        for (int i = 0; i < expectedIntermods.length; i++) {
+            assertEquals(expectedIntermods[i].getFreq(), actualIntermods[i].getFreq());
+            assertEquals(expectedIntermods[i].getType(), actualIntermods[i].getType());
+        }
+        assertEquals(expected.getNumConflicts(), actual.getNumConflicts());
+        assertEquals(expected.getStatistics().getNumIMConflicts(), actual.getStatistics().getNumIMConflicts());
+        assertEquals(expected.getStatistics().getNumChannels(Channel.Validity.VALID),
+                actual.getStatistics().getNumChannels(Channel.Validity.VALID));
+        TestHelpers.assertIsSorted(actualIntermods);
+    }
+
+    @DisplayName("produce the same analysis as heap storage")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testSameAnalysis(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = createCoordination(storage);
+        assertSameAnalysis(heap, coordination);
+
+        heap.updateChannel(3, 612.0);
+        coordination.updateChannel(3, 612.0);
+        heap.removeChannel(5);
+        coordination.removeChannel(5);
+        assertSameAnalysis(heap, coordination);
+    }
+
+    @DisplayName("import a batch with the same analysis as heap storage")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testBatchImport(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = new Coordination(storage);
+        final List<Channel> batch = new ArrayList<>();
+        for (int i = 0; i < frequencies.length; i++) {
+            batch.add(new Channel(i, frequencies[i], equipment));
+        }
+        coordination.addChannels(batch);
+        assertSameAnalysis(heap, coordination);
+
+        heap.removeChannel(5);
+        coordination.removeChannel(5);
+        assertSameAnalysis(heap, coordination);
+    }
+
+    @DisplayName("find intermods in ranges")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testForRange(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = createCoordination(storage);
+        final int[][] ranges = { { 605950, 606050 }, { 606900, 608100 }, { 0, 2000000 }, { 1000000, 1000100 } };
+        for (int[] range : ranges) {
+            final List<Integer> expected = new ArrayList<>();
+            heap.getAnalyser().getIntermodStore().forRange(range[0], range[1],
+                    (final Intermod intermod) -> expected.add(intermod.getFreq()));
+            final List<Integer> actual = new ArrayList<>();
+            coordination.getAnalyser().getIntermodStore().forRange(range[0], range[1],
+                    (final Intermod intermod) -> actual.add(intermod.getFreq()));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @DisplayName("leave published intermod lists unchanged")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testPublishedListUnchanged(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = createCoordination(storage);
+        final List<Intermod> published = coordination.getSnapshot().getIntermodList();
+        final List<Intermod> copy = new ArrayList<>(published);
+        coordination.removeChannel(0);
+        coordination.updateChannel(4, 611.0);
+
+        assertEquals(copy.size(), published.size());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(copy.get(i).getFreq(), published.get(i).getFreq());
+            assertSame(copy.get(i).getF1(), published.get(i).getF1());
+            assertSame(copy.get(i).getF2(), published.get(i).getF2());
+        }
+        assertTrue(coordination.getNumIntermods() < published.size());
+    }
+
+    @DisplayName("fork and commit")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testForkAndCommit(final IntermodStore.Storage storage) throws InvalidFrequencyException {
+        final Coordination coordination = createCoordination(storage);
+        final Coordination fork = coordination.fork();
+        assertEquals(storage, fork.getAnalyser().getIntermodStorage());
+        assertSameAnalysis(coordination, fork);
+
+        fork.removeChannel(1);
+        heap.removeChannel(1);
+        coordination.commit(fork);
+        assertSameAnalysis(heap, coordination);
+    }
+
+    @DisplayName("generate frequencies")
+    @ParameterizedTest
+    @EnumSource(IntermodStore.Storage.class)
+    final void testGenerateFrequencies(final IntermodStore.Storage storage)
+            throws InvalidFrequencyException, ChannelMissingRangeException {
+        final Equipment uhfr = new Equipment("Shure", "UHF-R", 25, 325, 175, 0, 0, 0, 50,
+                Equipment.FrontEndType.TRACKING, 25, new Range[]{ new Range(606000, 614000, "Channel 38") });
+        final Coordination coordination = new Coordination(storage);
+        final List<Channel> channelsToUpdate = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final Channel channel = coordination.getChannelById(coordination.addChannel(606, uhfr));
+            channel.setRange(channel.getAssignableRanges().get(0));
+            channelsToUpdate.add(channel);
+        }
+
+        coordination.updateFrequencies(channelsToUpdate);
+        assertEquals(0, coordination.getNumConflicts());
+        assertEquals(8, coordination.getAnalyser().getValidChannels());
+        assertEquals(coordination.getNumIntermods(), coordination.getSnapshot().getIntermodList().size());
+    }
+}
@@ -0,0 +1,45 @@
+package com.stevebunting.rfxp.coordinator;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Off-heap intermod storage...")
+class OffHeapIntermodStoreTests {
+    Coordination offHeap;
+    final Equipment equipment = new Equipment("Test", "Equipment", 25, 300, 100, 90, 0, 0, 50, Equipment.FrontEndType.TRACKING, 100000);
+    final double[] frequencies = { 606.0, 606.3, 606.775, 607.1, 607.525, 607.7, 608.175, 608.35, 609.0, 610.3 };
+
+    @BeforeEach
+    final void setUp() throws InvalidFrequencyException {
+        offHeap = new Coordination(IntermodStore.Storage.OFF_HEAP);
+        for (double frequency : frequencies) {
+            offHeap.addChannel(frequency, equipment);
+        }
+    }
+
+    @DisplayName("reuse the table slots of removed channels")
+    @Test
+    final void testReleaseRemovedChannels() throws InvalidFrequencyException {
+        final OffHeapIntermodStore store = (OffHeapIntermodStore) offHeap.getAnalyser().getIntermodStore();
+        final int numTableChannels = store.getNumTableChannels();
+        final List<Intermod> published = offHeap.getSnapshot().getIntermodList();
+        final List<Intermod> copy = new ArrayList<>(published);
+
+        for (int i = 0; i < 50; i++) {
+            offHeap.removeChannel(offHeap.getChannels()[0].getId());
+            offHeap.addChannel(611.0 + i * 0.025, equipment);
+        }
+        assertEquals(numTableChannels, store.getNumTableChannels());
+
+        for (int i = 0; i < copy.size(); i++) {
+            assertSame(copy.get(i).getF1(), published.get(i).getF1());
+            assertSame(copy.get(i).getF2(), published.get(i).getF2());
+            assertSame(copy.get(i).getF3(), published.get(i).getF3());
+        }
+        TestHelpers.assertIsSorted(store.getIntermodsArray());
+    }
+}